@@ -6,6 +6,7 @@ module aya.base {
   // requires manifold.delegation.rt;
 
   exports org.aya.normalize;
+  exports org.aya.normalize.error;
   exports org.aya.prelude;
   exports org.aya.primitive;
   exports org.aya.resolve.context;
@@ -15,6 +16,7 @@ module aya.base {
   exports org.aya.resolve;
   exports org.aya.tyck.ctx;
   exports org.aya.tyck.error;
+  exports org.aya.tyck.order;
   exports org.aya.tyck.tycker;
   exports org.aya.tyck;
   exports org.aya.unify;
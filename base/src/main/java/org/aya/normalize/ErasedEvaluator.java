@@ -0,0 +1,239 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import com.intellij.openapi.util.text.StringUtil;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableTreeSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Either;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.syntax.core.repr.ShapeRecognition;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.call.PrimCall;
+import org.aya.syntax.core.term.call.RuleReducer;
+import org.aya.syntax.core.term.marker.Formation;
+import org.aya.syntax.core.term.repr.IntegerOps;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.ListTerm;
+import org.aya.syntax.core.term.repr.StringTerm;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs closed, fully applied programs without core terms: types are erased, and the values of
+ * the data recognized as {@link AyaShape#NAT_SHAPE} and {@link AyaShape#LIST_SHAPE} are plain JVM values.
+ * <ul>
+ *   <li>naturals are {@link Long}s, lists are {@link ImmutableTreeSeq}s, strings are {@link String}s,</li>
+ *   <li>other constructors are {@link Con}s, tuples are {@link Pair}s, functions are {@link Lam}s,</li>
+ *   <li>types, and anything computed from them, are {@link #ERASED}.</li>
+ * </ul>
+ * The evaluation is call-by-value on an environment of values, and a call in tail position does not grow the stack.
+ * Programs using anything else (paths, classes, compiled definitions without core) are {@link Unsupported}.
+ */
+public final class ErasedEvaluator {
+  /** The value of types */
+  public static final @NotNull Object ERASED = new Object() {
+    @Override public String toString() { return "_"; }
+  };
+
+  public record Con(@NotNull ConDefLike ref, @NotNull ImmutableSeq<Object> args) { }
+  public record Pair(@NotNull Object lhs, @NotNull Object rhs) { }
+  /** @param body refers to the argument by {@code LocalTerm(0)}, and to {@param env} by the other indices */
+  public record Lam(@NotNull Term body, @Nullable Env env) { }
+  /** The values of the bound variables, the innermost one first */
+  public record Env(@NotNull Object value, @Nullable Env next) { }
+
+  public static final class Unsupported extends RuntimeException {
+    private Unsupported(@NotNull String message) { super(message, null, false, false); }
+  }
+
+  private final @NotNull ShapeFactory shapes;
+
+  public ErasedEvaluator(@NotNull ShapeFactory shapes) { this.shapes = shapes; }
+
+  /** @param args the values of all the parameters, including the types */
+  public @NotNull Object call(@NotNull FnDefLike fn, @NotNull ImmutableSeq<Object> args) {
+    var core = coreOf(fn);
+    return switch (core.body()) {
+      case Either.Left(var body) -> eval(body, bind(null, args));
+      case Either.Right(var clauses) -> {
+        var matched = match(core, clauses, args);
+        yield eval(matched.body().body(), bind(null, matched.bound()));
+      }
+    };
+  }
+
+  private static @NotNull FnDef coreOf(@NotNull FnDefLike fn) {
+    if (fn instanceof FnDef.Delegate delegate && delegate.core() != null) return delegate.core();
+    throw new Unsupported("Cannot run " + fn.name() + " without its core");
+  }
+
+  private record Matched(@NotNull Term.Matching body, @NotNull ImmutableSeq<Object> bound) { }
+
+  public @NotNull Object eval(@NotNull Term term, @Nullable Env env) {
+    while (true) {
+      switch (term) {
+        case LocalTerm(var index) -> { return lookup(env, index); }
+        case Formation _ -> { return ERASED; }
+        case LamTerm(var body) -> { return new Lam(body(body), env); }
+        case AppTerm(var fun, var arg) -> {
+          var f = eval(fun, env);
+          var a = eval(arg, env);
+          if (f == ERASED) return ERASED;
+          if (!(f instanceof Lam(var body, var captured))) throw unsupported(term);
+          term = body;
+          env = new Env(a, captured);
+        }
+        case TupTerm(var lhs, var rhs) -> { return new Pair(eval(lhs, env), eval(rhs, env)); }
+        case ProjTerm(var of, var index) -> {
+          if (!(eval(of, env) instanceof Pair(var lhs, var rhs))) throw unsupported(term);
+          return index == 0 ? lhs : rhs;
+        }
+        case IntegerTerm integer -> { return (long) integer.repr(); }
+        case ListTerm list -> {
+          var captured = env;
+          return ImmutableTreeSeq.from(list.repr().map(x -> eval(x, captured)));
+        }
+        case StringTerm(var string) -> { return string; }
+        case ConCall con -> { return construct(con.ref(), evalAll(con.conArgs(), env)); }
+        case RuleReducer.Con con -> { return construct(con.ref(), evalAll(con.conArgs(), env)); }
+        case RuleReducer.Fn(IntegerOps.FnRule(_, var kind), _, var args) -> {
+          var a = (Long) eval(args.get(0), env);
+          var b = (Long) eval(args.get(1), env);
+          return switch (kind) {
+            case Add -> Math.addExact(a, b);
+            case SubTrunc -> Math.max(a - b, 0);
+          };
+        }
+        case RuleReducer.Fn fn -> term = fn.toFnCall();
+        case FnCall(var ref, _, var args) -> {
+          var core = coreOf(ref);
+          var values = evalAll(args, env);
+          switch (core.body()) {
+            case Either.Left(var body) -> {
+              term = body;
+              env = bind(null, values);
+            }
+            case Either.Right(var clauses) -> {
+              var matched = match(core, clauses, values);
+              term = matched.body().body();
+              env = bind(null, matched.bound());
+            }
+          }
+        }
+        case PrimCall(var ref, _, var args) -> {
+          return switch (ref.id()) {
+            case STRING, I, PATH -> ERASED;
+            case STRCONCAT -> (String) eval(args.get(0), env) + eval(args.get(1), env);
+            default -> throw unsupported(term);
+          };
+        }
+        default -> throw unsupported(term);
+      }
+    }
+  }
+
+  private static @NotNull Term body(@NotNull Closure closure) {
+    return switch (closure) {
+      case Closure.Locns(var body) -> body;
+      case Closure.Const(var body) -> body;
+      case Closure.Jit _ -> throw new Unsupported("Cannot run compiled closures");
+    };
+  }
+
+  private static @NotNull Object lookup(@Nullable Env env, int index) {
+    for (var i = 0; i < index && env != null; i++) env = env.next;
+    if (env == null) throw new Unsupported("Cannot run open terms");
+    return env.value;
+  }
+
+  /** @return {@param env} with {@param values} bound in order, so the last one is the innermost */
+  private static @Nullable Env bind(@Nullable Env env, @NotNull ImmutableSeq<Object> values) {
+    for (var value : values) env = new Env(value, env);
+    return env;
+  }
+
+  private @NotNull ImmutableSeq<Object> evalAll(@NotNull ImmutableSeq<Term> terms, @Nullable Env env) {
+    return terms.map(term -> eval(term, env));
+  }
+
+  private @Nullable ShapeRecognition shapeOf(@NotNull ConDefLike con) {
+    return shapes.find(con.dataRef()).getOrNull();
+  }
+
+  /** The shape guarantees the constructor without arguments is zero or nil, and the other one is suc or cons */
+  @SuppressWarnings("unchecked")
+  private @NotNull Object construct(@NotNull ConDefLike con, @NotNull ImmutableSeq<Object> args) {
+    var shape = shapeOf(con);
+    if (shape == null) return new Con(con, args);
+    return switch (shape.shape()) {
+      case NAT_SHAPE -> args.isEmpty() ? 0L : Math.addExact((Long) args.getFirst(), 1L);
+      case LIST_SHAPE -> args.isEmpty() ? ImmutableTreeSeq.empty()
+        : ((ImmutableSeq<Object>) args.getLast()).prepended(args.getFirst());
+      default -> new Con(con, args);
+    };
+  }
+
+  private @NotNull Matched match(@NotNull FnDef fn, @NotNull ImmutableSeq<Term.Matching> clauses, @NotNull ImmutableSeq<Object> args) {
+    for (var clause : clauses) {
+      var bound = MutableList.create();
+      if (matchAll(clause.patterns(), args, bound)) return new Matched(clause, bound.toImmutableSeq());
+    }
+    throw new Unsupported("No clause of " + fn.ref().name() + " matches");
+  }
+
+  private boolean matchAll(@NotNull ImmutableSeq<Pat> pats, @NotNull ImmutableSeq<Object> values, @NotNull MutableList<Object> bound) {
+    for (var i = 0; i < pats.size(); i++) if (!match(pats.get(i), values.get(i), bound)) return false;
+    return true;
+  }
+
+  private boolean match(@NotNull Pat pat, @NotNull Object value, @NotNull MutableList<Object> bound) {
+    return switch (pat) {
+      case Pat.Bind _ -> {
+        bound.append(value);
+        yield true;
+      }
+      case Pat.Tuple(var l, var r) -> value instanceof Pair(var lhs, var rhs)
+        && match(l, lhs, bound) && match(r, rhs, bound);
+      case Pat.ShapedInt lit -> value instanceof Long n && n == lit.repr();
+      case Pat.Con con -> switch (value) {
+        case Long n -> con.args().isEmpty() ? n == 0 : n > 0 && match(con.args().getFirst(), n - 1, bound);
+        case ImmutableSeq<?> list -> con.args().isEmpty() ? list.isEmpty() : list.isNotEmpty()
+          && match(con.args().getFirst(), list.getFirst(), bound)
+          && match(con.args().getLast(), list.drop(1), bound);
+        case Con(var ref, var args) -> ref.equals(con.ref()) && matchAll(con.args(), args, bound);
+        default -> throw new Unsupported("Cannot match " + show(value) + " against a constructor");
+      };
+      case Pat.Absurd _, Pat.Meta _ -> throw new Unsupported("Cannot match against " + pat.getClass().getSimpleName());
+    };
+  }
+
+  private static @NotNull Unsupported unsupported(@NotNull Term term) {
+    return new Unsupported("Cannot run " + term.getClass().getSimpleName());
+  }
+
+  /** @return {@param value} in the syntax of Aya, with the erased arguments left out */
+  public static @NotNull String show(@NotNull Object value) {
+    return switch (value) {
+      case String string -> "\"" + StringUtil.escapeStringCharacters(string) + "\"";
+      case ImmutableSeq<?> list -> list.joinToString(", ", "[", "]", ErasedEvaluator::show);
+      case Pair(var lhs, var rhs) -> "(" + show(lhs) + ", " + show(rhs) + ")";
+      case Con(var ref, var args) -> args.view().filter(arg -> arg != ERASED)
+        .map(arg -> arg instanceof Con(_, var nested) && nested.anyMatch(x -> x != ERASED)
+          ? "(" + show(arg) + ")" : show(arg))
+        .prepended(ref.name())
+        .joinToString(" ");
+      case Lam _ -> "λ";
+      default -> value.toString();
+    };
+  }
+}
@@ -12,8 +12,12 @@ import org.aya.syntax.core.term.repr.MetaLitTerm;
 import org.aya.tyck.TyckState;
 import org.aya.tyck.tycker.Problematic;
 import org.aya.tyck.tycker.Stateful;
+import org.aya.util.Profiler;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
 
 public interface Finalizer {
   @NotNull TyckState state();
@@ -27,33 +31,93 @@ public interface Finalizer {
   }
   @NotNull Term zonk(@NotNull Term term);
 
-  record Freeze(@NotNull Stateful delegate) implements Finalizer {
+  /** How many terms are zonked, and how many of them are found in a {@link Memo} */
+  final class Stats {
+    private long visited = 0;
+    private long reused = 0;
+
+    public long visited() { return visited; }
+    public long reused() { return reused; }
+
+    /** Attaches the counters to a profiler span, and starts counting from zero */
+    public void drainTo(@NotNull Profiler.Span span) {
+      span.arg("zonk_visited", visited);
+      span.arg("zonk_reused", reused);
+      visited = reused = 0;
+    }
+  }
+
+  /**
+   * The results of one zonking pass, by the identity of the input terms.
+   * Meta solutions are instantiated into many places, so the same term object is often
+   * met many times in one pass, and zonking it once also keeps the result shared.
+   * The solutions do not change during a pass, so the results are stable.
+   */
+  final class Memo {
+    private final @NotNull IdentityHashMap<Term, Term> results = new IdentityHashMap<>();
+    private final @NotNull Stats stats;
+    /** The number of problems reported in this pass */
+    int failures = 0;
+
+    public Memo(@NotNull Stats stats) { this.stats = stats; }
+
+    @Nullable Term get(@NotNull Term term) {
+      stats.visited++;
+      var result = results.get(term);
+      if (result != null) stats.reused++;
+      return result;
+    }
+
+    void put(@NotNull Term term, @NotNull Term result) { results.put(term, result); }
+  }
+
+  record Freeze(@NotNull Stateful delegate, @NotNull Memo memo) implements Finalizer {
+    public Freeze(@NotNull Stateful delegate) {
+      this(delegate, new Memo(delegate.state().zonkStats));
+    }
     @Override public @NotNull TyckState state() { return delegate.state(); }
-    @Override public @NotNull Term zonk(@NotNull Term term) { return doZonk(term); }
+    @Override public @NotNull Term zonk(@NotNull Term term) {
+      var result = memo.get(term);
+      if (result != null) return result;
+      result = doZonk(term);
+      memo.put(term, result);
+      return result;
+    }
   }
 
   record Zonk<T extends Problematic & Stateful>(
-    @NotNull T delegate, @NotNull MutableSinglyLinkedList<Term> stack
+    @NotNull T delegate, @NotNull MutableSinglyLinkedList<Term> stack, @NotNull Memo memo
   ) implements Finalizer, Stateful, Problematic {
     public Zonk(@NotNull T delegate) {
-      this(delegate, MutableSinglyLinkedList.create());
+      this(delegate, MutableSinglyLinkedList.create(), new Memo(delegate.state().zonkStats));
     }
     @Override public @NotNull TyckState state() { return delegate.state(); }
     @Override public @NotNull Reporter reporter() { return delegate.reporter(); }
     public @NotNull Term zonk(@NotNull Term term) {
+      var cached = memo.get(term);
+      if (cached != null) return cached;
+      var failures = memo.failures;
       stack.push(term);
       var result = doZonk(term);
       // result shall not be MetaPatTerm
       switch (result) {
-        case MetaCall meta when !meta.ref().isUser() -> fail(new UnsolvedMeta(stack.view()
-          .drop(1)
-          .map(this::freezeHoles)
-          .toImmutableSeq(), meta.ref().pos(), meta.ref().name()));
-        case MetaLitTerm mlt -> fail(new UnsolvedLit(mlt));
+        case MetaCall meta when !meta.ref().isUser() -> {
+          memo.failures++;
+          fail(new UnsolvedMeta(stack.view()
+            .drop(1)
+            .map(this::freezeHoles)
+            .toImmutableSeq(), meta.ref().pos(), meta.ref().name()));
+        }
+        case MetaLitTerm mlt -> {
+          memo.failures++;
+          fail(new UnsolvedLit(mlt));
+        }
         default -> {
         }
       }
       stack.pop();
+      // Problems are reported once per occurrence, with the context of that occurrence
+      if (failures == memo.failures) memo.put(term, result);
       return result;
     }
   }
@@ -0,0 +1,113 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableMap;
+import kala.tuple.Tuple2;
+import org.aya.generic.InterruptException;
+import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.literate.CodeOptions;
+import org.aya.unify.ClosedTerms;
+import org.aya.util.Profiler;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * What a {@link Normalizer} has done, and the limit of what it can do.
+ * Only for REPL/literate mode, the type checker never sets {@link Normalizer#stats}.
+ */
+public final class NormalizeStats {
+  public final @NotNull CodeOptions.Budget budget;
+  private final long deadline;
+  private final @NotNull MutableMap<AnyDef, Integer> unfolds = MutableLinkedHashMap.of();
+  private long steps = 0;
+  private long betas = 0;
+  private long metas = 0;
+  private int peakSize = 0;
+
+  public NormalizeStats(@NotNull CodeOptions.Budget budget) {
+    this.budget = budget;
+    this.deadline = budget.millis() > 0 ? System.nanoTime() + budget.millis() * 1_000_000 : Long.MAX_VALUE;
+  }
+
+  void unfold(@NotNull AnyDef def, @NotNull Term result) {
+    unfolds.put(def, unfolds.getOrDefault(def, 0) + 1);
+    // measuring a term is a walk, so only some of them are measured
+    if ((steps & (SIZE_SAMPLE - 1)) == 0) peakSize = Math.max(peakSize, size(result));
+    step();
+  }
+
+  void beta() {
+    betas++;
+    step();
+  }
+
+  void meta() {
+    metas++;
+    step();
+  }
+
+  private void step() {
+    steps++;
+    if (budget.steps() > 0 && steps > budget.steps()) throw new Exhausted(this);
+    // reading the clock is not free
+    if ((steps & 0xFF) == 0 && System.nanoTime() > deadline) throw new Exhausted(this);
+  }
+
+  public long steps() { return steps; }
+  public long betas() { return betas; }
+  public long metas() { return metas; }
+  /** The largest of the measured unfolded terms, see {@link #SIZE_SAMPLE} and {@link #SIZE_LIMIT} */
+  public int peakSize() { return peakSize; }
+
+  /** @return the most unfolded definitions with their unfold counts, most unfolded first */
+  public @NotNull ImmutableSeq<Tuple2<AnyDef, Integer>> hottest(int n) {
+    return unfolds.toImmutableSeq()
+      .sorted((a, b) -> Integer.compare(b.component2(), a.component2()))
+      .take(n);
+  }
+
+  /** Attaches the counters to a profiler span */
+  public void record(@NotNull Profiler.Span span) {
+    span.arg("steps", steps);
+    span.arg("unfolds", steps - betas - metas);
+    span.arg("betas", betas);
+    span.arg("metas", metas);
+    span.arg("peak_size", peakSize);
+  }
+
+  /** One in this many steps measures the unfolded term, a power of two */
+  private static final int SIZE_SAMPLE = 64;
+  private static final int SIZE_LIMIT = 1 << 16;
+
+  /**
+   * The number of nodes in a term, up to {@link #SIZE_LIMIT}.
+   * A {@link org.aya.syntax.core.Closure.Jit} is not looked into, since that means running it.
+   */
+  private static int size(@NotNull Term term) {
+    var todo = new ArrayDeque<Term>();
+    todo.push(term);
+    var size = 0;
+    while (!todo.isEmpty() && size < SIZE_LIMIT) {
+      var t = todo.pop();
+      size++;
+      if (ClosedTerms.holdsJit(t)) continue;
+      t.descent(sub -> {
+        todo.push(sub);
+        return sub;
+      });
+    }
+    return size;
+  }
+
+  /** Thrown when the {@link #budget} is used up */
+  public static final class Exhausted extends InterruptException {
+    public final @NotNull NormalizeStats stats;
+    public Exhausted(@NotNull NormalizeStats stats) { this.stats = stats; }
+    @Override public InterruptStage stage() { return InterruptStage.Normalizing; }
+  }
+}
@@ -4,12 +4,14 @@ package org.aya.normalize;
 
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.immutable.ImmutableSet;
+import kala.collection.mutable.MutableList;
 import kala.control.Either;
 import kala.control.Option;
 import kala.control.Result;
 import org.aya.generic.Modifier;
 import org.aya.syntax.compile.JitFn;
 import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.FnDefLike;
 import org.aya.syntax.core.pat.PatMatcher;
 import org.aya.syntax.core.term.*;
 import org.aya.syntax.core.term.call.*;
@@ -23,7 +25,9 @@ import org.aya.syntax.ref.AnyVar;
 import org.aya.tyck.TyckState;
 import org.aya.tyck.tycker.Stateful;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
 import static org.aya.generic.State.Stuck;
@@ -38,67 +42,101 @@ import static org.aya.generic.State.Stuck;
 public final class Normalizer implements UnaryOperator<Term> {
   public final @NotNull TyckState state;
   public @NotNull ImmutableSet<AnyVar> opaque = ImmutableSet.empty();
+  /** Counts the reductions and enforces a budget if not null, see {@link NormalizeStats} */
+  public @Nullable NormalizeStats stats = null;
+  /** The compiled version of a function, unfolded instead of its {@link FnDef}, or null to interpret it */
+  public @NotNull Function<FnDef.Delegate, @Nullable JitFn> compiled = _ -> null;
   private boolean usePostTerm = false;
   public Normalizer(@NotNull TyckState state) { this.state = state; }
 
+  /**
+   * The reducts are normalized by the next iteration instead of a recursive call,
+   * so a long chain of unfoldings does not grow the stack.
+   */
   @Override public Term apply(Term term) {
-    if (term instanceof StableWHNF || term instanceof FreeTerm) return term;
-    // ConCall for point constructors are always in WHNF
-    if (term instanceof ConCall con && !con.ref().hasEq()) return con;
-    var postTerm = term.descent(this);
-    // descent may change the java type of term, i.e. beta reduce
-    var defaultValue = usePostTerm ? postTerm : term;
+    while (true) {
+      if (term instanceof StableWHNF || term instanceof FreeTerm) return term;
+      // ConCall for point constructors are always in WHNF
+      if (term instanceof ConCall con && !con.ref().hasEq()) return con;
+      var postTerm = term.descent(this);
+      // descent may change the java type of term, i.e. beta reduce
+      var defaultValue = usePostTerm ? postTerm : term;
 
-    return switch (postTerm) {
-      case StableWHNF _, FreeTerm _ -> postTerm;
-      case BetaRedex app -> {
-        var result = app.make();
-        yield result == app ? defaultValue : apply(result);
-      }
-      case FnCall(var fn, int ulift, var args) -> switch (fn) {
-        case JitFn instance -> {
-          var result = instance.invoke(() -> defaultValue, args);
-          if (defaultValue != result) yield apply(result.elevate(ulift));
-          yield result;
+      Term next;
+      switch (postTerm) {
+        case StableWHNF _, FreeTerm _ -> { return postTerm; }
+        case BetaRedex app -> {
+          var result = app.make();
+          if (result == app) return defaultValue;
+          if (stats != null) stats.beta();
+          next = result;
         }
-        case FnDef.Delegate delegate -> {
-          FnDef core = delegate.core();
-          if (core == null) yield defaultValue;
-          if (!isOpaque(core)) yield switch (core.body()) {
-            case Either.Left(var body) -> apply(body.instantiateTele(args.view()));
-            case Either.Right(var clauses) -> {
-              var result = tryUnfoldClauses(clauses, args, ulift, core.is(Modifier.Overlap));
-              // we may get stuck
-              if (result.isEmpty()) yield defaultValue;
-              yield apply(result.get());
-            }
-          };
-          yield defaultValue;
+        case FnCall(var fn, int ulift, var args) -> {
+          var result = unfold(fn, ulift, args);
+          if (result == null) return defaultValue;
+          next = result;
         }
-      };
-      case RuleReducer reduceRule -> {
-        var result = reduceRule.rule().apply(reduceRule.args());
-        if (result != null) yield apply(result);
-        // We can't handle it, try to delegate to FnCall
-        yield switch (reduceRule) {
-          case RuleReducer.Fn fn -> apply(fn.toFnCall());
-          case RuleReducer.Con _ -> postTerm;
-        };
-      }
-      case ConCall(var head, _) when !head.ref().hasEq() -> postTerm;
-      case ConCall call when call.conArgs().getLast() instanceof DimTerm dim ->
-        call.head().ref().equality(call.args(), dim == DimTerm.I0);
-      case PrimCall prim -> state.primFactory.unfold(prim, state);
-      case MetaPatTerm meta -> meta.inline(this);
-      case MetaCall meta -> state.computeSolution(meta, this);
-      case MetaLitTerm meta -> meta.inline(this);
-      case CoeTerm(var type, var r, var s) -> {
-        if (r instanceof DimTerm || r instanceof FreeTerm) {
-          if (r.equals(s)) yield new LamTerm(new LocalTerm(0));
+        case RuleReducer reduceRule -> {
+          var result = reduceRule.rule().apply(reduceRule.args());
+          if (result != null) next = result;
+          // We can't handle it, try to delegate to FnCall
+          else if (reduceRule instanceof RuleReducer.Fn fn) next = fn.toFnCall();
+          else return postTerm;
+        }
+        case ConCall(var head, _) when !head.ref().hasEq() -> { return postTerm; }
+        case ConCall call when call.conArgs().getLast() instanceof DimTerm dim -> {
+          return call.head().ref().equality(call.args(), dim == DimTerm.I0);
         }
-        yield defaultValue;
+        case PrimCall prim -> { return state.primFactory.unfold(prim, state); }
+        case MetaPatTerm meta -> { return meta.inline(this); }
+        case MetaCall meta -> {
+          var result = state.computeSolution(meta, this);
+          if (stats != null && result != meta) stats.meta();
+          return result;
+        }
+        case MetaLitTerm meta -> { return meta.inline(this); }
+        case CoeTerm(var type, var r, var s) -> {
+          if (r instanceof DimTerm || r instanceof FreeTerm) {
+            if (r.equals(s)) return new LamTerm(new LocalTerm(0));
+          }
+          return defaultValue;
+        }
+        default -> { return defaultValue; }
+      }
+      term = next;
+    }
+  }
+
+  /** @return the unfolded body of {@param fn}, or null if stuck */
+  private @Nullable Term unfold(@NotNull FnDefLike fn, int ulift, @NotNull ImmutableSeq<Term> args) {
+    return switch (fn) {
+      case JitFn instance -> {
+        var result = instance.tryInvoke(args);
+        if (result == null) yield null;
+        if (stats != null) stats.unfold(instance, result);
+        // a tail call returned by the compiled code is unfolded by the loop in apply, see JitFn#trampoline
+        yield result.elevate(ulift);
+      }
+      case FnDef.Delegate delegate -> {
+        FnDef core = delegate.core();
+        if (core == null || isOpaque(core)) yield null;
+        var jit = compiled.apply(delegate);
+        if (jit != null) yield unfold(jit, ulift, args);
+        yield switch (core.body()) {
+          case Either.Left(var body) -> {
+            var result = body.instantiateTele(args.view());
+            if (stats != null) stats.unfold(delegate, result);
+            yield result;
+          }
+          case Either.Right(var clauses) -> {
+            var result = tryUnfoldClauses(clauses, args, ulift, core.is(Modifier.Overlap));
+            // we may get stuck
+            if (result.isEmpty()) yield null;
+            if (stats != null) stats.unfold(delegate, result.get());
+            yield result.get();
+          }
+        };
       }
-      default -> defaultValue;
     };
   }
 
@@ -124,10 +162,40 @@ public final class Normalizer implements UnaryOperator<Term> {
     return Option.none();
   }
 
-  private class Full implements UnaryOperator<Term> {
-    { usePostTerm = true; }
+  /**
+   * Full normalization with an explicit stack instead of a recursive {@link Term#descent},
+   * so deep terms like long lists do not overflow.
+   * {@link Term#descent} is called once to collect the subterms and once more to put back the normalized ones,
+   * the first one also turns the {@link org.aya.syntax.core.Closure.Jit}s into terms, so they are run only once.
+   */
+  private @NotNull Term full(@NotNull Term term) {
+    usePostTerm = true;
+    var stack = MutableList.of(new FullFrame(term));
+    while (true) {
+      var frame = stack.getLast();
+      if (frame.results.size() < frame.children.size()) {
+        stack.append(new FullFrame(frame.children.get(frame.results.size())));
+        continue;
+      }
+      stack.removeLast();
+      var it = frame.results.iterator();
+      var result = frame.head.descent(_ -> it.next());
+      if (stack.isEmpty()) return result;
+      stack.getLast().results.append(result);
+    }
+  }
+
+  private final class FullFrame {
+    final @NotNull Term head;
+    final @NotNull MutableList<Term> children = MutableList.create();
+    final @NotNull MutableList<Term> results = MutableList.create();
 
-    @Override public Term apply(Term term) { return Normalizer.this.apply(term).descent(this); }
+    FullFrame(@NotNull Term term) {
+      head = Normalizer.this.apply(term).descent(t -> {
+        children.append(t);
+        return t;
+      });
+    }
   }
 
   /**
@@ -137,7 +205,7 @@ public final class Normalizer implements UnaryOperator<Term> {
   public @NotNull Term normalize(Term term, NormalizeMode mode) {
     return switch (mode) {
       case HEAD -> apply(term);
-      case FULL -> new Full().apply(term);
+      case FULL -> full(term);
       case NULL -> new Finalizer.Freeze(() -> state).zonk(term);
       case null -> new Finalizer.Freeze(() -> state).zonk(term);
     };
@@ -0,0 +1,38 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize.error;
+
+import org.aya.normalize.NormalizeStats;
+import org.aya.prettier.BasePrettier;
+import org.aya.pretty.doc.Doc;
+import org.aya.util.error.SourcePos;
+import org.aya.util.prettier.PrettierOptions;
+import org.aya.util.reporter.Problem;
+import org.jetbrains.annotations.NotNull;
+
+/** @param exhausted whether the normalization is stopped by the budget */
+public record NormalizeStatistics(
+  @Override @NotNull SourcePos sourcePos,
+  @NotNull NormalizeStats stats,
+  boolean exhausted
+) implements Problem {
+  @Override public @NotNull Doc describe(@NotNull PrettierOptions options) {
+    var budget = stats.budget;
+    var bySteps = budget.steps() > 0 && stats.steps() > budget.steps();
+    var headline = exhausted
+      ? Doc.english("Normalization is stopped, as it exceeds the budget of "
+      + (bySteps ? budget.steps() + " steps." : budget.millis() + " milliseconds."))
+      : Doc.english("Normalization statistics:");
+    var hottest = stats.hottest(5);
+    return Doc.vcat(
+      headline,
+      Doc.par(1, Doc.plain("steps: " + stats.steps() + ", beta reductions: " + stats.betas()
+        + ", meta solutions inlined: " + stats.metas() + ", largest measured unfolded term: " + stats.peakSize())),
+      hottest.isEmpty() ? Doc.empty() : Doc.english("The most unfolded definitions:"),
+      Doc.par(1, Doc.vcat(hottest.map(t ->
+        Doc.sep(BasePrettier.refVar(t.component1()), Doc.plain("unfolded " + t.component2() + " times")))))
+    );
+  }
+
+  @Override public @NotNull Severity level() { return exhausted ? Severity.ERROR : Severity.INFO; }
+}
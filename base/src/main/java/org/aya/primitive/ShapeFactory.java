@@ -2,11 +2,14 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.primitive;
 
+import kala.collection.MapLike;
 import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
 import kala.control.Option;
+import kala.tuple.Tuple;
 import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.def.TyckAnyDef;
 import org.aya.syntax.core.def.TyckDef;
@@ -15,19 +18,43 @@ import org.aya.syntax.core.repr.ShapeRecognition;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Discovered shapes, indexed by definition and by shape.
+ * The two indices are always updated together, so {@link #discovered} is not exposed for modification.
+ * <p>
+ * The shapes of a {@link #parent} are looked up after the ones here, without being copied,
+ * so many factories can share the shapes found before them.
+ */
 public class ShapeFactory {
-  public @NotNull MutableMap<AnyDef, ShapeRecognition> discovered = MutableLinkedHashMap.of();
+  private final @NotNull MutableMap<AnyDef, ShapeRecognition> discovered = MutableLinkedHashMap.of();
+  private final @NotNull MutableMap<AyaShape, MutableList<AyaShape.FindImpl>> byShape = MutableMap.create();
+  /** Must not change while this factory is in use */
+  private final @Nullable ShapeFactory parent;
 
+  public ShapeFactory() { this(null); }
+  public ShapeFactory(@Nullable ShapeFactory parent) { this.parent = parent; }
+
+  /** @return the implementations of {@code shape}, in the order of discovery */
   public @NotNull ImmutableSeq<AyaShape.FindImpl> findImpl(@NotNull AyaShape shape) {
-    return discovered.view()
-      .map(AyaShape.FindImpl::new)
-      .filter(t -> t.recog().shape() == shape)
-      .toImmutableSeq();
+    var impls = byShape.getOrNull(shape);
+    var here = impls == null ? ImmutableSeq.<AyaShape.FindImpl>empty() : impls.toImmutableSeq();
+    return parent == null ? here : parent.findImpl(shape).appendedAll(here);
   }
 
   public @NotNull Option<ShapeRecognition> find(@Nullable AnyDef def) {
     if (def == null) return Option.none();
-    return discovered.getOption(def);
+    var here = discovered.getOption(def);
+    return here.isDefined() || parent == null ? here : parent.find(def);
+  }
+
+  /** @return all the recognitions, in the order of discovery */
+  public @NotNull ImmutableSeq<AyaShape.FindImpl> discovered() {
+    return parent == null ? discoveredHere() : parent.discovered().appendedAll(discoveredHere());
+  }
+
+  /** @return the recognitions made by this factory, not by the {@link #parent} */
+  public @NotNull ImmutableSeq<AyaShape.FindImpl> discoveredHere() {
+    return discovered.view().map(AyaShape.FindImpl::new).toImmutableSeq();
   }
 
   /** @implNote assumption: defs can have only one shape */
@@ -36,16 +63,33 @@ public class ShapeFactory {
   }
 
   public void bonjour(@NotNull AnyDef def, @NotNull ShapeRecognition shape) {
-    discovered.put(def, shape);
+    var impl = new AyaShape.FindImpl(def, shape);
+    var old = discovered.put(def, shape);
+    if (old.isDefined()) {
+      var impls = byShape.get(old.get().shape());
+      var index = impls.indexWhere(i -> i.def().equals(def));
+      if (old.get().shape() == shape.shape()) {
+        impls.set(index, impl);
+        return;
+      }
+      impls.removeAt(index);
+    }
+    byShape.getOrPut(shape.shape(), MutableList::create).append(impl);
   }
 
   /** Discovery of shaped literals */
   public void bonjour(@NotNull TyckDef def) {
     for (var shape : AyaShape.values()) {
-      new ShapeMatcher(ImmutableMap.from(discovered)).match(shape, def)
+      if (!ShapeMatcher.mayMatch(shape, def)) continue;
+      // few definitions may match, so the shapes of the parents are only put together for them
+      MapLike<AnyDef, ShapeRecognition> known = parent == null ? discovered
+        : ImmutableMap.from(discovered().view().map(impl -> Tuple.of(impl.def(), impl.recog())));
+      new ShapeMatcher(known).match(shape, def)
         .ifDefined(recog -> bonjour(def, recog));
     }
   }
 
-  public void importAll(@NotNull ShapeFactory other) { discovered.putAll(other.discovered); }
+  public void importAll(@NotNull ShapeFactory other) {
+    other.discovered().forEach(impl -> bonjour(impl.def(), impl.recog()));
+  }
 }
@@ -2,6 +2,7 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.primitive;
 
+import kala.collection.MapLike;
 import kala.collection.SeqLike;
 import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
@@ -39,7 +40,7 @@ public record ShapeMatcher(
   @NotNull Captures captures,
   @NotNull MutableMap<AnyVar, AnyVar> teleSubst,
   // --------
-  @NotNull ImmutableMap<AnyDef, ShapeRecognition> discovered
+  @NotNull MapLike<AnyDef, ShapeRecognition> discovered
 ) {
 
   public record Captures(
@@ -91,10 +92,28 @@ public record ShapeMatcher(
     this(ImmutableMap.empty());
   }
 
-  public ShapeMatcher(@NotNull ImmutableMap<AnyDef, ShapeRecognition> discovered) {
+  /** @param discovered not copied, so it should not change during matching */
+  public ShapeMatcher(@NotNull MapLike<AnyDef, ShapeRecognition> discovered) {
     this(Captures.create(), MutableMap.create(), discovered);
   }
 
+  /**
+   * A cheap check on the outline of {@code def}, so that most definitions never go through {@link #match}.
+   *
+   * @return false if {@code def} is definitely not of this shape
+   */
+  public static boolean mayMatch(@NotNull AyaShape shape, @NotNull TyckDef def) {
+    return switch (new MatchDecl(shape.codeShape(), def)) {
+      case MatchDecl(DataShape dataShape, DataDef data) ->
+        dataShape.cons().sizeEquals(data.body) && dataShape.tele().sizeEquals(data.telescope());
+      case MatchDecl(FnShape fnShape, FnDef fn) -> fnShape.body().isLeft() == fn.body().isLeft()
+        && fnShape.tele().sizeEquals(fn.telescope())
+        && (fn.body().isLeft() || fn.is(Modifier.Overlap)
+        || fnShape.body().getRightValue().sizeEquals(fn.body().getRightValue()));
+      default -> false;
+    };
+  }
+
   public Option<ShapeRecognition> match(@NotNull AyaShape shape, @NotNull TyckDef def) {
     if (matchDecl(new MatchDecl(shape.codeShape(), def))) {
       return Option.some(new ShapeRecognition(shape, captures.extractGlobal()));
@@ -3,27 +3,38 @@
 package org.aya.resolve.context;
 
 import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableSet;
 import org.aya.syntax.concrete.stmt.ModuleName;
 import org.aya.syntax.ref.AnyVar;
 import org.aya.syntax.ref.LocalVar;
+import org.aya.util.HashTrie;
 import org.aya.util.error.SourcePos;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
-import java.util.Objects;
 
 /**
  * Introduces a locally bound variable to the context.
  *
+ * @param base  the nearest ancestor that is not a {@link BindContext}
+ * @param scope all the variables bound between {@link #base} and {@code this}, the inner ones shadow the outer ones
  * @author re-xyr
  */
 public record BindContext(
   @NotNull Context parent,
   @NotNull String name,
-  @NotNull LocalVar ref
+  @NotNull LocalVar ref,
+  @NotNull Context base,
+  @NotNull HashTrie<String, LocalVar> scope
 ) implements Context {
+  public BindContext(@NotNull Context parent, @NotNull String name, @NotNull LocalVar ref) {
+    this(parent, name, ref,
+      parent instanceof BindContext bind ? bind.base : parent,
+      (parent instanceof BindContext bind ? bind.scope : HashTrie.<String, LocalVar>empty()).put(name, ref));
+  }
+
   @Override public @NotNull Context parent() {
     return parent;
   }
@@ -37,8 +48,31 @@ public record BindContext(
   }
 
   @Override public MutableList<LocalVar> collect(@NotNull MutableList<LocalVar> container) {
-    if (container.noneMatch(v -> Objects.equals(v.name(), ref.name()))) container.append(ref);
-    return parent.collect(container);
+    var seen = MutableSet.<String>create();
+    container.forEach(v -> seen.add(v.name()));
+    Context ctx = this;
+    while (ctx instanceof BindContext bind) {
+      if (seen.add(bind.ref.name())) container.append(bind.ref);
+      ctx = bind.parent;
+    }
+    return ctx.collect(container);
+  }
+
+  @Override public @Nullable AnyVar getUnqualifiedMaybe(@NotNull String name, @NotNull SourcePos sourcePos) {
+    var local = scope.get(name);
+    return local != null ? local : base.getUnqualifiedMaybe(name, sourcePos);
+  }
+
+  @Override public @Nullable AnyVar getQualifiedMaybe(
+    @NotNull ModuleName.Qualified modName,
+    @NotNull String name,
+    @NotNull SourcePos sourcePos
+  ) {
+    return base.getQualifiedMaybe(modName, name, sourcePos);
+  }
+
+  @Override public @Nullable ModuleExport getModuleMaybe(@NotNull ModuleName.Qualified modName) {
+    return base.getModuleMaybe(modName);
   }
 
   @Override public @Nullable LocalVar getUnqualifiedLocalMaybe(
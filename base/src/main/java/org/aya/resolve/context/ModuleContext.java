@@ -173,13 +173,30 @@ public sealed interface ModuleContext extends Context permits NoExportContext, P
     reportAll(filterProblem.concat(mapProblem));
 
     var renamed = mapRes.result();
-    renamed.symbols().forEach((name, ref) ->
-      importSymbol(ref, modName, name, accessibility, sourcePos));
+    importSymbols(renamed, modName, accessibility, sourcePos);
 
     // import the modules that {renamed} exported
     renamed.modules().forEach((qname, mod) -> importModule(qname, mod, accessibility, sourcePos));
   }
 
+  /**
+   * Adding all the symbols of an opened module, they are shared with {@param export} rather than copied.
+   *
+   * @see ModuleSymbol#addLayer
+   */
+  default void importSymbols(
+    @NotNull ModuleExport export,
+    @NotNull ModuleName.Qualified fromModule,
+    @NotNull Stmt.Accessibility acc,
+    @NotNull SourcePos sourcePos
+  ) {
+    export.symbols().forEach((name, ref) -> checkImport(ref, fromModule, name, sourcePos));
+    symbols().addLayer(fromModule, export.shareSymbols());
+    if (acc == Stmt.Accessibility.Public) export.symbols().forEach((name, ref) -> {
+      if (!exportSymbol(name, ref)) reportAndThrow(new NameProblem.DuplicateExportError(name, sourcePos));
+    });
+  }
+
   /**
    * Adding a new symbol to this module.
    */
@@ -190,8 +207,26 @@ public sealed interface ModuleContext extends Context permits NoExportContext, P
     @NotNull Stmt.Accessibility acc,
     @NotNull SourcePos sourcePos
   ) {
-    var symbols = symbols();
-    var candidates = symbols.get(name);
+    checkImport(ref, fromModule, name, sourcePos);
+    symbols().add(name, ref, fromModule);
+
+    // Only `AnyDefVar`s can be exported.
+    if (ref instanceof AnyDefVar defVar && acc == Stmt.Accessibility.Public) {
+      var success = exportSymbol(name, defVar);
+      if (!success) {
+        reportAndThrow(new NameProblem.DuplicateExportError(name, sourcePos));
+      }
+    }
+  }
+
+  /** Reports the problems of adding {@param ref} as {@param name} to this module */
+  private void checkImport(
+    @NotNull AnyVar ref,
+    @NotNull ModuleName fromModule,
+    @NotNull String name,
+    @NotNull SourcePos sourcePos
+  ) {
+    var candidates = symbols().get(name);
     if (candidates.isEmpty()) {
       if (getUnqualifiedMaybe(name, sourcePos) != null
         && (!(ref instanceof LocalVar local) || local.generateKind() != GenerateKind.Basic.Anonymous)) {
@@ -205,16 +240,6 @@ public sealed interface ModuleContext extends Context permits NoExportContext, P
     } else if (candidates.isAmbiguous() || candidates.get() != ref) {
       fail(new NameProblem.AmbiguousNameWarn(name, sourcePos));
     }
-
-    symbols.add(name, ref, fromModule);
-
-    // Only `AnyDefVar`s can be exported.
-    if (ref instanceof AnyDefVar defVar && acc == Stmt.Accessibility.Public) {
-      var success = exportSymbol(name, defVar);
-      if (!success) {
-        reportAndThrow(new NameProblem.DuplicateExportError(name, sourcePos));
-      }
-    }
   }
 
   /**
@@ -2,6 +2,7 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.resolve.context;
 
+import kala.collection.MapView;
 import kala.collection.Seq;
 import kala.collection.SeqView;
 import kala.collection.immutable.ImmutableSeq;
@@ -23,15 +24,58 @@ import java.util.function.Consumer;
 /**
  * ModuleExport stores symbols that imports from another module.
  * Any module should NOT export ambiguous symbol/module, they should be solved before they are exported.
+ * <p>
+ * A copy shares the maps with the original until either of them is modified,
+ * so opening or hiding names of a module does not copy all of its symbols.
  */
-public record ModuleExport(
-  @NotNull MutableMap<String, AnyDefVar> symbols,
-  @NotNull MutableMap<ModuleName.Qualified, ModuleExport> modules
-) {
-  public ModuleExport() { this(MutableMap.create(), MutableMap.create()); }
+public final class ModuleExport {
+  private @NotNull MutableMap<String, AnyDefVar> symbols;
+  private @NotNull MutableMap<ModuleName.Qualified, ModuleExport> modules;
+  /** Whether {@link #symbols} and {@link #modules} may be seen by another {@link ModuleExport} */
+  private boolean shared = false;
+
+  public ModuleExport() {
+    this.symbols = MutableMap.create();
+    this.modules = MutableMap.create();
+  }
 
   public ModuleExport(@NotNull ModuleExport that) {
-    this(MutableMap.from(that.symbols), MutableMap.from(that.modules));
+    this.symbols = that.symbols;
+    this.modules = that.modules;
+    this.shared = that.shared = true;
+  }
+
+  public @NotNull MapView<String, AnyDefVar> symbols() { return symbols.view(); }
+  public @NotNull MapView<ModuleName.Qualified, ModuleExport> modules() { return modules.view(); }
+
+  private void own() {
+    if (!shared) return;
+    symbols = MutableMap.from(symbols);
+    modules = MutableMap.from(modules);
+    shared = false;
+  }
+
+  /**
+   * The symbols of this module, which must not be modified afterward.
+   *
+   * @see ModuleSymbol#addLayer
+   */
+  @NotNull MapView<String, AnyDefVar> shareSymbols() {
+    shared = true;
+    return symbols.view();
+  }
+
+  /** Adds all the things exported by {@param that}, overwriting the existing ones */
+  public void putAll(@NotNull ModuleExport that) {
+    own();
+    symbols.putAll(that.symbols);
+    modules.putAll(that.modules);
+  }
+
+  public void clear() {
+    symbols = MutableMap.create();
+    modules = MutableMap.create();
+    shared = false;
   }
 
   /**
@@ -71,6 +115,7 @@ public record ModuleExport(
         }
       }
       case Hiding -> {
+        if (names.isEmpty()) return new ExportResult(this, ImmutableSeq.empty(), ImmutableSeq.empty());
         newModule = new ModuleExport(this);
 
         names.forEach(qname -> {
@@ -89,6 +134,7 @@ public record ModuleExport(
 
   @Contract(pure = true)
   @NotNull ExportResult map(@NotNull Seq<WithPos<UseHide.Rename>> mapper) {
+    if (mapper.isEmpty()) return new ExportResult(this, ImmutableSeq.empty(), ImmutableSeq.empty());
     var newExport = new ModuleExport(this);
     var badNames = MutableList.<QualifiedID>create();
     var shadowNames = MutableList.<WithPos<String>>create();
@@ -129,11 +175,13 @@ public record ModuleExport(
    * @return false if there already exist a symbol with the same name.
    */
   public boolean export(@NotNull String name, @NotNull AnyDefVar ref) {
+    own();
     var exists = symbols.put(name, ref);
     return exists.isEmpty();
   }
 
   public boolean export(@NotNull ModuleName.Qualified componentName, @NotNull ModuleExport module) {
+    own();
     return modules.put(componentName, module).isEmpty();
   }
 
@@ -148,6 +196,7 @@ public record ModuleExport(
   }
 
   private @Nullable ExportUnit remove(@NotNull ModuleName component, @NotNull String name) {
+    own();
     var symbol = component == ModuleName.This ? symbols.remove(name).getOrNull() : null;
     var module = modules.remove(component.resolve(name)).getOrNull();
     if (symbol == null && module == null) return null;
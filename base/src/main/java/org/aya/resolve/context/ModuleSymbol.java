@@ -4,24 +4,55 @@ package org.aya.resolve.context;
 
 import kala.collection.MapView;
 import kala.collection.SetView;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
 import org.aya.syntax.concrete.stmt.ModuleName;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiConsumer;
 
 /**
  * A container of symbols.
+ * <p>
+ * The symbols of an opened module are not copied into the table, but kept as a {@link Layer}
+ * shared with the {@link ModuleExport} of that module, and a lookup goes through the table and the layers.
  */
-public record ModuleSymbol<T>(@NotNull MutableMap<String, Candidate<T>> table) {
-  public ModuleSymbol() { this(MutableMap.create()); }
+public final class ModuleSymbol<T> {
+  /** @param symbols must not be modified afterward */
+  public record Layer<T>(@NotNull ModuleName.Qualified from, @NotNull MapView<String, T> symbols) { }
+
+  /** The symbols added one by one */
+  private final @NotNull MutableMap<String, Candidate<T>> table;
+  /** The opened modules, in the order they are opened */
+  private final @NotNull MutableList<Layer<? extends T>> layers;
+  /** The table merged with the layers, built by {@link #view()} and dropped on any change */
+  private @Nullable MapView<String, Candidate<T>> flat;
+
+  public ModuleSymbol() {
+    table = MutableMap.create();
+    layers = MutableList.create();
+  }
 
   public ModuleSymbol(@NotNull ModuleSymbol<T> other) {
-    this(MutableMap.from(other.table));
+    table = MutableMap.from(other.table);
+    layers = MutableList.from(other.layers);
   }
 
   public @NotNull Candidate<T> get(@NotNull String name) {
-    return table.getOrPut(name, Candidate.Imported::empty);
+    var candy = table.getOrNull(name);
+    for (var layer : layers) candy = lookup(candy, layer, name);
+    return candy == null ? Candidate.Imported.empty() : candy;
+  }
+
+  /** @return {@param candy} with the symbol of {@param layer}, a single candidate is not merged with anything */
+  private static <T, S extends T> @Nullable Candidate<T>
+  lookup(@Nullable Candidate<T> candy, @NotNull Layer<S> layer, @NotNull String name) {
+    var symbol = layer.symbols.getOrNull(name);
+    if (symbol == null) return candy;
+    var found = Candidate.Imported.<T>of(layer.from, symbol);
+    return candy == null ? found : candy.merge(found);
   }
 
   public boolean contains(@NotNull String name) { return !get(name).isEmpty(); }
@@ -34,12 +65,51 @@ public record ModuleSymbol<T>(@NotNull MutableMap<String, Candidate<T>> table) {
     var candy = Candidate.of(fromModule, symbol);
     var old = get(name);
     table.put(name, old.merge(candy));
+    flat = null;
+  }
+
+  /**
+   * Adds all the {@param symbols} from {@param fromModule} at once,
+   * the caller should check the conflicts like {@link #add} does.
+   */
+  public void addLayer(@NotNull ModuleName.Qualified fromModule, @NotNull MapView<String, ? extends T> symbols) {
+    if (symbols.isEmpty()) return;
+    layers.append(new Layer<>(fromModule, symbols));
+    flat = null;
   }
 
-  public @NotNull SetView<String> keysView() { return table.keysView(); }
-  public @NotNull MapView<String, Candidate<T>> view() { return table.view(); }
+  /**
+   * Merges every symbol of {@param other} into this one, the candidates of {@param other} win the conflicts.
+   *
+   * @see Candidate#merge
+   */
+  public void putAll(@NotNull ModuleSymbol<T> other) {
+    other.view().forEach((name, candy) -> table.put(name, get(name).merge(candy)));
+    flat = null;
+  }
+
+  public @NotNull SetView<String> keysView() {
+    return view().keysView();
+  }
+
+  public @NotNull MapView<String, Candidate<T>> view() {
+    if (layers.isEmpty()) return table.view();
+    if (flat != null) return flat;
+    var merged = MutableLinkedHashMap.<String, Candidate<T>>of();
+    table.keysView().forEach(name -> merged.put(name, get(name)));
+    layers.forEach(layer -> layer.symbols.keysView().forEach(name -> {
+      if (!merged.containsKey(name)) merged.put(name, get(name));
+    }));
+    return flat = merged.view();
+  }
 
   public void forEach(@NotNull BiConsumer<String, Candidate<T>> action) {
-    table.forEach(action);
+    view().forEach(action);
+  }
+
+  public void clear() {
+    table.clear();
+    layers.clear();
+    flat = null;
   }
 }
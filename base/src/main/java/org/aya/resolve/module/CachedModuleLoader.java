@@ -26,6 +26,11 @@ public class CachedModuleLoader<ML extends ModuleLoader> implements ModuleLoader
     return cache.getOrPut(qualified, () -> loader.load(path, recurseLoader));
   }
 
+  /** Makes {@param path} resolve to {@param info}, which is loaded elsewhere */
+  public void put(@NotNull ModulePath path, @NotNull ResolveInfo info) {
+    cache.put(path.toString(), info);
+  }
+
   @Override public boolean existsFileLevelModule(@NotNull ModulePath path) {
     return cache.containsKey(path.toString()) || loader.existsFileLevelModule(path);
   }
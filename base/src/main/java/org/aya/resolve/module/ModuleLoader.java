@@ -3,6 +3,8 @@
 package org.aya.resolve.module;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableSet;
+import org.aya.generic.stmt.TyckUnit;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
@@ -13,12 +15,17 @@ import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.tyck.order.AyaOrgaTycker;
 import org.aya.tyck.order.AyaSccTycker;
+import org.aya.tyck.order.ParallelOrgaTycker;
+import org.aya.tyck.order.TyckCache;
 import org.aya.tyck.tycker.Problematic;
+import org.aya.util.Profiler;
 import org.aya.util.reporter.DelayedReporter;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author re-xyr
  */
@@ -34,12 +41,23 @@ public interface ModuleLoader extends Problematic {
 
   default <E extends Exception> @NotNull ResolveInfo
   tyckModule(ResolveInfo resolveInfo, ModuleCallback<E> onTycked) throws E {
+    return tyckModule(resolveInfo, null, onTycked);
+  }
+
+  /** @param cache if not null, unchanged declarations are restored from it instead of being checked */
+  default <E extends Exception> @NotNull ResolveInfo
+  tyckModule(ResolveInfo resolveInfo, @Nullable TyckCache cache, ModuleCallback<E> onTycked) throws E {
     var SCCs = resolveInfo.depGraph().topologicalOrder();
     var delayedReporter = new DelayedReporter(reporter());
-    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter), resolveInfo);
+    var reused = cache != null ? cache.reuse(resolveInfo) : MutableSet.<TyckUnit>create();
+    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter, reused), resolveInfo);
     // in case we have un-messaged TyckException
     try (delayedReporter) {
-      SCCs.forEach(sccTycker::tyckSCC);
+      var executor = tyckExecutor();
+      if (executor != null && SCCs.sizeGreaterThan(1))
+        new ParallelOrgaTycker(sccTycker, executor).tyckSCCs(SCCs);
+      else SCCs.forEach(sccTycker::tyckSCC);
+      if (cache != null) cache.record(resolveInfo, sccTycker.sccTycker().noisy());
     } finally {
       if (onTycked != null) onTycked.onModuleTycked(
         resolveInfo, sccTycker.sccTycker().wellTyped().toImmutableSeq());
@@ -80,10 +98,21 @@ public interface ModuleLoader extends Problematic {
     @NotNull ModuleLoader recurseLoader
   ) {
     var resolver = new StmtResolvers(recurseLoader, resolveInfo);
-    resolver.resolve(program);
-    resolver.desugar(program);
+    var module = resolveInfo.thisModule().modulePath();
+    try (var _ = Profiler.span("resolve", module)) {
+      resolver.resolve(program);
+    }
+    try (var _ = Profiler.span("desugar", module)) {
+      resolver.desugar(program);
+    }
   }
 
+  /**
+   * @return where the independent SCCs of a module are checked concurrently, see {@link ParallelOrgaTycker},
+   * or null to check them one by one, which keeps the order of the problems and is the default
+   */
+  default @Nullable Executor tyckExecutor() { return null; }
+
   @Nullable ResolveInfo load(@NotNull ModulePath path, @NotNull ModuleLoader recurseLoader);
   default @Nullable ResolveInfo load(@NotNull ModulePath path) {
     return load(path, this);
@@ -3,6 +3,7 @@
 package org.aya.resolve.visitor;
 
 import org.aya.generic.stmt.TyckUnit;
+import org.aya.resolve.context.BindContext;
 import org.aya.resolve.context.Context;
 import org.aya.resolve.error.NameProblem;
 import org.aya.syntax.compile.JitCon;
@@ -39,7 +40,7 @@ public class PatternResolver implements PosedUnaryOperator<Pattern> {
     return switch (pat) {
       case Pattern.Bind bind -> {
         // Check whether this {bind} is a Con
-        var conMaybe = context.iterate(ctx -> isCon(ctx.getUnqualifiedLocalMaybe(bind.bind().name(), pos)));
+        var conMaybe = outer().iterate(ctx -> isCon(ctx.getUnqualifiedLocalMaybe(bind.bind().name(), pos)));
         if (conMaybe != null) {
           // It wants to be a con!
           addReference(conMaybe);
@@ -54,7 +55,7 @@ public class PatternResolver implements PosedUnaryOperator<Pattern> {
         var qid = qref.qualifiedID();
         if (!(qid.component() instanceof ModuleName.Qualified mod))
           throw new Panic("QualifiedRef#qualifiedID should be qualified");
-        var conMaybe = context.iterate(ctx -> isCon(ctx.getQualifiedLocalMaybe(mod, qid.name(), pos)));
+        var conMaybe = outer().iterate(ctx -> isCon(ctx.getQualifiedLocalMaybe(mod, qid.name(), pos)));
         if (conMaybe != null) {
           addReference(conMaybe);
           yield new Pattern.Con(pos, ConDefLike.from(conMaybe));
@@ -71,6 +72,11 @@ public class PatternResolver implements PosedUnaryOperator<Pattern> {
     };
   }
 
+  /** Skips the local variables, which are never constructors */
+  private @NotNull Context outer() {
+    return context instanceof BindContext bind ? bind.base() : context;
+  }
+
   private void addReference(@NotNull AnyDefVar defVar) {
     if (defVar instanceof DefVar<?, ?> fr) parentAdd.accept(fr.concrete);
   }
@@ -7,6 +7,7 @@ import kala.control.Either;
 import kala.control.Option;
 import org.aya.generic.Modifier;
 import org.aya.generic.term.SortKind;
+import org.aya.normalize.Finalizer;
 import org.aya.pretty.doc.Doc;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
@@ -47,10 +48,15 @@ import static org.aya.tyck.tycker.TeleTycker.loadTele;
 public record StmtTycker(
   @NotNull Reporter reporter,
   @NotNull ShapeFactory shapeFactory,
-  @NotNull PrimFactory primFactory
+  @NotNull PrimFactory primFactory,
+  @NotNull Finalizer.Stats zonkStats,
+  @NotNull Synthesizer.Stats synthStats
 ) implements Problematic {
+  public StmtTycker(@NotNull Reporter reporter, @NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory) {
+    this(reporter, shapeFactory, primFactory, new Finalizer.Stats(), new Synthesizer.Stats());
+  }
   private @NotNull ExprTycker mkTycker() {
-    return new ExprTycker(new TyckState(shapeFactory, primFactory),
+    return new ExprTycker(new TyckState(shapeFactory, primFactory, zonkStats, synthStats),
       new MapLocalCtx(), new LocalLet(), reporter);
   }
   public @NotNull TyckDef check(Decl predecl) {
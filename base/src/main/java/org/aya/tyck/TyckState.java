@@ -6,6 +6,7 @@ import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableStack;
 import org.aya.generic.AyaDocile;
+import org.aya.normalize.Finalizer;
 import org.aya.pretty.doc.Doc;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
@@ -15,6 +16,8 @@ import org.aya.syntax.ref.LocalCtx;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.syntax.ref.MetaVar;
 import org.aya.tyck.error.MetaVarProblem;
+import org.aya.unify.ClosedTerms;
+import org.aya.unify.Synthesizer;
 import org.aya.unify.Unifier;
 import org.aya.util.Ordering;
 import org.aya.util.error.SourcePos;
@@ -25,6 +28,7 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.IdentityHashMap;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
@@ -35,13 +39,40 @@ public final class TyckState {
   public final @NotNull MutableStack<LocalVar> classThis = MutableStack.create();
   public final @NotNull ShapeFactory shapeFactory;
   public final @NotNull PrimFactory primFactory;
+  public final @NotNull Finalizer.Stats zonkStats;
+  public final @NotNull Synthesizer.Stats synthStats;
+  /**
+   * Synthesized and whnf-ed types of closed terms, by identity, see {@link Synthesizer#trySynth}.
+   * Closed terms have no metas, so the types stay valid when metas are solved,
+   * and the {@link org.aya.unify.DoubleChecker} of each meta solution reuses the types found by the earlier ones.
+   */
+  private final @NotNull IdentityHashMap<Term, Term> synthesized = new IdentityHashMap<>();
+  private final @NotNull ClosedTerms closedTerms = new ClosedTerms();
 
   public TyckState(@NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory) {
+    this(shapeFactory, primFactory, new Finalizer.Stats(), new Synthesizer.Stats());
+  }
+  public TyckState(
+    @NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory,
+    @NotNull Finalizer.Stats zonkStats, @NotNull Synthesizer.Stats synthStats
+  ) {
     this.shapeFactory = shapeFactory;
     this.primFactory = primFactory;
+    this.zonkStats = zonkStats;
+    this.synthStats = synthStats;
   }
   @ApiStatus.Internal
-  public void solve(MetaVar meta, Term candidate) { solutions.put(meta, candidate); }
+  public void solve(MetaVar meta, Term candidate) {
+    solutions.put(meta, candidate);
+  }
+
+  public boolean isClosed(@NotNull Term term) { return closedTerms.isClosed(term); }
+  public @Nullable Term synthesized(@NotNull Term term) {
+    var type = synthesized.get(term);
+    synthStats.record(type != null);
+    return type;
+  }
+  public void synthesized(@NotNull Term term, @NotNull Term type) { synthesized.put(term, type); }
 
   private boolean solveEqn(@NotNull Reporter reporter, @NotNull Eqn eqn, boolean allowDelay) {
     var unifier = new Unifier(this, eqn.localCtx, reporter, eqn.pos, eqn.cmp, allowDelay);
@@ -120,6 +151,7 @@ public final class TyckState {
     eqns.clear();
     activeMetas.clear();
     solutions.clear();
+    synthesized.clear();
   }
 
   public record Eqn(
@@ -9,6 +9,7 @@ import org.aya.generic.InterruptException;
 import org.aya.generic.Modifier;
 import org.aya.generic.stmt.TyckOrder;
 import org.aya.generic.stmt.TyckUnit;
+import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.concrete.stmt.decl.Decl;
 import org.aya.syntax.concrete.stmt.decl.FnBody;
@@ -21,10 +22,13 @@ import org.aya.syntax.ref.DefVar;
 import org.aya.terck.BadRecursion;
 import org.aya.terck.CallResolver;
 import org.aya.tyck.StmtTycker;
+import org.aya.tyck.TyckState;
 import org.aya.tyck.error.TyckOrderError;
 import org.aya.tyck.tycker.Problematic;
+import org.aya.util.Profiler;
 import org.aya.util.error.Panic;
 import org.aya.util.reporter.CountingReporter;
+import org.aya.util.reporter.Problem;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.terck.CallGraph;
 import org.aya.util.terck.Diagonal;
@@ -37,33 +41,58 @@ import java.util.Comparator;
 /**
  * Tyck statements in SCC.
  *
+ * @param reused units restored by {@link TyckCache}, they are not checked again
+ * @param noisy  units that reported any problem
  * @see org.aya.tyck.ExprTycker
  */
 public record AyaSccTycker(
   @NotNull StmtTycker tycker,
   @NotNull CountingReporter reporter,
   @NotNull ResolveInfo resolveInfo,
-  @NotNull MutableList<@NotNull TyckDef> wellTyped
+  @NotNull MutableList<@NotNull TyckDef> wellTyped,
+  @NotNull MutableSet<TyckUnit> reused,
+  @NotNull MutableSet<TyckUnit> noisy
 ) implements SccTycker<TyckOrder, AyaSccTycker.SccTyckingFailed>, Problematic {
   public static @NotNull AyaSccTycker create(ResolveInfo info, @NotNull Reporter outReporter) {
+    return create(info, outReporter, MutableSet.create());
+  }
+
+  public static @NotNull AyaSccTycker
+  create(ResolveInfo info, @NotNull Reporter outReporter, @NotNull MutableSet<TyckUnit> reused) {
     var counting = CountingReporter.delegate(outReporter);
     var stmt = new StmtTycker(counting, info.shapeFactory(), info.primFactory());
-    return new AyaSccTycker(stmt, counting, info, MutableList.create());
+    return new AyaSccTycker(stmt, counting, info, MutableList.create(), reused, MutableSet.create());
+  }
+
+  /** @return a tycker of the same module, but with its own reporter, shapes and results */
+  public @NotNull AyaSccTycker fork(@NotNull Reporter outReporter, @NotNull ShapeFactory shapeFactory) {
+    var counting = CountingReporter.delegate(outReporter);
+    var stmt = new StmtTycker(counting, shapeFactory, tycker.primFactory());
+    return new AyaSccTycker(stmt, counting, resolveInfo, MutableList.create(), reused, MutableSet.create());
   }
 
   @Override public @NotNull ImmutableSeq<TyckOrder>
   tyckSCC(@NotNull ImmutableSeq<TyckOrder> scc) throws SccTyckingFailed {
+    var problems = problemSize();
     try {
       if (scc.isEmpty()) return ImmutableSeq.empty();
       if (scc.sizeEquals(1)) checkUnit(scc.getFirst());
       else checkMutual(scc);
+      if (problemSize() != problems) scc.forEach(order -> noisy.add(order.unit()));
       return ImmutableSeq.empty();
     } catch (SccTyckingFailed failed) {
+      scc.forEach(order -> noisy.add(order.unit()));
       reporter.clear();
       return failed.what;
     }
   }
 
+  private int problemSize() {
+    var size = 0;
+    for (var severity : Problem.Severity.values()) size += reporter.problemSize(severity);
+    return size;
+  }
+
   private void checkMutual(@NotNull ImmutableSeq<TyckOrder> scc) {
     var heads = scc.filterIsInstance(TyckOrder.Head.class);
     if (heads.sizeGreaterThanOrEquals(2)) {
@@ -101,7 +130,11 @@ public record AyaSccTycker(
       check(new TyckOrder.Body(fn));
     } else {
       check(order);
-      if (order instanceof TyckOrder.Body body) terck(ImmutableSeq.of(body));
+      if (order instanceof TyckOrder.Body body && !reused.contains(body.unit()))
+        try (var _ = Profiler.span("terck", resolveInfo.thisModule().modulePath(),
+          body.unit() instanceof Decl decl ? decl.ref().name() : null)) {
+          terck(ImmutableSeq.of(body));
+        }
     }
   }
   private void terck(@NotNull ImmutableSeq<TyckOrder.Body> units) {
@@ -123,7 +156,8 @@ public record AyaSccTycker(
     var targets = MutableSet.<TyckDef>from(fn);
     if (targets.isEmpty()) return;
     var graph = CallGraph.<Callable.Tele, TyckDef>create();
-    fn.forEach(def -> new CallResolver(resolveInfo.makeTyckState(), def, targets, graph).check());
+    fn.forEach(def -> new CallResolver(
+      new TyckState(tycker.shapeFactory(), tycker.primFactory()), def, targets, graph).check());
     graph.findBadRecursion().view()
       .sorted(Comparator.comparing(a -> domRef(a).concrete.sourcePos()))
       .forEach(f -> {
@@ -143,13 +177,25 @@ public record AyaSccTycker(
   }
 
   private void checkHeader(@NotNull TyckOrder order, @NotNull TyckUnit stmt) {
-    if (stmt instanceof TeleDecl decl) tycker.checkHeader(decl);
+    if (reused.contains(stmt)) return;
+    if (stmt instanceof TeleDecl decl)
+      try (var span = Profiler.span("signature", resolveInfo.thisModule().modulePath(), decl.ref().name())) {
+        tycker.checkHeader(decl);
+        tycker.zonkStats().drainTo(span);
+        tycker.synthStats().drainTo(span);
+      }
     if (reporter.anyError()) throw new SccTyckingFailed(ImmutableSeq.of(order));
   }
 
   private void checkBody(@NotNull TyckOrder order, @NotNull TyckUnit stmt) {
     if (stmt instanceof Decl decl) {
-      var def = tycker.check(decl);
+      TyckDef def;
+      if (reused.contains(decl)) def = decl.ref().core;
+      else try (var span = Profiler.span("tyck", resolveInfo.thisModule().modulePath(), decl.ref().name())) {
+        def = tycker.check(decl);
+        tycker.zonkStats().drainTo(span);
+        tycker.synthStats().drainTo(span);
+      }
       if (!decl.isExample) {
         // In case I'm not an example, remember me and recognize my shape
         wellTyped.append(def);
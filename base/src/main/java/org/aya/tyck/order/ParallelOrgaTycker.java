@@ -0,0 +1,196 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.order;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.generic.stmt.TyckOrder;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.concrete.Expr;
+import org.aya.syntax.concrete.Pattern;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.StmtVisitor;
+import org.aya.syntax.concrete.stmt.decl.DataDecl;
+import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.OrderedReporter;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks the SCCs of a module concurrently. An SCC is checked once the SCCs it depends on are checked,
+ * by a {@link AyaSccTycker#fork} with its own reporter and {@link ShapeFactory}.
+ * The shapes found by the SCCs are published as a chain of {@link ShapeFactory}s on top of the one of the module,
+ * and an SCC looks them up through the chain instead of copying them.
+ * The results are merged in the topological order, so the problems, well-typed definitions and
+ * discovered shapes are the same as checking the SCCs one by one.
+ * <p>
+ * Some SCCs are affected by more than their dependencies:
+ * <ul>
+ *   <li>Primitives modify the {@link org.aya.primitive.PrimFactory} shared by everyone,
+ *   so they are checked after every SCC before them, and before every SCC after them.</li>
+ *   <li>Literals are checked against all the shaped data discovered so far,
+ *   so they wait for the data before them, and never see the shapes after them.</li>
+ * </ul>
+ */
+public record ParallelOrgaTycker(@NotNull AyaOrgaTycker orga, @NotNull Executor executor) {
+  private record Result(
+    @NotNull AyaSccTycker tycker,
+    @NotNull ImmutableSeq<AyaShape.FindImpl> shapes
+  ) { }
+
+  /**
+   * The shapes found by the SCC {@code index}, in {@code factory} on top of the ones {@code below}.
+   *
+   * @param latest the largest index in the chain, an SCC can use the chain if it comes after all of them
+   */
+  private record Shapes(
+    int index, int latest, @NotNull ImmutableSeq<AyaShape.FindImpl> found,
+    @NotNull ShapeFactory factory, @Nullable Shapes below
+  ) {
+    public @NotNull Shapes publish(int index, @NotNull ImmutableSeq<AyaShape.FindImpl> found) {
+      var factory = new ShapeFactory(this.factory);
+      found.forEach(shape -> factory.bonjour(shape.def(), shape.recog()));
+      return new Shapes(index, Math.max(latest, index), found, factory, this);
+    }
+
+    /** @return the shapes found before the SCC {@param index} */
+    public @NotNull ShapeFactory before(int index) {
+      if (latest < index) return factory;
+      // some SCC after this one is done first, so its shapes are left out
+      var visible = MutableList.<Shapes>create();
+      var bottom = this;
+      for (; bottom.below != null; bottom = bottom.below)
+        if (bottom.index < index) visible.append(bottom);
+      var factory = new ShapeFactory(bottom.factory);
+      visible.toImmutableSeq().sorted(Comparator.comparingInt(Shapes::index)).forEach(shapes ->
+        shapes.found.forEach(shape -> factory.bonjour(shape.def(), shape.recog())));
+      return factory;
+    }
+  }
+
+  /** @param sccs in topological order, as {@link org.aya.util.terck.MutableGraph#topologicalOrder()} */
+  public void tyckSCCs(@NotNull ImmutableSeq<ImmutableSeq<TyckOrder>> sccs) {
+    var parent = orga.sccTycker();
+    var graph = parent.resolveInfo().depGraph();
+    var indexOf = MutableMap.<TyckOrder, Integer>create();
+    sccs.forEachIndexed((i, scc) -> scc.forEach(order -> indexOf.put(order, i)));
+
+    var results = new Result[sccs.size()];
+    var problems = new OrderedReporter(parent.reporter(), sccs.size());
+    var errors = new Throwable[sccs.size()];
+    var shapes = new AtomicReference<>(new Shapes(-1, -1, ImmutableSeq.empty(), parent.tycker().shapeFactory(), null));
+    var futures = new CompletableFuture<?>[sccs.size()];
+    CompletableFuture<?> lastPrim = CompletableFuture.completedFuture(null);
+    CompletableFuture<?> allData = lastPrim;
+    var sinceLastPrim = MutableList.<CompletableFuture<?>>create();
+    for (var i = 0; i < sccs.size(); i++) {
+      var index = i;
+      var scc = sccs.get(i);
+      var deps = MutableList.<CompletableFuture<?>>create();
+      deps.append(lastPrim);
+      scc.view()
+        .flatMap(graph::suc)
+        .mapNotNull(indexOf::getOrNull)
+        .filter(j -> j < index)
+        .distinct()
+        .forEach(j -> deps.append(futures[j]));
+      var isPrim = scc.anyMatch(order -> order.unit() instanceof PrimDecl);
+      if (isPrim) deps.appendAll(sinceLastPrim);
+      if (hasLiteral(scc)) deps.append(allData);
+
+      var future = CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+        try {
+          results[index] = tyck(index, scc, shapes, problems.task(index));
+        } catch (Throwable e) {
+          errors[index] = e;
+          throw e;
+        }
+      }, executor);
+      futures[i] = future;
+      if (isPrim) {
+        lastPrim = future;
+        sinceLastPrim.clear();
+      } else sinceLastPrim.append(future);
+      if (scc.anyMatch(order -> order.unit() instanceof DataDecl))
+        allData = CompletableFuture.allOf(allData, future);
+    }
+
+    try {
+      CompletableFuture.allOf(futures).exceptionally(_ -> null).join();
+    } finally {
+      // An SCC that is not checked either failed or depends on a failed one with a smaller index,
+      // so we stop at the first one, like checking them one by one.
+      for (var i = 0; i < sccs.size(); i++) {
+        var result = results[i];
+        if (result == null) {
+          var error = errors[i];
+          if (error instanceof RuntimeException e) throw e;
+          if (error instanceof Error e) throw e;
+          if (error != null) throw new CompletionException(error);
+          break;
+        }
+        problems.flush(i);
+        parent.wellTyped().appendAll(result.tycker.wellTyped());
+        parent.noisy().addAll(result.tycker.noisy());
+        var factory = parent.tycker().shapeFactory();
+        result.shapes.forEach(shape -> factory.bonjour(shape.def(), shape.recog()));
+      }
+    }
+  }
+
+  private @NotNull Result tyck(
+    int index, @NotNull ImmutableSeq<TyckOrder> scc,
+    @NotNull AtomicReference<Shapes> shapes,
+    @NotNull Reporter problems
+  ) {
+    var skipped = orga.skippedSet();
+    ImmutableSeq<TyckOrder> todo;
+    synchronized (skipped) {
+      todo = skipped.isEmpty() ? scc : scc.filterNot(skipped::contains);
+    }
+
+    var factory = new ShapeFactory(shapes.get().before(index));
+    var tycker = orga.sccTycker().fork(problems, factory);
+    var failed = tycker.tyckSCC(todo);
+    synchronized (skipped) {
+      orga.skip(failed);
+    }
+    var found = factory.discoveredHere();
+    if (found.isNotEmpty()) shapes.updateAndGet(top -> top.publish(index, found));
+    return new Result(tycker, found);
+  }
+
+  /**
+   * Whether {@param scc} has literals looking for shaped data, in expressions or in patterns,
+   * see {@link org.aya.tyck.ExprTycker} and {@link org.aya.tyck.pat.PatternTycker}.
+   * String literals are counted as well.
+   */
+  private static boolean hasLiteral(@NotNull ImmutableSeq<TyckOrder> scc) {
+    var finder = new StmtVisitor() {
+      boolean found = false;
+      @Override public void visitExpr(@NotNull SourcePos pos, @NotNull Expr expr) {
+        if (expr instanceof Expr.LitInt || expr instanceof Expr.LitString || expr instanceof Expr.Array) found = true;
+        else StmtVisitor.super.visitExpr(pos, expr);
+      }
+      @Override public void visitPattern(@NotNull SourcePos pos, @NotNull Pattern pat) {
+        if (pat instanceof Pattern.Number || pat instanceof Pattern.List) found = true;
+        else StmtVisitor.super.visitPattern(pos, pat);
+      }
+    };
+    for (var order : scc) {
+      if (order.unit() instanceof Stmt stmt) finder.accept(stmt);
+      if (finder.found) return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,335 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.order;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
+import kala.control.Either;
+import kala.value.LazyValue;
+import org.aya.generic.stmt.TyckOrder;
+import org.aya.generic.stmt.TyckUnit;
+import org.aya.resolve.ResolveInfo;
+import org.aya.syntax.concrete.stmt.Command;
+import org.aya.syntax.concrete.stmt.Generalize;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.StmtVisitor;
+import org.aya.syntax.concrete.stmt.decl.*;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.ref.*;
+import org.aya.syntax.telescope.Signature;
+import org.aya.util.error.SourcePos;
+import org.aya.util.terck.MutableGraph;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Declaration-level fingerprints of checked modules, so that a module checked again
+ * only re-checks the declarations affected by an edit, and reuses the {@link TyckDef}s of the others.
+ * <ul>
+ *   <li>{@link #transplant} runs before resolving, it hands the {@link DefVar}s of the last check
+ *   to the new concrete syntax, so that reused core terms and new core terms refer to the same definitions.</li>
+ *   <li>{@link #reuse} runs before tycking, it restores the declarations whose fingerprint is unchanged.</li>
+ *   <li>{@link #record} runs after tycking, it remembers the declarations checked without any problem.</li>
+ * </ul>
+ * A fingerprint consists of the source text of a declaration, the generalized variables
+ * of the module, and the identity of the cores it refers to outside of the module.
+ * A reused declaration that has moved gets its source positions relocated, see {@link Relocation}.
+ * Declarations in the same module are invalidated through the dependency graph.
+ * Primitives are never reused, neither are the declarations depending on them.
+ */
+public final class TyckCache {
+  private final @NotNull MutableMap<ModulePath, ImmutableMap<QName, Entry>> modules = MutableMap.create();
+
+  /**
+   * @param context  the generalized variables of the module
+   * @param deps     definitions outside of the module that the declaration refers to
+   * @param depCores the cores of {@link #deps}, compared by identity
+   */
+  record Fingerprint(
+    @NotNull String context, @NotNull String text,
+    @NotNull ImmutableSeq<AnyDefVar> deps, @NotNull ImmutableSeq<Object> depCores
+  ) {
+    public boolean matches(@NotNull Fingerprint that) {
+      if (!context.equals(that.context) || !text.equals(that.text)) return false;
+      if (!deps.equals(that.deps)) return false;
+      for (var i = 0; i < depCores.size(); i++) if (depCores.get(i) != that.depCores.get(i)) return false;
+      return true;
+    }
+  }
+
+  /** The result of checking a definition, the first one of {@link Entry#saved} is the declaration itself. */
+  record Saved<C extends TyckDef>(@NotNull DefVar<C, ?> ref, C core, @Nullable Signature signature) {
+    static <C extends TyckDef> @NotNull Saved<C> of(@NotNull DefVar<C, ?> ref) {
+      return new Saved<>(ref, ref.core, ref.signature);
+    }
+    void restore(@NotNull Relocation relocation) {
+      if (relocation.isIdentity()) ref.core = core;
+      else relocation.apply(core, ref);
+      ref.signature = signature == null ? null : relocation.apply(signature);
+    }
+  }
+
+  /**
+   * Moves the source positions in a declaration from where it was last checked to where it is now,
+   * the text of the declaration being the same. Positions outside of the declaration are left alone.
+   */
+  record Relocation(@NotNull SourcePos from, @NotNull SourcePos to) {
+    /**
+     * The old positions still show the same text of the declaration when it stays in place,
+     * keeping the cores (and thus the fingerprints of their users in other modules) intact.
+     * Not {@link SourcePos#equals}, which is always true in tests.
+     */
+    public boolean isIdentity() {
+      return from.tokenStartIndex() == to.tokenStartIndex()
+        && from.startLine() == to.startLine() && from.startColumn() == to.startColumn();
+    }
+
+    public @NotNull SourcePos apply(@NotNull SourcePos pos) {
+      if (pos.file() != from.file() || !from.containsIndex(pos)) return pos;
+      var lines = to.startLine() - from.startLine();
+      var columns = to.startColumn() - from.startColumn();
+      var offset = to.tokenStartIndex() - from.tokenStartIndex();
+      return new SourcePos(to.file(),
+        pos.tokenStartIndex() + offset, pos.tokenEndIndex() + offset,
+        pos.startLine() + lines, pos.startLine() == from.startLine() ? pos.startColumn() + columns : pos.startColumn(),
+        pos.endLine() + lines, pos.endLine() == from.startLine() ? pos.endColumn() + columns : pos.endColumn());
+    }
+
+    public @NotNull Signature apply(@NotNull Signature signature) {
+      return new Signature(signature.telescope(), signature.pos().map(this::apply));
+    }
+
+    /** Initializes {@param ref} with {@param core} relocated, only the clauses of functions remember positions */
+    @SuppressWarnings("unchecked")
+    public <C extends TyckDef> void apply(@NotNull C core, @NotNull DefVar<C, ?> ref) {
+      if (core instanceof FnDef fn && fn.body().isRight()) {
+        var clauses = fn.body().getRightValue().map(clause ->
+          new Term.Matching(apply(clause.sourcePos()), clause.patterns(), clause.bindCount(), clause.body()));
+        new FnDef((DefVar<FnDef, FnDecl>) ref, fn.modifiers(), Either.right(clauses));
+      } else ref.core = core;
+    }
+  }
+
+  record Entry(@NotNull Fingerprint fingerprint, @NotNull SourcePos at, @NotNull ImmutableSeq<Saved<?>> saved) {
+    public @NotNull DefVar<?, ?> ref() { return saved.getFirst().ref; }
+  }
+
+  public void clear() { modules.clear(); }
+
+  /** Reuse the {@link DefVar}s of last check in the freshly parsed program, must be called before resolving. */
+  public void transplant(@NotNull ModulePath module, @NotNull ImmutableSeq<Stmt> program) {
+    var entries = modules.getOrNull(module);
+    if (entries == null) return;
+    var adopted = MutableSet.<DefVar<?, ?>>create();
+    program.forEach(stmt -> transplant(entries, adopted, QPath.fileLevel(module), stmt));
+  }
+
+  private static void transplant(
+    @NotNull ImmutableMap<QName, Entry> entries, @NotNull MutableSet<DefVar<?, ?>> adopted,
+    @NotNull QPath path, @NotNull Stmt stmt
+  ) {
+    switch (stmt) {
+      case Command.Module mod -> mod.contents().forEach(s -> transplant(entries, adopted, path.derive(mod.name()), s));
+      case FnDecl fn -> fn.ref = adopt(entries.getOrNull(new QName(path, fn.ref.name())), adopted, fn.ref, fn);
+      case DataDecl data -> {
+        var entry = entries.getOrNull(new QName(path, data.ref.name()));
+        data.ref = adopt(entry, adopted, data.ref, data);
+        data.body.forEach(con -> {
+          con.ref = adopt(entry, adopted, con.ref, con);
+          con.dataRef = data.ref;
+        });
+      }
+      case ClassDecl clazz -> {
+        var entry = entries.getOrNull(new QName(path, clazz.ref.name()));
+        clazz.ref = adopt(entry, adopted, clazz.ref, clazz);
+        clazz.members.forEach(member -> {
+          member.ref = adopt(entry, adopted, member.ref, member);
+          member.classRef = clazz.ref;
+        });
+      }
+      default -> { }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <C extends TyckDef, D extends Decl> @NotNull DefVar<C, D> adopt(
+    @Nullable Entry entry, @NotNull MutableSet<DefVar<?, ?>> adopted,
+    @NotNull DefVar<C, D> fresh, @NotNull D decl
+  ) {
+    if (entry == null) return fresh;
+    var old = entry.saved.view()
+      .<DefVar<?, ?>>map(Saved::ref)
+      .find(ref -> ref.name().equals(fresh.name()) && ref.concrete.getClass() == decl.getClass() && !adopted.contains(ref));
+    if (old.isEmpty()) return fresh;
+    var ref = (DefVar<C, D>) old.get();
+    adopted.add(ref);
+    ref.concrete = decl;
+    // look like a fresh one until the declaration is proven unchanged
+    ref.core = null;
+    ref.signature = null;
+    return ref;
+  }
+
+  /**
+   * Restore the declarations of a resolved module that are unchanged since the last check.
+   *
+   * @return the units that need no check, including the constructors and members of reused declarations
+   */
+  public @NotNull MutableSet<TyckUnit> reuse(@NotNull ResolveInfo resolveInfo) {
+    var reused = MutableSet.<TyckUnit>create();
+    var module = resolveInfo.thisModule().modulePath();
+    var entries = modules.getOrNull(module);
+    if (entries == null) return reused;
+    var graph = resolveInfo.depGraph();
+    var decls = declarations(graph);
+    var declSet = MutableSet.<TyckUnit>from(decls);
+    var context = context(graph);
+
+    var dirty = MutableSet.<Decl>create();
+    var localDeps = MutableMap.<Decl, ImmutableSeq<TyckUnit>>create();
+    decls.forEach(decl -> {
+      var deps = localDeps(graph, decl);
+      localDeps.put(decl, deps);
+      var entry = entries.getOrNull(new QName(decl.ref()));
+      if (entry == null
+        || entry.ref() != decl.ref()
+        || !entry.saved.<DefVar<?, ?>>map(Saved::ref).equals(definitions(decl))
+        || !entry.fingerprint.matches(fingerprint(module, context, decl))
+        // primitives are never reused
+        || deps.anyMatch(dep -> !(dep instanceof Generalize) && !declSet.contains(dep))
+      ) dirty.add(decl);
+    });
+    // the invalidation of a declaration invalidates its users
+    var changed = true;
+    while (changed) {
+      changed = false;
+      for (var decl : decls) {
+        if (dirty.contains(decl)) continue;
+        if (localDeps.get(decl).anyMatch(dep -> dep instanceof Decl d && dirty.contains(d))) {
+          dirty.add(decl);
+          changed = true;
+        }
+      }
+    }
+
+    decls.view().filterNot(dirty::contains).forEach(decl -> {
+      var entry = entries.get(new QName(decl.ref()));
+      var relocation = new Relocation(entry.at, decl.entireSourcePos());
+      entry.saved.forEach(saved -> saved.restore(relocation));
+      reused.add(decl);
+      subUnits(decl).forEach(reused::add);
+    });
+    return reused;
+  }
+
+  /**
+   * Remember the declarations of a checked module.
+   *
+   * @param noisy units that reported any problem, they are checked again next time to report the problems again
+   */
+  public void record(@NotNull ResolveInfo resolveInfo, @NotNull MutableSet<TyckUnit> noisy) {
+    var module = resolveInfo.thisModule().modulePath();
+    var graph = resolveInfo.depGraph();
+    var context = context(graph);
+    var entries = MutableMap.<QName, Entry>create();
+    declarations(graph).forEach(decl -> {
+      if (noisy.contains(decl) || subUnits(decl).anyMatch(noisy::contains)) return;
+      var saved = definitions(decl).<Saved<?>>map(Saved::of);
+      if (saved.anyMatch(s -> s.core == null)) return;
+      entries.put(new QName(decl.ref()), new Entry(fingerprint(module, context, decl), decl.entireSourcePos(), saved));
+    });
+    modules.put(module, ImmutableMap.from(entries));
+  }
+
+  /** @return top-level declarations (or in nested modules) of the module, except for primitives */
+  private static @NotNull ImmutableSeq<Decl> declarations(@NotNull MutableGraph<TyckOrder> graph) {
+    return graph.E().keysView()
+      .map(order -> owner(order.unit()))
+      .filterIsInstance(Decl.class)
+      .filterNot(decl -> decl instanceof PrimDecl)
+      .distinct()
+      .toImmutableSeq();
+  }
+
+  private static @NotNull String context(@NotNull MutableGraph<TyckOrder> graph) {
+    return graph.E().keysView()
+      .map(TyckOrder::unit)
+      .filterIsInstance(Generalize.class)
+      .distinct()
+      .sorted((a, b) -> Integer.compare(a.sourcePos.tokenStartIndex(), b.sourcePos.tokenStartIndex()))
+      .map(g -> textOf(g.sourcePos))
+      .joinToString("\n");
+  }
+
+  /** @return the units of this module that the declaration depends on, units of other modules are in the fingerprint */
+  private static @NotNull ImmutableSeq<TyckUnit> localDeps(@NotNull MutableGraph<TyckOrder> graph, @NotNull Decl decl) {
+    return subUnits(decl).view().prepended(decl)
+      .flatMap(unit -> graph.suc(new TyckOrder.Head(unit)).concat(graph.suc(new TyckOrder.Body(unit))))
+      .map(order -> owner(order.unit()))
+      .filter(unit -> unit != decl && isLocal(graph, unit))
+      .distinct()
+      .toImmutableSeq();
+  }
+
+  private static boolean isLocal(@NotNull MutableGraph<TyckOrder> graph, @NotNull TyckUnit unit) {
+    return graph.E().containsKey(new TyckOrder.Head(unit)) || graph.E().containsKey(new TyckOrder.Body(unit));
+  }
+
+  private static @NotNull Fingerprint fingerprint(@NotNull ModulePath module, @NotNull String context, @NotNull Decl decl) {
+    var deps = MutableList.<AnyDefVar>create();
+    new StmtVisitor() {
+      @Override
+      public void visitVarRef(@NotNull SourcePos pos, @NotNull AnyVar var, @NotNull LazyValue<@Nullable Term> type) {
+        switch (var) {
+          case DefVar<?, ?> defVar when defVar.module != null && defVar.module.fileModule().equals(module) -> { }
+          case AnyDefVar defVar -> deps.append(defVar);
+          default -> { }
+        }
+      }
+    }.accept(decl);
+    var depSeq = deps.view().distinct().toImmutableSeq();
+    var pos = decl.entireSourcePos();
+    return new Fingerprint(context, textOf(pos), depSeq, depSeq.map(TyckCache::coreOf));
+  }
+
+  private static @Nullable Object coreOf(@NotNull AnyDefVar var) {
+    return switch (var) {
+      case DefVar<?, ?> defVar -> defVar.core;
+      case CompiledVar compiledVar -> compiledVar.core();
+    };
+  }
+
+  private static @NotNull String textOf(@NotNull SourcePos pos) {
+    var code = pos.file().sourceCode();
+    var start = Math.min(pos.tokenStartIndex(), code.length());
+    return code.substring(start, Math.max(start, Math.min(pos.tokenEndIndex() + 1, code.length())));
+  }
+
+  private static @NotNull TyckUnit owner(@NotNull TyckUnit unit) {
+    return switch (unit) {
+      case DataCon con -> con.dataRef.concrete;
+      case ClassMember member -> member.classRef.concrete;
+      default -> unit;
+    };
+  }
+
+  private static @NotNull ImmutableSeq<TyckUnit> subUnits(@NotNull Decl decl) {
+    return switch (decl) {
+      case DataDecl data -> data.body.<TyckUnit>map(con -> con);
+      case ClassDecl clazz -> clazz.members.<TyckUnit>map(member -> member);
+      default -> ImmutableSeq.empty();
+    };
+  }
+
+  private static @NotNull ImmutableSeq<DefVar<?, ?>> definitions(@NotNull Decl decl) {
+    return subUnits(decl).view()
+      .<DefVar<?, ?>>map(unit -> ((Decl) unit).ref())
+      .prepended(decl.ref())
+      .toImmutableSeq();
+  }
+}
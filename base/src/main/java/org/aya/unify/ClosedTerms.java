@@ -0,0 +1,93 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+import kala.collection.mutable.MutableArrayList;
+import kala.collection.mutable.MutableList;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ClassCall;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.core.term.repr.MetaLitTerm;
+import org.aya.syntax.core.term.xtt.CoeTerm;
+import org.aya.syntax.core.term.xtt.EqTerm;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+/**
+ * Whether terms are closed, by identity: no free variables, meta patterns or metas,
+ * so their types depend on neither the context nor the meta solutions.
+ * A term holding a {@link Closure.Jit} counts as open, since looking into it means running it.
+ * <p>
+ * The subterms are remembered along the way, so asking about the subterms of a term
+ * that was asked about before, as {@link Synthesizer#trySynth} does, takes no walk.
+ */
+public final class ClosedTerms {
+  private final @NotNull IdentityHashMap<Term, Boolean> closed = new IdentityHashMap<>();
+
+  private static final class Frame {
+    final @NotNull Term term;
+    final @NotNull MutableList<Term> children = MutableArrayList.create();
+    int next = 0;
+    boolean closed = true;
+
+    Frame(@NotNull Term term) {
+      this.term = term;
+      term.descent(t -> {
+        children.append(t);
+        return t;
+      });
+    }
+  }
+
+  public boolean isClosed(@NotNull Term root) {
+    var known = lookup(root);
+    if (known != null) return known;
+    // post-order without recursion, a term is closed if all its children are
+    var stack = new ArrayDeque<Frame>();
+    stack.push(new Frame(root));
+    while (!stack.isEmpty()) {
+      var frame = stack.peek();
+      if (frame.closed && frame.next < frame.children.size()) {
+        var child = frame.children.get(frame.next++);
+        var childClosed = lookup(child);
+        if (childClosed == null) stack.push(new Frame(child));
+        else if (!childClosed) frame.closed = false;
+        continue;
+      }
+      stack.pop();
+      closed.put(frame.term, frame.closed);
+      if (!frame.closed && !stack.isEmpty()) stack.peek().closed = false;
+    }
+    return closed.get(root);
+  }
+
+  /** @return null if the children of {@param term} should be looked into */
+  private @Nullable Boolean lookup(@NotNull Term term) {
+    var known = closed.get(term);
+    if (known != null) return known;
+    if (term instanceof FreeTerm || term instanceof MetaPatTerm
+      || term instanceof MetaCall || term instanceof MetaLitTerm || holdsJit(term)) {
+      closed.put(term, false);
+      return false;
+    }
+    return null;
+  }
+
+  /** @return true if {@link Term#descent} of {@param term} runs a {@link Closure.Jit} */
+  public static boolean holdsJit(@NotNull Term term) {
+    return switch (term) {
+      case LamTerm(var body) -> body instanceof Closure.Jit;
+      case DepTypeTerm(_, _, var body) -> body instanceof Closure.Jit;
+      case EqTerm(var A, _, _) -> A instanceof Closure.Jit;
+      case CoeTerm(var type, _, _) -> type instanceof Closure.Jit;
+      case ClassCall call -> call.args().anyMatch(c -> c instanceof Closure.Jit);
+      case ClassCastTerm cast -> cast.remember().anyMatch(c -> c instanceof Closure.Jit)
+        || cast.forget().anyMatch(c -> c instanceof Closure.Jit);
+      default -> false;
+    };
+  }
+}
@@ -23,6 +23,7 @@ import org.aya.tyck.TyckState;
 import org.aya.tyck.tycker.AbstractTycker;
 import org.aya.tyck.tycker.Contextful;
 import org.aya.tyck.tycker.Stateful;
+import org.aya.util.Profiler;
 import org.aya.util.error.Panic;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -54,8 +55,48 @@ public record Synthesizer(
   }
 
   public @Nullable Term trySynth(@NotNull Term term) {
+    var cacheable = isCacheable(term);
+    if (cacheable) {
+      var cached = state().synthesized(term);
+      if (cached != null) return cached;
+    }
     var result = synthesize(term);
-    return result == null ? null : whnf(result);
+    if (result == null) return null;
+    result = whnf(result);
+    if (cacheable) state().synthesized(term, result);
+    return result;
+  }
+
+  /**
+   * The type of a closed term depends on neither the context nor the meta solutions,
+   * so it is remembered in the {@link TyckState}, but only for the terms whose types take some work to compute.
+   */
+  private boolean isCacheable(@NotNull Term term) {
+    return switch (term) {
+      case AppTerm _, ProjTerm _, PAppTerm _, Callable.Tele _ -> state().isClosed(term);
+      default -> false;
+    };
+  }
+
+  /** How many types are looked up in the cache of the {@link TyckState}, and how many of them are found */
+  public static final class Stats {
+    private long lookups = 0;
+    private long hits = 0;
+
+    public long lookups() { return lookups; }
+    public long hits() { return hits; }
+
+    public void record(boolean hit) {
+      lookups++;
+      if (hit) hits++;
+    }
+
+    /** Attaches the counters to a profiler span, and starts counting from zero */
+    public void drainTo(@NotNull Profiler.Span span) {
+      span.arg("synth_lookups", lookups);
+      span.arg("synth_hits", hits);
+      lookups = hits = 0;
+    }
   }
 
   public @NotNull Term synth(@NotNull Term term) {
@@ -64,7 +105,10 @@ public record Synthesizer(
     return result;
   }
 
+  /** A type found before is reused, though it is already normalized */
   public @NotNull Term synthDontNormalize(@NotNull Term term) {
+    var cached = isCacheable(term) ? state().synthesized(term) : null;
+    if (cached != null) return cached;
     var result = synthesize(term);
     assert result != null : term.debuggerOnlyToString() + " : " + term.getClass();
     return result;
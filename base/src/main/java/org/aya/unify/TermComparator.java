@@ -8,6 +8,7 @@ import org.aya.generic.term.SortKind;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.syntax.core.term.*;
 import org.aya.generic.term.DTKind;
+import org.aya.syntax.core.Closure;
 import org.aya.syntax.core.term.call.*;
 import org.aya.syntax.core.term.marker.Formation;
 import org.aya.syntax.core.term.repr.IntegerTerm;
@@ -30,6 +31,7 @@ import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.VisibleForTesting;
 
 import java.util.Objects;
 import java.util.function.Function;
@@ -43,6 +45,8 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
   private boolean solveMeta = true;
   private @Nullable FailureData failure = null;
   final @NotNull Renamer nameGen = new Renamer();
+  /** How many comparisons are decided by {@link #alphaEquiv} */
+  @VisibleForTesting int alphaEquivHits = 0;
 
   public TermComparator(
     @NotNull TyckState state, @NotNull LocalCtx ctx,
@@ -77,6 +81,17 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
   private @NotNull Panic noRules(@NotNull Term term) {
     return new Panic(term.getClass() + ": " + term.toDoc(AyaPrettierOptions.debug()).debugRender());
   }
+
+  /**
+   * The terms are the same up to alpha-equivalence, since bound variables are de Bruijn indices,
+   * so they are convertible under any ordering. {@link Object#equals} stops at the first difference,
+   * and compares a {@link Closure.Jit} by identity without running it.
+   */
+  private boolean alphaEquiv(@NotNull Term lhs, @NotNull Term rhs) {
+    if (!lhs.equals(rhs)) return false;
+    alphaEquivHits++;
+    return true;
+  }
   /// endregion Utilities
 
   /**
@@ -125,6 +140,7 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
    */
   public boolean compare(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
     if (preLhs == preRhs || preLhs instanceof ErrorTerm || preRhs instanceof ErrorTerm) return true;
+    if (alphaEquiv(preLhs, preRhs)) return true;
     if (checkApproxResult(type, compareApprox(preLhs, preRhs))) return true;
     failure = null;
 
@@ -0,0 +1,111 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.resolve;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.resolve.context.Candidate;
+import org.aya.resolve.context.Context;
+import org.aya.resolve.context.EmptyContext;
+import org.aya.resolve.context.ModuleContext;
+import org.aya.resolve.error.NameProblem;
+import org.aya.resolve.module.DumbModuleLoader;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.syntax.concrete.stmt.ModuleName;
+import org.aya.util.reporter.BufferReporter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The lookup of the symbols of opened modules, which are shared with the modules instead of copied */
+public class ResolveTest {
+  private final @NotNull BufferReporter reporter = new BufferReporter();
+
+  private @NotNull ModuleContext resolve(@Language("Aya") @NotNull String code) {
+    var loader = new DumbModuleLoader(new EmptyContext(reporter, Path.of("/home/senpai/114514.aya")));
+    return loader.resolve(SyntaxTestUtil.parse(code)).thisModule();
+  }
+
+  private int count(@NotNull Class<?> problem) {
+    return reporter.problems().count(problem::isInstance);
+  }
+
+  @Test public void definedWins() {
+    var ctx = resolve("""
+      open inductive Bool | true | false
+      module A { def foo => true }
+      module B { def bar => false }
+      open A
+      open B
+      def foo => false
+      def baz => foo
+      """);
+    assertInstanceOf(Candidate.Defined.class, ctx.symbols().get("foo"));
+    assertEquals(ImmutableSeq.of(ModuleName.of("B")), ctx.symbols().get("bar").from());
+    assertEquals(1, count(NameProblem.AmbiguousNameWarn.class));
+    assertEquals(0, reporter.problems().count(p -> p.isError()));
+  }
+
+  @Test public void ambiguousAcrossLayers() {
+    var code = """
+      open inductive Bool | true | false
+      module A { def foo => true }
+      module B { def foo => false }
+      open A
+      open B
+      """;
+    var foo = resolve(code).symbols().get("foo");
+    assertTrue(foo.isAmbiguous());
+    assertEquals(ImmutableSeq.of(ModuleName.of("A"), ModuleName.of("B")), foo.from().sorted(
+      (a, b) -> a.toString().compareTo(b.toString())));
+    assertEquals(1, count(NameProblem.AmbiguousNameWarn.class));
+
+    reporter.clear();
+    assertThrows(Context.ResolvingInterruptedException.class, () -> resolve(code + "def baz => foo"));
+    assertEquals(1, count(NameProblem.AmbiguousNameError.class));
+  }
+
+  @Test public void sameSymbolThroughTwoLayers() {
+    var ctx = resolve("""
+      open inductive Bool | true | false
+      module A { def foo => true }
+      module B { public open A }
+      open A
+      open B
+      def baz => foo
+      """);
+    var foo = ctx.symbols().get("foo");
+    assertFalse(foo.isAmbiguous());
+    assertEquals(2, foo.from().size());
+    assertEquals(ctx.modules().get(ModuleName.of("A")).symbols().getOrNull("foo"), foo.get());
+    assertTrue(reporter.problems().isEmpty());
+  }
+
+  @Test public void hidingAndUsing() {
+    var ctx = resolve("""
+      open inductive Bool | true | false
+      module A {
+        def foo => true
+        def bar => false
+      }
+      open A hiding (foo)
+      open A using (foo as baz)
+      def qux => A::foo
+      def quux => baz
+      """);
+    var a = ctx.modules().get(ModuleName.of("A")).symbols();
+    // filtering and renaming the opened module does not touch the module itself
+    assertEquals(ImmutableSeq.of("bar", "foo"), a.keysView().toImmutableSeq().sorted());
+    assertTrue(ctx.symbols().get("foo").isEmpty());
+    assertEquals(a.getOrNull("bar"), ctx.symbols().get("bar").get());
+    assertEquals(a.getOrNull("foo"), ctx.symbols().get("baz").get());
+    // a later definition is seen by the flattened view, which is cached
+    var keys = ctx.symbols().keysView().toImmutableSeq();
+    assertTrue(keys.containsAll(ImmutableSeq.of("bar", "baz", "qux", "quux")));
+    assertFalse(keys.contains("foo"));
+    assertTrue(reporter.problems().isEmpty());
+  }
+}
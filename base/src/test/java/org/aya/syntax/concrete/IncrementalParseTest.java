@@ -0,0 +1,87 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.concrete;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.producer.AyaParserImpl;
+import org.aya.producer.IncrementalAyaParser;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.StmtVisitor;
+import org.aya.util.error.SourceFile;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.BufferReporter;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IncrementalParseTest {
+  private static final @NotNull Path FILE = Path.of("/home/senpai/1919810.aya");
+
+  @Test public void differential() {
+    var code = """
+      import Prelude
+      open inductive Nat | O | S Nat
+
+      def infixl + Nat Nat : Nat
+      | 0, a => a
+      | S a, b => S (a + b)
+
+      // some comment
+      def two => S (S O)
+      def three => S two
+      """;
+    var edits = ImmutableSeq.of(
+      code,
+      code.replace("def two => S (S O)", "def two => S (S (S O))"),
+      code.replace("def two => S (S O)", "def two => S (S O)\n  + O"),
+      code.replace("| S a, b => S (a + b)", "| S a, b => S (b + a)"),
+      code.replace("// some comment\n", ""),
+      code.replace("// some comment\n", "/* unterminated\n"),
+      code.replace("def three", "def three'"),
+      code + "def four => S three\n",
+      code.replace("import Prelude\n", ""),
+      code.replace("def two => S (S O)", "def two =>"),
+      code);
+    var parser = new IncrementalAyaParser(new IncrementalAyaParser.Cache(), new BufferReporter());
+    edits.forEach(text -> {
+      var file = new SourceFile("<baka>", FILE, text);
+      var expected = new AyaParserImpl(new BufferReporter()).program(file);
+      var actual = parser.program(file);
+      assertEquals(render(expected), render(actual), text);
+      assertEquals(positions(expected), positions(actual), text);
+    });
+  }
+
+  private static @NotNull ImmutableSeq<String> render(@NotNull ImmutableSeq<Stmt> stmts) {
+    return stmts.map(stmt -> stmt.toDoc(AyaPrettierOptions.debug()).debugRender());
+  }
+
+  private static @NotNull ImmutableSeq<String> positions(@NotNull ImmutableSeq<Stmt> stmts) {
+    var poses = MutableList.<String>create();
+    var collector = new StmtVisitor() {
+      @Override public void visitExpr(@NotNull SourcePos pos, @NotNull Expr expr) {
+        poses.append(show(pos));
+        StmtVisitor.super.visitExpr(pos, expr);
+      }
+      @Override public void visitPattern(@NotNull SourcePos pos, @NotNull Pattern pat) {
+        poses.append(show(pos));
+        StmtVisitor.super.visitPattern(pos, pat);
+      }
+    };
+    stmts.forEach(stmt -> {
+      poses.append(show(stmt.sourcePos()));
+      collector.accept(stmt);
+    });
+    return poses.toImmutableSeq();
+  }
+
+  private static @NotNull String show(@NotNull SourcePos pos) {
+    return pos.tokenStartIndex() + ":" + pos.tokenEndIndex() + "@" + pos.startLine() + ":" + pos.startColumn()
+      + "-" + pos.endLine() + ":" + pos.endColumn();
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.resolve.context.EmptyContext;
+import org.aya.resolve.module.DumbModuleLoader;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.tyck.order.AyaOrgaTycker;
+import org.aya.tyck.order.AyaSccTycker;
+import org.aya.tyck.order.ParallelOrgaTycker;
+import org.aya.util.error.Global;
+import org.aya.util.reporter.BufferReporter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelTyckTest {
+  @Language("Aya") private static final @NotNull String CODE = """
+    open inductive Nat | zero | suc Nat
+    open inductive List (A : Type) | nil | cons A (List A)
+    def plus (a b : Nat) : Nat elim a
+    | zero => b
+    | suc a => suc (plus a b)
+    def two : Nat => plus 1 1
+    def isOne (n : Nat) : Nat
+    | 1 => 1
+    | _ => 0
+    def xs : List Nat => [1, two]
+    def head (xs : List Nat) : Nat
+    | [] => 0
+    | [x] => x
+    | cons x _ => x
+    def bad : Nat => nil
+    def useBad : Nat => suc bad
+    open inductive Bool | true | false
+    def not (b : Bool) : Bool
+    | true => false
+    | false => true
+    def notOne : Bool => 1
+    def alsoBad : Nat => true
+    """;
+
+  private record Run(@NotNull ImmutableSeq<String> problems, @NotNull ImmutableSeq<String> wellTyped) { }
+
+  private static @NotNull Run run(boolean parallel) {
+    var reporter = new BufferReporter();
+    var loader = new DumbModuleLoader(new EmptyContext(reporter, Path.of("parallel.aya")));
+    var info = loader.resolve(SyntaxTestUtil.parse(CODE));
+    var orga = new AyaOrgaTycker(AyaSccTycker.create(info, reporter), info);
+    var sccs = info.depGraph().topologicalOrder();
+    if (parallel) {
+      var executor = Executors.newFixedThreadPool(4);
+      try {
+        new ParallelOrgaTycker(orga, executor).tyckSCCs(sccs);
+      } finally {
+        executor.shutdown();
+      }
+    } else sccs.forEach(orga::tyckSCC);
+    return new Run(
+      reporter.problems().view()
+        .map(p -> p.sourcePos() + ": " + p.describe(AyaPrettierOptions.debug()).debugRender())
+        .toImmutableSeq(),
+      orga.sccTycker().wellTyped().view().map(def -> def.ref().name()).toImmutableSeq());
+  }
+
+  @BeforeEach public void setUp() { Global.NO_RANDOM_NAME = true; }
+  @AfterEach public void tearDown() { Global.reset(); }
+
+  @Test public void sameAsSequential() {
+    var sequential = run(false);
+    assertTrue(sequential.problems.isNotEmpty());
+    assertTrue(sequential.wellTyped.contains("xs"));
+    // the order of the SCCs finishing varies, so try a few times
+    for (var i = 0; i < 8; i++) assertEquals(sequential, run(true));
+  }
+}
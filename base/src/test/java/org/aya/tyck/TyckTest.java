@@ -3,7 +3,9 @@
 package org.aya.tyck;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableTreeSeq;
 import kala.collection.immutable.primitive.ImmutableIntSeq;
+import org.aya.normalize.ErasedEvaluator;
 import org.aya.normalize.Normalizer;
 import org.aya.primitive.PrimFactory;
 import org.aya.resolve.ResolveInfo;
@@ -11,13 +13,19 @@ import org.aya.resolve.module.ModuleCallback;
 import org.aya.syntax.SyntaxTestUtil;
 import org.aya.syntax.core.Closure;
 import org.aya.syntax.core.def.*;
-import org.aya.syntax.core.term.LamTerm;
-import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ConCall;
 import org.aya.syntax.core.term.call.DataCall;
 import org.aya.syntax.core.term.call.FnCall;
 import org.aya.syntax.core.term.repr.IntegerTerm;
 import org.aya.syntax.core.term.repr.ListTerm;
 import org.aya.syntax.literate.CodeOptions.NormalizeMode;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.syntax.ref.MapLocalCtx;
+import org.aya.unify.Synthesizer;
+import org.aya.unify.Unifier;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
@@ -29,8 +37,7 @@ import java.util.Random;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TyckTest {
   @Test public void test0() {
@@ -171,11 +178,59 @@ public class TyckTest {
       """).defs.isNotEmpty());
   }
 
+  /** The types of closed terms are shared by the synthesizers of one state, like the double checkers of meta solutions */
+  @Test public void synthCache() {
+    var result = tyck("""
+      open inductive Nat | zero | suc Nat
+      def id {A : Type} (a : A) : A => a
+      def three : Nat => id (id (id (suc (suc (suc zero)))))
+      """);
+    FnDefLike three = getDef(result.defs, "three");
+    var state = new TyckState(result.info().shapeFactory(), new PrimFactory());
+    var call = new FnCall(three, 0, ImmutableSeq.empty());
+    var type = synthesizer(state).trySynth(call);
+    assertNotNull(type);
+    assertEquals(0, state.synthStats.hits());
+    assertSame(type, synthesizer(state).trySynth(call));
+    assertEquals(1, state.synthStats.hits());
+
+    // the types of terms with free variables depend on the context
+    var x = new FreeTerm(LocalVar.generate("x"));
+    var app = new AppTerm(new LamTerm(new Closure.Locns(new LocalTerm(0))), x);
+    assertFalse(state.isClosed(app));
+    assertTrue(state.isClosed(call));
+  }
+
+  private static @NotNull Synthesizer synthesizer(@NotNull TyckState state) {
+    return new Synthesizer(new Unifier(state, new MapLocalCtx(), SyntaxTestUtil.THROWING, SourcePos.NONE, Ordering.Eq, true));
+  }
+
   @SuppressWarnings("unchecked") private static <T extends AnyDef> T
   getDef(@NotNull ImmutableSeq<TyckDef> defs, @NotNull String name) {
     return (T) TyckAnyDef.make(defs.find(x -> x.ref().name().equals(name)).get());
   }
 
+  @Test public void fullDeep() {
+    var result = tyck("""
+      open inductive Tree | leaf | node Tree Tree
+      def lf : Tree => leaf
+      """);
+    ConDefLike node = getDef(result.defs, "node");
+    FnDefLike lf = getDef(result.defs, "lf");
+    var depth = 100000;
+    Term deep = new FnCall(lf, 0, ImmutableSeq.empty());
+    for (var i = 0; i < depth; i++)
+      deep = new ConCall(node, ImmutableSeq.empty(), 0, ImmutableSeq.of(new FnCall(lf, 0, ImmutableSeq.empty()), deep));
+    var normal = new Normalizer(new TyckState(result.info().shapeFactory(), new PrimFactory()))
+      .normalize(deep, NormalizeMode.FULL);
+    for (var i = 0; i < depth; i++) {
+      var args = assertInstanceOf(ConCall.class, normal).conArgs();
+      assertInstanceOf(ConCall.class, args.getFirst());
+      normal = args.getLast();
+    }
+    assertInstanceOf(ConCall.class, normal);
+  }
+
   @Test public void sort() throws IOException {
     var result = tyck(Files.readString(Paths.get("../jit-compiler/src/test/resources/TreeSort.aya")));
 
@@ -216,6 +271,15 @@ public class TyckTest {
     System.out.println(sortResult.debuggerOnlyToString());
   }
 
+  @Test public void erasedSort() throws IOException {
+    var result = tyck(Files.readString(Paths.get("../jit-compiler/src/test/resources/TreeSort.aya")));
+    FnDefLike tree_sortNat = getDef(result.defs, "tree_sortNat");
+    var erased = new ErasedEvaluator(result.info().shapeFactory());
+    var sorted = erased.call(tree_sortNat, ImmutableSeq.<Object>of(ImmutableTreeSeq.of(5L, 3L, 4L, 1L, 2L)));
+    assertEquals("[1, 2, 3, 4, 5]", ErasedEvaluator.show(sorted));
+    assertInstanceOf(Long.class, assertInstanceOf(ImmutableSeq.class, sorted).getFirst());
+  }
+
   public record TyckResult(@NotNull ImmutableSeq<TyckDef> defs, @NotNull ResolveInfo info) { }
 
   public static TyckResult tyck(@Language("Aya") @NotNull String code) {
@@ -0,0 +1,68 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+import org.aya.generic.term.DTKind;
+import org.aya.generic.term.SortKind;
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.syntax.ref.MapLocalCtx;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermComparatorTest {
+  private static final Term F = new FreeTerm(LocalVar.generate("f"));
+  private static final Term TYPE1 = new SortTerm(SortKind.Type, 1);
+
+  private static @NotNull Unifier unifier(@NotNull Ordering cmp) {
+    var state = new TyckState(new ShapeFactory(), new PrimFactory());
+    return new Unifier(state, new MapLocalCtx(), SyntaxTestUtil.THROWING, SourcePos.NONE, cmp, true);
+  }
+
+  private static @NotNull Term idApp() {
+    return new AppTerm(F, new LamTerm(new Closure.Locns(new LocalTerm(0))));
+  }
+
+  @Test public void alphaEquivalent() {
+    var unifier = unifier(Ordering.Eq);
+    assertTrue(unifier.compare(idApp(), idApp(), null));
+    assertEquals(1, unifier.alphaEquivHits);
+  }
+
+  @Test public void cumulativity() {
+    var unifier = unifier(Ordering.Lt);
+    assertTrue(unifier.compare(SortTerm.Type0, TYPE1, null));
+    assertEquals(0, unifier.alphaEquivHits);
+    assertFalse(unifier(Ordering.Eq).compare(SortTerm.Type0, TYPE1, null));
+  }
+
+  @Test public void eta() {
+    var unifier = unifier(Ordering.Eq);
+    var pi = new DepTypeTerm(DTKind.Pi, SortTerm.Type0, new Closure.Const(SortTerm.Type0));
+    var eta = new LamTerm(new Closure.Locns(new AppTerm(F, new LocalTerm(0))));
+    assertTrue(unifier.compare(eta, F, pi));
+    // only the bodies under the binder are the same
+    assertEquals(1, unifier.alphaEquivHits);
+  }
+
+  @Test public void metas() {
+    var unifier = unifier(Ordering.Eq);
+    var meta = unifier.freshMeta("m", SourcePos.NONE, new MetaVar.OfType(TYPE1), false);
+    assertTrue(unifier.compare(meta, new MetaCall(meta.ref(), meta.args()), TYPE1));
+    assertEquals(1, unifier.alphaEquivHits);
+    assertFalse(unifier.state().solutions.containsKey(meta.ref()));
+    assertTrue(unifier.compare(meta, SortTerm.Type0, TYPE1));
+    assertTrue(unifier.state().solutions.containsKey(meta.ref()));
+  }
+}
@@ -9,6 +9,7 @@ application.mainClass.set(mainClassQName)
 dependencies {
   api(project(":tools-repl"))
   api(project(":cli-impl"))
+  implementation(project(":ide"))
   implementation(project(":producer"))
   implementation(libs.picocli.runtime)
   annotationProcessor(libs.picocli.codegen)
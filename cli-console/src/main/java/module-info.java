@@ -12,6 +12,7 @@ module aya.cli.console {
   requires java.net.http;
   requires jdk.crypto.ec;
   requires aya.producer;
+  requires aya.ide;
 
   exports org.aya.cli.plct;
   exports org.aya.cli.repl;
@@ -0,0 +1,242 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.console;
+
+import kala.collection.mutable.MutableMap;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.util.FileUtil;
+import org.aya.util.reporter.IgnoringReporter;
+import org.aya.util.reporter.Problem;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * A compiler that outlives one compilation, so the JVM is warm and the compiled cores
+ * of the libraries it has built stay in memory. Clients (started with {@code --use-daemon})
+ * send their arguments over a Unix domain socket, and receive the output and the exit code.
+ * <p>
+ * Only library builds are served, everything else is compiled by the client itself.
+ * Requests are served one by one, since a library is not supposed to be compiled concurrently.
+ * <p>
+ * The socket file is removed when the daemon exits, and a socket file nobody listens on is taken over,
+ * so a daemon that crashed does not block the next one.
+ */
+public final class CompileDaemon implements AutoCloseable {
+  private static final byte OUT = 0;
+  private static final byte ERR = 1;
+  private static final byte EXIT = 2;
+  private static final byte UNSUPPORTED = 3;
+
+  private final @NotNull MutableMap<Path, LibrarySession> sessions = MutableMap.create();
+  /** The reporter of the client being served */
+  private volatile @NotNull Reporter reporter = IgnoringReporter.INSTANCE;
+  /** Reused by the modules loaded in earlier requests, which keep the reporter they are created with */
+  private final @NotNull Reporter forward = problem -> reporter.report(problem);
+  private final @NotNull Path socket;
+  private final @NotNull ServerSocketChannel server;
+  /** Where the daemon itself reports, not the clients */
+  private final @NotNull Reporter log;
+  private final @NotNull Thread cleanup;
+
+  private CompileDaemon(@NotNull Path socket, @NotNull ServerSocketChannel server, @NotNull Reporter log) {
+    this.socket = socket;
+    this.server = server;
+    this.log = log;
+    cleanup = new Thread(() -> {
+      try {
+        Files.deleteIfExists(socket);
+      } catch (IOException _) {
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(cleanup);
+  }
+
+  public static boolean canServe(@NotNull MainArgs.CompileAction compile) {
+    return (compile.isLibrary || compile.isRemake) && !compile.parallelTyck;
+  }
+
+  public static int serve(@NotNull Path socket, @NotNull Reporter log) throws IOException {
+    try (var daemon = open(socket, log)) {
+      if (daemon == null) return 1;
+      daemon.run();
+    }
+    return 0;
+  }
+
+  /** @return null if another daemon is listening on {@param socket} */
+  static @Nullable CompileDaemon open(@NotNull Path socket, @NotNull Reporter log) throws IOException {
+    var address = UnixDomainSocketAddress.of(socket);
+    if (Files.exists(socket)) {
+      try (var _ = SocketChannel.open(address)) {
+        log.reportString("A compiler daemon is already listening on " + socket, Problem.Severity.ERROR);
+        return null;
+      } catch (IOException _) {
+        // left by a daemon that did not exit normally
+        Files.deleteIfExists(socket);
+        log.reportString("Removed the stale socket " + socket);
+      }
+    }
+    var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      server.bind(address);
+    } catch (IOException e) {
+      server.close();
+      throw e;
+    }
+    log.reportString("Compiler daemon listening on " + socket);
+    return new CompileDaemon(socket, server, log);
+  }
+
+  /** Serves the clients until the daemon is {@link #close}d */
+  void run() {
+    while (server.isOpen()) try (var client = server.accept()) {
+      serveClient(client);
+    } catch (IOException e) {
+      if (!server.isOpen()) return;
+      log.reportString("Lost connection to a client: " + e.getMessage(), Problem.Severity.WARN);
+    }
+  }
+
+  @Override public void close() throws IOException {
+    server.close();
+    Files.deleteIfExists(socket);
+    try {
+      Runtime.getRuntime().removeShutdownHook(cleanup);
+    } catch (IllegalStateException _) {
+      // closed by the shutdown hooks
+    }
+  }
+
+  private void serveClient(@NotNull SocketChannel client) throws IOException {
+    var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+    var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+    var cwd = Path.of(input.readUTF());
+    var args = new String[input.readInt()];
+    for (var i = 0; i < args.length; i++) args[i] = input.readUTF();
+
+    Integer exitCode;
+    try {
+      var main = new Main();
+      new CommandLine(main).parseArgs(args);
+      exitCode = main.callInDaemon(this, cwd,
+        s -> send(output, OUT, s),
+        s -> send(output, ERR, s));
+    } catch (Exception e) {
+      var trace = new StringWriter();
+      e.printStackTrace(new PrintWriter(trace));
+      log.reportString("Failed to serve a client:\n" + trace, Problem.Severity.ERROR);
+      send(output, ERR, "The compiler daemon failed: " + e + ", see the output of the daemon for details");
+      exitCode = 1;
+    }
+    synchronized (output) {
+      if (exitCode == null) output.writeByte(UNSUPPORTED);
+      else {
+        output.writeByte(EXIT);
+        output.writeInt(exitCode);
+      }
+      output.flush();
+    }
+  }
+
+  private static void send(@NotNull DataOutputStream output, byte tag, @NotNull String message) {
+    var bytes = message.getBytes(StandardCharsets.UTF_8);
+    synchronized (output) {
+      try {
+        output.writeByte(tag);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /** @see LibraryCompiler#compile */
+  int compile(@NotNull Reporter out, @NotNull CompilerFlags flags, @NotNull Path libraryRoot) throws IOException {
+    if (!Files.exists(libraryRoot)) {
+      out.reportString("Specified library root does not exist: " + libraryRoot);
+      return 1;
+    }
+    var root = FileUtil.canonicalize(libraryRoot);
+    LibrarySession session;
+    try {
+      var old = sessions.getOrNull(root);
+      session = old != null ? old.refresh() : LibrarySession.create(root);
+      sessions.put(root, session);
+    } catch (LibraryConfigData.BadConfig bad) {
+      sessions.remove(root);
+      out.reportString("Cannot load malformed library: " + bad.getMessage());
+      return 1;
+    }
+    reporter = out;
+    try {
+      return session.compile(forward, flags);
+    } catch (IOException | RuntimeException e) {
+      // the state may be broken in the middle of a compilation
+      sessions.remove(root);
+      throw e;
+    } finally {
+      reporter = IgnoringReporter.INSTANCE;
+    }
+  }
+
+  /**
+   * @param args the arguments of the client, parsed again by the daemon
+   * @param out  where the messages of the daemon to the standard output go, and so on
+   * @return the exit code, or null if there is no daemon or the daemon cannot handle the arguments
+   */
+  public static @Nullable Integer forward(
+    @NotNull Path socket, @NotNull Path cwd, @NotNull String[] args,
+    @NotNull Consumer<String> out, @NotNull Consumer<String> err
+  ) {
+    SocketChannel channel;
+    try {
+      channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    } catch (IOException | UnsupportedOperationException _) {
+      return null;
+    }
+    try (channel) {
+      var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      output.writeUTF(cwd.toString());
+      output.writeInt(args.length);
+      for (var arg : args) output.writeUTF(arg);
+      output.flush();
+      var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      while (true) {
+        var tag = input.readByte();
+        switch (tag) {
+          case EXIT -> {
+            return input.readInt();
+          }
+          case UNSUPPORTED -> {
+            return null;
+          }
+          default -> {
+            var message = new String(input.readNBytes(input.readInt()), StandardCharsets.UTF_8);
+            if (tag == OUT) out.accept(message);
+            else err.accept(message);
+          }
+        }
+      }
+    } catch (IOException e) {
+      err.accept("Lost connection to the daemon: " + e.getMessage());
+      return 1;
+    }
+  }
+}
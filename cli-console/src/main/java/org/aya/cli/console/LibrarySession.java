@@ -0,0 +1,85 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.console;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.incremental.WarmCompilerAdvisor;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.DiskLibraryOwner;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.generic.Constants;
+import org.aya.ide.LspPrimFactory;
+import org.aya.primitive.PrimFactory;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * The compiler state of a library kept across compilations: the parsed and checked sources,
+ * the dependency graph and the compiled cores. Like the language server, only the modified
+ * sources and their importers are checked again.
+ * <p>
+ * A session is reused until the library configuration or the set of source files changes.
+ *
+ * @param fingerprint the configuration files and the source files of the library and its dependencies
+ */
+record LibrarySession(
+  @NotNull LibraryOwner owner,
+  @NotNull PrimFactory primFactory,
+  @NotNull CompilerAdvisor advisor,
+  @NotNull ImmutableSeq<Object> fingerprint
+) {
+  static @NotNull LibrarySession create(@NotNull Path root) throws IOException, LibraryConfigData.BadConfig {
+    return create(root, true);
+  }
+
+  /** @param onDisk whether the compiled cores are saved, or only kept in memory like {@code --no-code} */
+  static @NotNull LibrarySession create(@NotNull Path root, boolean onDisk) throws IOException, LibraryConfigData.BadConfig {
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root));
+    return new LibrarySession(owner, new LspPrimFactory(), newAdvisor(onDisk), fingerprint(owner));
+  }
+
+  private static @NotNull CompilerAdvisor newAdvisor(boolean onDisk) {
+    return new WarmCompilerAdvisor(onDisk ? CompilerAdvisor.onDisk() : CompilerAdvisor.inMemory());
+  }
+
+  /** @return this session if it is still valid, or a new one */
+  @NotNull LibrarySession refresh() throws IOException, LibraryConfigData.BadConfig {
+    var root = owner.underlyingLibrary().libraryRoot();
+    var fresh = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root));
+    var fingerprint = fingerprint(fresh);
+    if (fingerprint.equals(this.fingerprint)) return this;
+    return new LibrarySession(fresh, new LspPrimFactory(), newAdvisor(advisor.savesToDisk()), fingerprint);
+  }
+
+  /**
+   * @param reporter must be the same one across compilations,
+   *                 because the modules loaded before keep reporting to it.
+   */
+  int compile(@NotNull Reporter reporter, @NotNull CompilerFlags flags) throws IOException {
+    return LibraryCompiler.newCompiler(primFactory, reporter, flags, advisor, owner).start();
+  }
+
+  private static @NotNull ImmutableSeq<Object> fingerprint(@NotNull LibraryOwner owner) throws IOException {
+    var fingerprint = MutableList.create();
+    fingerprint(owner, fingerprint);
+    return fingerprint.toImmutableSeq();
+  }
+
+  private static void fingerprint(@NotNull LibraryOwner owner, @NotNull MutableList<Object> fingerprint) throws IOException {
+    var config = owner.underlyingLibrary().libraryRoot().resolve(Constants.AYA_JSON);
+    fingerprint.append(config);
+    fingerprint.append(Files.exists(config) ? Files.getLastModifiedTime(config) : FileTime.fromMillis(0));
+    fingerprint.appendAll(owner.librarySources().map(LibrarySource::underlyingFile));
+    for (var dep : owner.libraryDeps()) fingerprint(dep, fingerprint);
+  }
+}
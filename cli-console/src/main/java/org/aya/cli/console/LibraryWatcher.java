@@ -0,0 +1,173 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.console;
+
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableSet;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.generic.Constants;
+import org.aya.util.FileUtil;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Compiles a library whenever its sources change, until interrupted.
+ * The {@link LibrarySession} is kept between the builds, so only the changed sources
+ * and the modules importing them are checked again.
+ */
+public final class LibraryWatcher {
+  /** Events closer than this are built together, editors tend to write a file several times on save */
+  private static final long QUIET_MILLIS = 100;
+
+  private LibraryWatcher() { }
+
+  /** @param onDisk whether the compiled cores are saved, they are only checked with {@code --no-code} */
+  public static int watch(
+    @NotNull Reporter reporter, @NotNull CompilerFlags flags,
+    @NotNull Path libraryRoot, boolean onDisk
+  ) throws IOException {
+    if (!Files.exists(libraryRoot)) {
+      reporter.reportString("Specified library root does not exist: " + libraryRoot);
+      return 1;
+    }
+    var root = FileUtil.canonicalize(libraryRoot);
+    try (var tree = new Tree(FileSystems.getDefault().newWatchService())) {
+      LibrarySession session = null;
+      while (true) {
+        try {
+          session = session == null ? LibrarySession.create(root, onDisk) : session.refresh();
+          tree.register(session.owner());
+          session.compile(reporter, flags);
+        } catch (LibraryConfigData.BadConfig bad) {
+          reporter.reportString("Cannot load malformed library: " + bad.getMessage());
+          session = null;
+          tree.register(root);
+        }
+        // --remake only applies to the first build
+        flags = new CompilerFlags(flags.message(), flags.interruptedTrace(), false,
+          flags.prettyInfo(), flags.modulePaths(), flags.outputFile());
+        reporter.reportString("Watching for changes in " + root);
+        tree.awaitChanges();
+      }
+    } catch (InterruptedException _) {
+      return 0;
+    }
+  }
+
+  /** @return whether a change of {@param file} can change the build, editor backups and build outputs cannot */
+  static boolean isSource(@NotNull Path file) {
+    var name = file.getFileName();
+    if (name == null) return false;
+    var string = name.toString();
+    return string.endsWith(Constants.AYA_POSTFIX) || string.endsWith(Constants.AYA_LITERATE_POSTFIX)
+      || string.equals(Constants.AYA_JSON);
+  }
+
+  /**
+   * The watched directories: the library roots, for the configurations, and every directory
+   * of the source trees, including the ones created afterward. The build directories are left out,
+   * so the outputs of a build never trigger another one.
+   */
+  static final class Tree implements AutoCloseable {
+    private final @NotNull WatchService watcher;
+    private final @NotNull MutableSet<Path> dirs = MutableSet.create();
+    private final @NotNull MutableList<Path> buildRoots = MutableList.create();
+
+    Tree(@NotNull WatchService watcher) { this.watcher = watcher; }
+
+    void register(@NotNull LibraryOwner owner) throws IOException {
+      buildRoots.clear();
+      collectBuildRoots(owner);
+      registerOwner(owner);
+    }
+
+    private void collectBuildRoots(@NotNull LibraryOwner owner) {
+      buildRoots.append(owner.underlyingLibrary().libraryBuildRoot());
+      owner.libraryDeps().forEach(this::collectBuildRoots);
+    }
+
+    private void registerOwner(@NotNull LibraryOwner owner) throws IOException {
+      var library = owner.underlyingLibrary();
+      register(library.libraryRoot());
+      registerTree(library.librarySrcRoot());
+      for (var dep : owner.libraryDeps()) registerOwner(dep);
+    }
+
+    /** Registering a directory again is fine, the same key is returned */
+    void register(@NotNull Path dir) throws IOException {
+      dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      dirs.add(dir);
+    }
+
+    /** @return whether there are sources in {@param dir} */
+    private boolean registerTree(@NotNull Path dir) throws IOException {
+      if (!Files.isDirectory(dir) || isBuild(dir)) return false;
+      try (var paths = Files.walk(dir)) {
+        var hasSource = false;
+        for (var path : paths.filter(p -> !isBuild(p)).toList()) {
+          if (Files.isDirectory(path)) register(path);
+          else hasSource |= isSource(path);
+        }
+        return hasSource;
+      }
+    }
+
+    private boolean isBuild(@NotNull Path path) {
+      return buildRoots.anyMatch(path::startsWith);
+    }
+
+    /** Blocks until something relevant changes and no more changes come in {@link #QUIET_MILLIS} */
+    void awaitChanges() throws InterruptedException, IOException {
+      while (!handle(watcher.take())) { }
+      while (true) {
+        var key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+        if (key == null) return;
+        handle(key);
+      }
+    }
+
+    /** @return whether something relevant changes in {@param timeoutMillis} */
+    boolean pollChanges(long timeoutMillis) throws InterruptedException, IOException {
+      var deadline = System.currentTimeMillis() + timeoutMillis;
+      while (true) {
+        var key = watcher.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        if (key == null) return false;
+        if (handle(key)) return true;
+      }
+    }
+
+    /**
+     * Registers the new directories along the way, a directory deleted or moved in counts as
+     * a change if it may have had sources, as no events come for its content.
+     *
+     * @return whether the events of {@param key} can change the build
+     */
+    private boolean handle(@NotNull WatchKey key) throws IOException {
+      var changed = false;
+      var dir = (Path) key.watchable();
+      for (var event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          changed = true;
+          continue;
+        }
+        var path = dir.resolve((Path) event.context());
+        if (isBuild(path)) continue;
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) changed |= registerTree(path);
+        else if (event.kind() == ENTRY_DELETE && dirs.remove(path)) changed = true;
+        else changed |= isSource(path);
+      }
+      key.reset();
+      return changed;
+    }
+
+    @Override public void close() throws IOException { watcher.close(); }
+  }
+}
@@ -5,19 +5,24 @@ package org.aya.cli.console;
 import org.aya.cli.interactive.ReplConfig;
 import org.aya.cli.library.LibraryCompiler;
 import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.incremental.ParallelCompilerAdvisor;
 import org.aya.cli.literate.FlclFaithfulPrettier;
 import org.aya.cli.plct.PLCTReport;
 import org.aya.cli.render.RenderOptions;
 import org.aya.cli.repl.AyaRepl;
 import org.aya.cli.single.CompilerFlags;
+import org.aya.cli.single.ProgramRunner;
 import org.aya.cli.single.SingleFileCompiler;
 import org.aya.cli.utils.CliEnums;
+import org.aya.generic.AyaHome;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.primitive.PrimFactory;
 import org.aya.producer.flcl.FlclParser;
 import org.aya.util.FileUtil;
+import org.aya.util.Profiler;
 import org.aya.util.error.SourceFile;
 import org.aya.util.error.SourceFileLocator;
+import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
@@ -27,10 +32,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Main extends MainArgs implements Callable<Integer> {
+  /** Forwarded to the compiler daemon as is */
+  private @NotNull String[] originalArgs = new String[0];
+
   public static void main(String... args) {
-    System.exit(new CommandLine(new Main()).execute(args));
+    var main = new Main();
+    main.originalArgs = args;
+    System.exit(new CommandLine(main).execute(args));
   }
 
   @Override public Integer call() throws Exception {
@@ -40,18 +53,71 @@ public class Main extends MainArgs implements Callable<Integer> {
         return AyaRepl.start(modulePaths().map(Paths::get), !noPrelude, inputFile, action.repl);
       if (action.plct != null)
         return new PLCTReport().run(action.plct);
+      if (action.daemon != null)
+        return CompileDaemon.serve(daemonSocket(), AnsiReporter.stdio(!asciiOnly, AyaPrettierOptions.pretty(), verbosity));
     }
     if (inputFile == null) {
       System.err.println("No input file specified");
       return 1;
     }
+    if (action != null && action.run != null) return doRun(action.run);
     if (fakeLiterate) return doFakeLiterate();
     CompileAction compileAction;
     if (action == null || action.compile == null) compileAction = new CompileAction();
     else compileAction = action.compile;
+    if (useDaemon && !watch && profile == null && CompileDaemon.canServe(compileAction)) {
+      var socket = daemonSocket();
+      var exitCode = CompileDaemon.forward(socket, Path.of("").toAbsolutePath(), originalArgs,
+        System.out::println, System.err::println);
+      if (exitCode != null) return exitCode;
+      System.err.println("No compiler daemon is listening on " + socket + ", compiling locally");
+    }
     return doCompile(compileAction);
   }
 
+  private @NotNull Path daemonSocket() throws IOException {
+    return daemonSocket != null ? Paths.get(daemonSocket) : AyaHome.ayaHome().resolve("daemon.sock");
+  }
+
+  /**
+   * Compile in the daemon, for the arguments of a client.
+   *
+   * @param cwd the working directory of the client
+   * @return null if the daemon cannot handle the arguments
+   */
+  @Nullable Integer callInDaemon(
+    @NotNull CompileDaemon daemon, @NotNull Path cwd,
+    @NotNull Consumer<String> out, @NotNull Consumer<String> err
+  ) throws IOException {
+    if ("null".equals(inputFile)) inputFile = null;
+    if (inputFile == null || fakeLiterate || watch || action == null || action.compile == null) return null;
+    if (!CompileDaemon.canServe(action.compile)) return null;
+    inputFile = cwd.resolve(inputFile).toString();
+    if (outputFile != null) outputFile = cwd.resolve(outputFile).toString();
+    if (prettyDir != null) prettyDir = cwd.resolve(prettyDir).toString();
+    if (modulePaths != null) modulePaths = modulePaths.stream().map(p -> cwd.resolve(p).toString()).toList();
+    return doCompile(action.compile,
+      options -> new AnsiReporter(true, () -> !asciiOnly, () -> options, verbosity, out, err), daemon);
+  }
+
+  private int doRun(@NotNull RunAction run) throws IOException {
+    var filePath = Paths.get(inputFile);
+    if (Files.notExists(filePath)) {
+      System.err.println("File not found: " + filePath);
+      return -1;
+    }
+    var replConfig = ReplConfig.loadFromDefault();
+    var reporter = AnsiReporter.stdio(!asciiOnly, replConfig.literatePrettier.prettierOptions, verbosity);
+    replConfig.close();
+    var message = asciiOnly ? CompilerFlags.Message.ASCII : CompilerFlags.Message.EMOJI;
+    var flags = new CompilerFlags(message, interruptedTrace, false, null,
+      modulePaths().view().map(Paths::get), null);
+    var runner = new ProgramRunner(reporter, flags, run.erased, System.out::println);
+    return Files.isDirectory(filePath)
+      ? runner.runLibrary(filePath, run.main)
+      : runner.runFile(filePath, run.main);
+  }
+
   private int doFakeLiterate() throws IOException {
     var replConfig = ReplConfig.loadFromDefault();
     replConfig.loadPrelude = !noPrelude;
@@ -77,6 +143,15 @@ public class Main extends MainArgs implements Callable<Integer> {
   }
 
   private int doCompile(@NotNull CompileAction compile) throws IOException {
+    return doCompile(compile, options -> AnsiReporter.stdio(!asciiOnly, options, verbosity), null);
+  }
+
+  /** @param daemon if not null, libraries are compiled in it */
+  private int doCompile(
+    @NotNull CompileAction compile,
+    @NotNull Function<AyaPrettierOptions, Reporter> reporterFactory,
+    @Nullable CompileDaemon daemon
+  ) throws IOException {
     var message = asciiOnly
       ? CompilerFlags.Message.ASCII
       : CompilerFlags.Message.EMOJI;
@@ -85,7 +160,7 @@ public class Main extends MainArgs implements Callable<Integer> {
     var replConfig = ReplConfig.loadFromDefault();
     replConfig.loadPrelude = !noPrelude;
     var prettierOptions = replConfig.literatePrettier.prettierOptions;
-    var reporter = AnsiReporter.stdio(!asciiOnly, prettierOptions, verbosity);
+    var reporter = reporterFactory.apply(prettierOptions);
     var renderOptions = createRenderOptions(replConfig);
     replConfig.close();
     var pretty = computePrettyInfo(outputPath, renderOptions, prettierOptions);
@@ -94,8 +169,32 @@ public class Main extends MainArgs implements Callable<Integer> {
       modulePaths().view().map(Paths::get),
       outputPath);
 
+    if (profile != null) {
+      var profiler = Profiler.start();
+      try {
+        return doCompile(compile, flags, reporter, filePath, daemon);
+      } finally {
+        var events = profiler.stop();
+        Profiler.writeChromeTrace(events, Paths.get(profile));
+        reporter.reportString(Profiler.summary(events, 20));
+      }
+    }
+    return doCompile(compile, flags, reporter, filePath, daemon);
+  }
+
+  private int doCompile(
+    @NotNull CompileAction compile, @NotNull CompilerFlags flags,
+    @NotNull Reporter reporter, @NotNull Path filePath,
+    @Nullable CompileDaemon daemon
+  ) throws IOException {
     if (compile.isLibrary || compile.isRemake || compile.isNoCode) {
+      if (daemon != null) return daemon.compile(reporter, flags, filePath);
+      if (watch) return LibraryWatcher.watch(reporter, flags, filePath, !compile.isNoCode);
       var advisor = compile.isNoCode ? CompilerAdvisor.inMemory() : CompilerAdvisor.onDisk();
+      if (compile.parallelTyck) try (var pool = new ForkJoinPool()) {
+        return LibraryCompiler.compile(new PrimFactory(), reporter, flags,
+          new ParallelCompilerAdvisor(advisor, pool), filePath);
+      }
       return LibraryCompiler.compile(new PrimFactory(), reporter, flags, advisor, filePath);
     }
     var compiler = new SingleFileCompiler(reporter, flags, null);
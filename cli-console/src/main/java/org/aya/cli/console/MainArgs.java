@@ -41,6 +41,27 @@ public class MainArgs {
     @Option(names = {"--no-code"}, description =
       "Treat input file as a library root (no outputs will be saved to disk)")
     public boolean isNoCode;
+    @Option(names = {"--parallel-tyck"}, description =
+      "Check the independent definitions of a module concurrently when compiling a library")
+    public boolean parallelTyck;
+  }
+
+  public static class RunAction {
+    @Option(names = {"--run"}, description =
+      "Compile the input file or library root and print the normal form of a function without parameters.", required = true)
+    public boolean run;
+    @Option(names = {"--main"}, defaultValue = "main", description =
+      "The function to run, qualified by its module for a library, like Module::main.")
+    public String main;
+    @Option(names = {"--erased"}, description =
+      "Erase types and unbox naturals and lists, with an interpreter that is experimental for now.")
+    public boolean erased;
+  }
+
+  public static class DaemonAction {
+    @Option(names = {"--daemon"}, description =
+      "Start a compiler daemon, which builds libraries for clients with --use-daemon.", required = true)
+    public boolean daemon;
   }
 
   public static class PlctAction {
@@ -56,7 +77,7 @@ public class MainArgs {
     public String repoName;
   }
 
-  /** Either `repl` or `compile` is not null */
+  /** One of the actions is not null */
   public static class Action {
     @CommandLine.ArgGroup(heading = "REPL arguments:%n", exclusive = false)
     public @Nullable ReplAction repl;
@@ -66,6 +87,12 @@ public class MainArgs {
 
     @CommandLine.ArgGroup(heading = "PLCT report arguments:%n", exclusive = false)
     public @Nullable PlctAction plct;
+
+    @CommandLine.ArgGroup(heading = "Daemon arguments:%n", exclusive = false)
+    public @Nullable DaemonAction daemon;
+
+    @CommandLine.ArgGroup(heading = "Run arguments:%n", exclusive = false)
+    public @Nullable RunAction run;
   }
 
   @Option(names = {"--interrupted-trace"}, hidden = true)
@@ -99,6 +126,14 @@ public class MainArgs {
   public boolean fakeLiterate;
   @Option(names = {"--no-prelude"}, description = "Disable the implicit import of the prelude.")
   public boolean noPrelude;
+  @Option(names = {"--watch"}, description = "Build the library again whenever its sources change.")
+  public boolean watch;
+  @Option(names = {"--profile"}, description = "Write the time spent in each phase and declaration to this file, in the Chrome trace event format.")
+  public String profile;
+  @Option(names = {"--use-daemon"}, description = "Build libraries in the compiler daemon if it is running.")
+  public boolean useDaemon;
+  @Option(names = {"--daemon-socket"}, description = "The socket of the compiler daemon, defaults to daemon.sock in the Aya home.")
+  public String daemonSocket;
 
   @Parameters(paramLabel = "<input-file>", defaultValue = "null", description = "File to compile")
   public String inputFile;
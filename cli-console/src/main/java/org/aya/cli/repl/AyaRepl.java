@@ -78,6 +78,9 @@ public abstract class AyaRepl implements Closeable, Runnable, Repl {
       ReplCommands.QUIT,
       ReplCommands.CHANGE_PROMPT,
       ReplCommands.CHANGE_NORM_MODE,
+      ReplCommands.CHANGE_NORM_STEPS,
+      ReplCommands.CHANGE_NORM_TIMEOUT,
+      ReplCommands.TOGGLE_NORM_STATS,
       ReplCommands.TOGGLE_PRETTY,
       ReplCommands.SHOW_TYPE,
       ReplCommands.SHOW_INFO,
@@ -106,6 +109,10 @@ public abstract class AyaRepl implements Closeable, Runnable, Repl {
     replCompiler = new ReplCompiler(modulePaths, new AnsiReporter(true,
       () -> config.enableUnicode, () -> config.literatePrettier.prettierOptions,
       Problem.Severity.INFO, this::println, this::errPrintln), null);
+    replCompiler.normalizeBudget = config.normalizeBudget();
+    replCompiler.normalizeStats = config.normalizeStats;
+    replCompiler.preludeSnapshot = config.preludeSnapshot;
+    replCompiler.jitCompile = config.jitCompile;
     if (config.loadPrelude) replCompiler.loadPreludeIfPossible();
   }
 
@@ -3,7 +3,6 @@
 package org.aya.cli.repl;
 
 import kala.collection.immutable.ImmutableSeq;
-import kala.collection.mutable.MutableList;
 import kala.control.Either;
 import org.aya.cli.render.RenderOptions;
 import org.aya.prettier.AyaPrettierOptions;
@@ -81,12 +80,11 @@ public interface ReplCommands {
 
   @NotNull Command SHOW_SHAPES = new Command(ImmutableSeq.of("debug-show-shapes"), "Show recognized shapes") {
     @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl) {
-      var discovered = repl.replCompiler.getShapeFactory().discovered;
-      return Result.ok(repl.renderDoc(Doc.vcat(discovered.mapTo(MutableList.create(),
-        (def, recog) ->
-          Doc.sep(BasePrettier.refVar(def),
-            Doc.symbol("=>"),
-            Doc.plain(recog.shape().name()))))), true);
+      var discovered = repl.replCompiler.getShapeFactory().discovered();
+      return Result.ok(repl.renderDoc(Doc.vcat(discovered.map(impl ->
+        Doc.sep(BasePrettier.refVar(impl.def()),
+          Doc.symbol("=>"),
+          Doc.plain(impl.recog().shape().name()))))), true);
     }
   };
 
@@ -156,6 +154,33 @@ public interface ReplCommands {
     }
   };
 
+  @NotNull Command CHANGE_NORM_STEPS = new Command(ImmutableSeq.of("normalize-steps"), "Set or display the maximum reduction steps of normalization, 0 for unlimited") {
+    @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl, @Nullable Integer steps) {
+      if (steps == null) return Result.ok("Normalization steps: " + repl.config.normalizeSteps, true);
+      repl.config.normalizeSteps = Math.max(0, steps);
+      repl.replCompiler.normalizeBudget = repl.config.normalizeBudget();
+      return Result.ok("Normalization steps set to " + repl.config.normalizeSteps, true);
+    }
+  };
+
+  @NotNull Command CHANGE_NORM_TIMEOUT = new Command(ImmutableSeq.of("normalize-timeout"), "Set or display the time limit of normalization in milliseconds, 0 for unlimited") {
+    @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl, @Nullable Integer millis) {
+      if (millis == null) return Result.ok("Normalization timeout: " + repl.config.normalizeTimeout + "ms", true);
+      repl.config.normalizeTimeout = Math.max(0, millis);
+      repl.replCompiler.normalizeBudget = repl.config.normalizeBudget();
+      return Result.ok("Normalization timeout set to " + repl.config.normalizeTimeout + "ms", true);
+    }
+  };
+
+  @NotNull Command TOGGLE_NORM_STATS = new Command(ImmutableSeq.of("normalize-stats"), "Enable or disable the statistics of normalization") {
+    @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl, @Nullable Boolean enable) {
+      var stats = enable != null ? enable : !repl.config.normalizeStats;
+      repl.config.normalizeStats = stats;
+      repl.replCompiler.normalizeStats = stats;
+      return Result.ok("Toggled normalization statistics to be " + (stats ? "enabled" : "disabled"), true);
+    }
+  };
+
   @NotNull Command TOGGLE_PRETTY = new Command(ImmutableSeq.of("print-toggle"), "Toggle a pretty printing option") {
     @Entry public @NotNull Command.Result execute(@NotNull AyaRepl repl, @Nullable AyaPrettierOptions.Key key) {
       var builder = new StringBuilder();
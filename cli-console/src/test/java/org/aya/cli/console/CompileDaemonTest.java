@@ -0,0 +1,99 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.console;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.cli.interactive.ReplConfig;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.primitive.PrimFactory;
+import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Problem;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompileDaemonTest {
+  private static @NotNull Path library(@NotNull Path dir) throws IOException {
+    var root = dir.resolve("lib");
+    Files.createDirectories(root.resolve("src"));
+    Files.writeString(root.resolve("aya.json"), """
+      {
+        "ayaVersion": "0.31",
+        "group": "org.aya-prover",
+        "name": "daemon",
+        "version": "0.1.0",
+        "dependency": { }
+      }
+      """);
+    Files.writeString(root.resolve("src/Good.aya"), """
+      open inductive Nat | zero | suc Nat
+      def one : Nat => suc zero
+      """);
+    Files.writeString(root.resolve("src/Bad.aya"), """
+      open import Good
+      def two : Nat => one one
+      """);
+    return root;
+  }
+
+  @Test public void roundTrip(@TempDir Path dir) throws Exception {
+    var root = library(dir);
+    var socket = dir.resolve("daemon.sock");
+    var log = new BufferReporter();
+    var daemon = CompileDaemon.open(socket, log);
+    assertNotNull(daemon);
+    var thread = new Thread(daemon::run);
+    thread.start();
+    try {
+      var config = ReplConfig.loadFromDefault();
+      var options = config.literatePrettier.prettierOptions;
+      config.close();
+      var localErr = MutableList.<String>create();
+      var local = new AnsiReporter(true, () -> true, () -> options, Problem.Severity.WARN, _ -> { }, localErr::append);
+      var flags = new CompilerFlags(CompilerFlags.Message.EMOJI, false, true, null, ImmutableSeq.empty(), null);
+      var localExit = LibraryCompiler.compile(new PrimFactory(), local, flags, CompilerAdvisor.onDisk(), root);
+      assertFalse(localErr.isEmpty());
+
+      // the second build reuses the session of the first one
+      for (var i = 0; i < 2; i++) {
+        var daemonErr = MutableList.<String>create();
+        var exit = CompileDaemon.forward(socket, dir, new String[]{"--remake", root.toString()}, _ -> { }, daemonErr::append);
+        assertEquals(localExit, exit);
+        assertEquals(localErr, daemonErr);
+      }
+      assertNull(CompileDaemon.forward(socket, dir, new String[]{root.resolve("src/Good.aya").toString()}, _ -> { }, _ -> { }));
+      assertNull(CompileDaemon.open(socket, log));
+    } finally {
+      daemon.close();
+      thread.join();
+    }
+    assertFalse(Files.exists(socket));
+    // only the second daemon on the same socket is an error
+    assertEquals(1, log.problemSize(Problem.Severity.ERROR));
+  }
+
+  @Test public void staleSocket(@TempDir Path dir) throws IOException {
+    var socket = dir.resolve("daemon.sock");
+    // closing a server leaves the socket file, like a daemon that did not exit normally
+    try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(socket));
+    }
+    assertTrue(Files.exists(socket));
+    try (var daemon = CompileDaemon.open(socket, new BufferReporter())) {
+      assertNotNull(daemon);
+    }
+    assertFalse(Files.exists(socket));
+  }
+}
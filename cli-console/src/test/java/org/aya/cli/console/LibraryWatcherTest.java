@@ -0,0 +1,82 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.console;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.DiskLibraryOwner;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.util.reporter.BufferReporter;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryWatcherTest {
+  private static final long TIMEOUT = 2000;
+
+  @Test public void sources() {
+    assertTrue(LibraryWatcher.isSource(Path.of("src/Nat.aya")));
+    assertTrue(LibraryWatcher.isSource(Path.of("src/Nat.aya.md")));
+    assertTrue(LibraryWatcher.isSource(Path.of("aya.json")));
+    assertFalse(LibraryWatcher.isSource(Path.of("src/.Nat.aya.swp")));
+    assertFalse(LibraryWatcher.isSource(Path.of("src/Nat.aya~")));
+    assertFalse(LibraryWatcher.isSource(Path.of("build/imports.txt")));
+  }
+
+  private static @NotNull Path library(@NotNull Path dir) throws IOException {
+    var root = dir.resolve("lib");
+    Files.createDirectories(root.resolve("src"));
+    Files.writeString(root.resolve("aya.json"), """
+      {
+        "ayaVersion": "0.31",
+        "group": "org.aya-prover",
+        "name": "watch",
+        "version": "0.1.0",
+        "dependency": { }
+      }
+      """);
+    Files.writeString(root.resolve("src/Nat.aya"), "open inductive Nat | zero | suc Nat");
+    return root;
+  }
+
+  @Test public void tree(@TempDir Path dir) throws Exception {
+    var root = library(dir);
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(root));
+    try (var tree = new LibraryWatcher.Tree(FileSystems.getDefault().newWatchService())) {
+      tree.register(owner);
+      // the outputs of a build and the files of editors
+      var build = owner.underlyingLibrary().libraryBuildRoot();
+      Files.createDirectories(build);
+      Files.writeString(build.resolve("imports.txt"), "Nat");
+      Files.writeString(root.resolve("src/.Nat.aya.swp"), "");
+      Files.createDirectories(root.resolve("src/Data"));
+      assertFalse(tree.pollChanges(TIMEOUT));
+      // in a directory created after the registration
+      Files.writeString(root.resolve("src/Data/List.aya"), "open inductive List | nil");
+      assertTrue(tree.pollChanges(TIMEOUT));
+      Files.writeString(root.resolve("aya.json"), Files.readString(root.resolve("aya.json")));
+      assertTrue(tree.pollChanges(TIMEOUT));
+    }
+  }
+
+  /** Like {@code --watch --no-code}, the library is checked in memory */
+  @Test public void noCode(@TempDir Path dir) throws Exception {
+    var root = library(dir);
+    var session = LibrarySession.create(root, false);
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, ImmutableSeq.empty(), null);
+    var reporter = new BufferReporter();
+    assertEquals(0, session.compile(reporter, flags));
+    Files.writeString(root.resolve("src/Nat.aya"), "open inductive Nat | zero | suc Nat\ndef one : Nat => suc zero");
+    session = session.refresh();
+    assertFalse(session.advisor().savesToDisk());
+    assertEquals(0, session.compile(reporter, flags));
+    assertFalse(Files.exists(session.owner().outDir()));
+  }
+}
@@ -0,0 +1,134 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.interactive;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableSet;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.json.LibraryConfig;
+import org.aya.cli.library.source.DiskLibraryOwner;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.generic.AyaHome;
+import org.aya.prelude.GeneratedVersion;
+import org.aya.primitive.PrimFactory;
+import org.aya.producer.ImportScanner;
+import org.aya.syntax.AyaFiles;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.util.FileUtil;
+import org.aya.util.Version;
+import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Problem;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The prelude and the modules it imports, compiled into {@code ~/.aya/snapshot} as if they were a library,
+ * so the other modules in the module path, broken or not, are left alone.
+ * Later sessions load the compiled cores (with their operators, shapes and primitives)
+ * instead of checking the prelude from the sources again, and only the changed modules are rebuilt.
+ * Sessions sharing a snapshot build it one at a time, holding the lock file next to it.
+ *
+ * @param modulePath the directory containing {@code prelude.aya}
+ * @param buildRoot  where the compiled cores are, one per module path and Aya version
+ */
+public record PreludeSnapshot(@NotNull Path modulePath, @NotNull Path buildRoot) {
+  public static final @NotNull ModulePath PRELUDE = ModulePath.of("prelude");
+
+  public static @NotNull Path defaultRoot() throws IOException {
+    return AyaHome.ayaHome().resolve("snapshot");
+  }
+
+  /** @param snapshotRoot where the snapshots of all module paths are, usually {@link #defaultRoot()} */
+  public static @Nullable PreludeSnapshot find(@NotNull Path snapshotRoot, @NotNull ImmutableSeq<Path> modulePaths) {
+    var modulePath = modulePaths.view()
+      .map(FileUtil::canonicalize)
+      .find(path -> Files.exists(AyaFiles.resolveAyaSourceFile(path, PRELUDE.module())))
+      .getOrNull();
+    if (modulePath == null) return null;
+    // a prefix of the digest is enough to tell the module paths with the same name apart
+    var key = FileUtil.digest(modulePath.toString()).substring(0, 16);
+    var buildRoot = snapshotRoot
+      .resolve(GeneratedVersion.VERSION_STRING)
+      .resolve(modulePath.getFileName() + "_" + key);
+    return new PreludeSnapshot(modulePath, buildRoot);
+  }
+
+  public @NotNull LibraryConfig config() {
+    return new LibraryConfig(
+      Version.create(GeneratedVersion.VERSION_STRING),
+      "prelude-snapshot",
+      GeneratedVersion.VERSION_STRING,
+      modulePath,
+      modulePath,
+      buildRoot,
+      buildRoot.resolve("out"),
+      new LibraryConfig.LibraryLiterateConfig(null, "/", buildRoot.resolve("pretty")),
+      ImmutableSeq.empty()
+    );
+  }
+
+  /**
+   * Builds the out-of-date modules and loads the rest from the snapshot.
+   *
+   * @param reporter the problems of the build are not reported, only a warning if it fails
+   * @return null if the prelude does not compile, in which case the prelude should be loaded from the sources,
+   * which reports the problems again
+   */
+  public @Nullable LibraryOwner load(@NotNull PrimFactory primFactory, @NotNull Reporter reporter) throws IOException {
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, SeqView.empty(), null);
+    var owner = DiskLibraryOwner.from(config());
+    var prelude = imported(owner);
+    owner.librarySourcesMut().removeIf(src -> !prelude.contains(src));
+    Files.createDirectories(buildRoot);
+    int exitCode;
+    // released when the channel is closed, or the process exits
+    try (var lock = FileChannel.open(lockFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         var _ = lock.lock()) {
+      var compiler = LibraryCompiler.newCompiler(primFactory, new BufferReporter(), flags, CompilerAdvisor.onDisk(), owner);
+      exitCode = compiler.start();
+    }
+    if (exitCode == 0) return owner;
+    reporter.reportString("Cannot build the prelude snapshot in " + buildRoot
+      + ", checking the prelude from the sources", Problem.Severity.WARN);
+    return null;
+  }
+
+  /**
+   * @return the prelude and the modules it imports, found by {@link ImportScanner} without parsing,
+   * or all the sources if the imports of some module are unknown
+   */
+  private static @NotNull MutableSet<LibrarySource> imported(@NotNull LibraryOwner owner) throws IOException {
+    var found = MutableSet.<LibrarySource>create();
+    var prelude = owner.findModule(PRELUDE);
+    if (prelude == null) return MutableSet.from(owner.librarySources());
+    var todo = MutableList.of(prelude);
+    while (todo.isNotEmpty()) {
+      var source = todo.removeLast();
+      if (!found.add(source)) continue;
+      var imports = source.isLiterate() ? null : ImportScanner.scan(Files.readString(source.underlyingFile()));
+      if (imports == null) return MutableSet.from(owner.librarySources());
+      for (var mod : imports) {
+        var dep = owner.findModule(mod);
+        if (dep != null) todo.append(dep);
+      }
+    }
+    return found;
+  }
+
+  /** Outside {@link #buildRoot}, so the snapshot can be deleted while another session holds the lock */
+  public @NotNull Path lockFile() {
+    return buildRoot.resolveSibling(buildRoot.getFileName() + ".lock");
+  }
+}
@@ -33,6 +33,7 @@ import org.aya.syntax.concrete.Expr;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.literate.CodeOptions;
 import org.aya.syntax.literate.CodeOptions.NormalizeMode;
 import org.aya.syntax.ref.AnyVar;
 import org.aya.syntax.ref.ModulePath;
@@ -65,6 +66,16 @@ public class ReplCompiler {
   private final @NotNull GenericAyaFile.Factory fileManager;
   private final @NotNull AyaBinOpSet opSet;
   private final @NotNull TyckState tcState;
+  public @NotNull CodeOptions.Budget normalizeBudget = CodeOptions.Budget.NONE;
+  /** Report the {@link org.aya.normalize.NormalizeStats} after normalizing */
+  public boolean normalizeStats = false;
+  /** Load the prelude from a {@link PreludeSnapshot} */
+  public boolean preludeSnapshot = false;
+  /** Where the {@link PreludeSnapshot}s are, {@link PreludeSnapshot#defaultRoot()} if null */
+  public @Nullable Path preludeSnapshotRoot = null;
+  /** Compile the functions defined in the REPL with {@link #jit} */
+  public boolean jitCompile = false;
+  private final @NotNull ReplJit jit;
 
   public ReplCompiler(
     @NotNull ImmutableSeq<Path> modulePaths,
@@ -85,6 +96,7 @@ public class ReplCompiler {
     this.loader = new CachedModuleLoader<>(new ModuleListLoader(reporter, this.modulePaths.map(path ->
       new FileModuleLoader(this.locator, path, reporter, parser, fileManager, primFactory))));
     tcState = new TyckState(shapeFactory, primFactory);
+    jit = new ReplJit(context.modulePath());
   }
 
   private @NotNull ExprResolver.LiterateResolved
@@ -145,13 +157,13 @@ public class ReplCompiler {
       return programOrExpr.map(
         program -> {
           var newDefs = MutableValue.<ImmutableSeq<TyckDef>>create();
-          var resolveInfo = new ResolveInfo(context.fork(), primFactory, shapeFactory, opSet);
+          var resolveInfo = new ResolveInfo(context.fork(), primFactory, shapeFactory.fork(), opSet);
           loader.resolveModule(resolveInfo, program, loader);
-          resolveInfo.shapeFactory().discovered = shapeFactory.fork().discovered;
           loader.tyckModule(resolveInfo, ((_, defs) -> newDefs.set(defs)));
           if (reporter.anyError()) return ImmutableSeq.empty();
           context.merge();
           shapeFactory.merge();
+          if (jitCompile) jit.compile(newDefs.get(), shapeFactory, reporter);
           return newDefs.get();
         },
         expr -> tyckAndNormalize(expr, false, normalizeMode)
@@ -206,14 +218,31 @@ public class ReplCompiler {
       var tycker = new TeleTycker.InlineCode(new ExprTycker(tcState, delayedReporter));
       jdg = tycker.checkInlineCode(desugar.params(), desugar.expr());
     }
-    return new Normalizer(tcState).normalize(isType ? jdg.type() : jdg.wellTyped(), mode);
+    var normalizer = new Normalizer(tcState);
+    if (jitCompile) normalizer.compiled = jit::get;
+    return LiterateData.normalize(normalizer, isType ? jdg.type() : jdg.wellTyped(),
+      mode, normalizeBudget, normalizeStats, reporter, context.modulePath(), expr.sourcePos());
   }
 
   public @NotNull ReplContext getContext() { return context; }
   public @NotNull ShapeFactory getShapeFactory() { return shapeFactory; }
   public void loadPreludeIfPossible() {
-    if (loader.existsFileLevelModule(ModulePath.of("prelude"))) {
+    if (loader.existsFileLevelModule(PreludeSnapshot.PRELUDE)) {
+      if (preludeSnapshot) loadPreludeSnapshot();
       compileToContext("open import prelude", NormalizeMode.NULL);
     }
   }
+
+  /** Makes the modules of the snapshot, including the prelude, available to {@link #loader} */
+  private void loadPreludeSnapshot() {
+    try {
+      var root = preludeSnapshotRoot != null ? preludeSnapshotRoot : PreludeSnapshot.defaultRoot();
+      var snapshot = PreludeSnapshot.find(root, modulePaths);
+      var owner = snapshot == null ? null : snapshot.load(primFactory, reporter);
+      if (owner == null) return;
+      owner.librarySources().forEach(src -> loader.put(src.moduleName(), src.resolveInfo().get()));
+    } catch (IOException e) {
+      reporter.reportString("Cannot load the prelude snapshot: " + e.getMessage(), Problem.Severity.WARN);
+    }
+  }
 }
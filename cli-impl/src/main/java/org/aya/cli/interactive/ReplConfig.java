@@ -8,6 +8,7 @@ import com.google.gson.JsonParseException;
 import kala.control.Option;
 import org.aya.cli.utils.LiteratePrettierOptions;
 import org.aya.generic.AyaHome;
+import org.aya.syntax.literate.CodeOptions;
 import org.aya.syntax.literate.CodeOptions.NormalizeMode;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.VisibleForTesting;
@@ -20,16 +21,29 @@ public class ReplConfig implements AutoCloseable {
   public transient final Option<Path> configFile;
   public @NotNull String prompt = "> ";
   public @NotNull NormalizeMode normalizeMode = NormalizeMode.FULL;
+  /** The maximum reduction steps of normalization, 0 means unlimited */
+  public long normalizeSteps = 0;
+  /** The maximum time of normalization in milliseconds, 0 means unlimited */
+  public long normalizeTimeout = 0;
+  public boolean normalizeStats = false;
   public @NotNull LiteratePrettierOptions literatePrettier = new LiteratePrettierOptions();
   public boolean enableUnicode = true;
   /** Disables welcome message, echoing info, etc. */
   public boolean quiet = false;
   public boolean loadPrelude = true;
+  /** @see PreludeSnapshot */
+  public boolean preludeSnapshot = true;
+  /** @see ReplJit */
+  public boolean jitCompile = false;
 
   public ReplConfig(@NotNull Option<Path> file) {
     this.configFile = file;
   }
 
+  public @NotNull CodeOptions.Budget normalizeBudget() {
+    return new CodeOptions.Budget(normalizeSteps, normalizeTimeout);
+  }
+
   public static @NotNull ReplConfig loadFromDefault() throws IOException, JsonParseException {
     return ReplConfig.loadFrom(AyaHome.ayaHome().resolve("repl_config.json"));
   }
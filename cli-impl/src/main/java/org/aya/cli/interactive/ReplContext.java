@@ -13,7 +13,6 @@ import kala.collection.mutable.MutableSet;
 import kala.tuple.Tuple2;
 import org.aya.resolve.context.Context;
 import org.aya.resolve.context.ModuleExport;
-import org.aya.resolve.context.ModuleSymbol;
 import org.aya.resolve.context.PhysicalModuleContext;
 import org.aya.syntax.concrete.stmt.ModuleName;
 import org.aya.syntax.concrete.stmt.Stmt;
@@ -50,6 +49,16 @@ public final class ReplContext extends PhysicalModuleContext implements RepoLike
     if (ref instanceof DefVar<?, ?> defVar && acc == Stmt.Accessibility.Public) exportSymbol(name, defVar);
   }
 
+  /** The symbols are added one by one, as the REPL overwrites and merges them */
+  @Override public void importSymbols(
+    @NotNull ModuleExport export,
+    @NotNull ModuleName.Qualified fromModule,
+    @NotNull Stmt.Accessibility acc,
+    @NotNull SourcePos sourcePos
+  ) {
+    export.symbols().forEach((name, ref) -> importSymbol(ref, fromModule, name, acc, sourcePos));
+  }
+
   @Override public boolean exportSymbol(@NotNull String name, @NotNull AnyDefVar ref) {
     super.exportSymbol(name, ref);
     // REPL always overwrites symbols.
@@ -90,29 +99,17 @@ public final class ReplContext extends PhysicalModuleContext implements RepoLike
     RepoLike.super.merge();
     if (bors == null) return;
     modified = true;
-    mergeSymbols(symbols, bors.symbols);
-    exports.symbols().putAll(bors.exports.symbols());
-    exports.modules().putAll(bors.exports.modules());
+    // a name may be defined here and imported there, the downstream one wins
+    symbols.putAll(bors.symbols);
+    exports.putAll(bors.exports);
     modules.putAll(bors.modules);
   }
 
   @Contract(mutates = "this") public void clear() {
     modified = true;
     modules.clear();
-    exports.symbols().clear();
-    exports.modules().clear();
-    symbols.table().clear();
-  }
-
-  /**
-   * @apiNote It is possible that putting {@link ModuleName.Qualified} and {@link ModuleName.ThisRef} to the same name,
-   * so be careful about {@param rhs}
-   */
-  private static <T> void mergeSymbols(@NotNull ModuleSymbol<T> dest, @NotNull ModuleSymbol<T> src) {
-    for (var key : src.table().keysView()) {
-      var candy = dest.get(key);
-      dest.table().put(key, candy.merge(src.get(key)));
-    }
+    exports.clear();
+    symbols.clear();
   }
 
   /// region Rebuild Module Tree
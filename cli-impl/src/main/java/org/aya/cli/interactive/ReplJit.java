@@ -0,0 +1,121 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.interactive;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableSet;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
+import kala.control.Either;
+import org.aya.cli.utils.MemoryCompiler;
+import org.aya.compiler.CompiledModule;
+import org.aya.compiler.FileSerializer;
+import org.aya.compiler.ModuleSerializer;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.compile.JitDef;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TopLevelDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.Callable;
+import org.aya.syntax.core.term.call.ClassCall;
+import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.syntax.ref.QName;
+import org.aya.syntax.ref.QPath;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Compiles the functions defined in the REPL to Java classes in memory,
+ * which are unfolded by the {@link org.aya.normalize.Normalizer} instead of the {@link FnDef}s.
+ * <p>
+ * A function is compiled together with the REPL functions it refers to. Functions referring to anything else
+ * that is not compiled, like a data type of the REPL or a module loaded from the sources, are interpreted as before,
+ * since the compiled code matches the constructors by their compiled instances.
+ * Each batch has its own class loader, so a function redefined in the REPL does not clash with the old one.
+ */
+public final class ReplJit {
+  private final @NotNull ModulePath module;
+  private final @NotNull MutableMap<DefVar<?, ?>, JitFn> compiled = MutableMap.create();
+
+  public ReplJit(@NotNull ModulePath module) { this.module = module; }
+
+  /** @return the compiled version of {@param fn}, or null if it is interpreted */
+  public @Nullable JitFn get(@NotNull FnDef.Delegate fn) { return compiled.getOrNull(fn.ref); }
+
+  /** Compiles the functions in {@param defs} that can be compiled, the others are ignored */
+  public void compile(@NotNull ImmutableSeq<TyckDef> defs, @NotNull ShapeFactory shapeFactory, @NotNull Reporter reporter) {
+    var batch = MutableLinkedHashMap.<DefVar<?, ?>, FnDef>of();
+    var loaders = MutableSet.<ClassLoader>create();
+    for (var fn : defs.filterIsInstance(FnDef.class)) {
+      var refs = new Refs();
+      refs.visit(fn);
+      if (!refs.compilable) continue;
+      batch.putAll(refs.fns);
+      loaders.addAll(refs.loaders);
+    }
+    // the generated code can only see one library, and the class names are the function names
+    if (batch.isEmpty() || loaders.size() > 1) return;
+    if (ImmutableSet.from(batch.valuesView().map(fn -> fn.ref().name())).size() < batch.size()) return;
+
+    var qpath = QPath.fileLevel(module);
+    var code = new FileSerializer(shapeFactory)
+      .serialize(new ModuleSerializer.ModuleResult(qpath, ImmutableSeq.<TopLevelDef>from(batch.valuesView())))
+      .result();
+    var parent = loaders.isEmpty() ? ReplJit.class.getClassLoader() : loaders.iterator().next();
+    var loader = MemoryCompiler.compile(qpath, code, parent, reporter,
+      "Cannot compile the REPL definitions, they will be interpreted");
+    if (loader == null) return;
+    var state = new CompiledModule.DeState(loader);
+    state.topLevelClass(module);
+    batch.forEach((ref, fn) -> compiled.put(ref, (JitFn) state.resolve(new QName(fn.ref()))));
+  }
+
+  /** The definitions a function refers to, transitively through the functions of the REPL */
+  private final class Refs implements UnaryOperator<Term> {
+    final @NotNull MutableLinkedHashMap<DefVar<?, ?>, FnDef> fns = MutableLinkedHashMap.of();
+    final @NotNull MutableSet<ClassLoader> loaders = MutableSet.create();
+    boolean compilable = true;
+
+    void visit(@NotNull FnDef fn) {
+      if (!compilable || fns.containsKey(fn.ref())) return;
+      fns.put(fn.ref(), fn);
+      fn.telescope().forEach(param -> apply(param.type()));
+      apply(fn.result());
+      switch (fn.body()) {
+        case Either.Left(var body) -> apply(body);
+        case Either.Right(var clauses) -> clauses.forEach(clause -> clause.descent(this, this::visit));
+      }
+    }
+
+    private void visit(@NotNull AnyDef def) {
+      switch (def) {
+        case JitDef jit -> loaders.add(jit.getClass().getClassLoader());
+        case FnDef.Delegate fn when fn.core() != null && fn.fileModule().equals(module) -> visit(fn.core());
+        default -> compilable = false;
+      }
+    }
+
+    private @NotNull Pat visit(@NotNull Pat pat) {
+      if (pat instanceof Pat.Con con) visit(con.ref());
+      return pat.descent(this::visit, this);
+    }
+
+    @Override public Term apply(Term term) {
+      switch (term) {
+        case Callable.Tele call -> visit(call.ref());
+        case ClassCall call -> visit(call.ref());
+        default -> { }
+      }
+      return term.descent(this);
+    }
+  }
+}
@@ -4,6 +4,7 @@ package org.aya.cli.library;
 
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableSet;
+import kala.function.CheckedConsumer;
 import org.aya.cli.library.incremental.CompilerAdvisor;
 import org.aya.cli.library.json.LibraryConfigData;
 import org.aya.cli.library.source.DiskLibraryOwner;
@@ -17,6 +18,7 @@ import org.aya.generic.InterruptException;
 import org.aya.pretty.backend.string.StringPrinterConfig;
 import org.aya.pretty.printer.PrinterConfig;
 import org.aya.primitive.PrimFactory;
+import org.aya.producer.ImportScanner;
 import org.aya.resolve.context.Context;
 import org.aya.resolve.error.NameProblem;
 import org.aya.resolve.module.CachedModuleLoader;
@@ -25,9 +27,12 @@ import org.aya.syntax.AyaFiles;
 import org.aya.syntax.concrete.stmt.Command;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.util.Profiler;
 import org.aya.util.error.Panic;
 import org.aya.util.more.StringUtil;
 import org.aya.util.reporter.CountingReporter;
+import org.aya.util.reporter.OrderedReporter;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.terck.MutableGraph;
 import org.aya.util.tyck.OrgaTycker;
@@ -36,8 +41,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author kiva
@@ -99,15 +109,10 @@ public class LibraryCompiler {
     }
   }
 
-  private void parse(@NotNull LibrarySource source) throws IOException {
-    source.parseMe(advisor.createParser(reporter));
-  }
-
-  /** @return whether the source file is already parsed. */
-  private boolean parseIfNeeded(@NotNull LibrarySource source) throws IOException {
-    if (source.program().get() != null) return true; // already parsed
-    parse(source);
-    return false;
+  private void parse(@NotNull LibrarySource source, @NotNull Reporter reporter) throws IOException {
+    try (var _ = Profiler.span("parse", source.moduleName())) {
+      source.parseMe(advisor.createParser(reporter));
+    }
   }
 
   /**
@@ -115,8 +120,19 @@ public class LibraryCompiler {
    * The graph is used to generate incremental build list according to files'
    * last modified time.
    */
-  private void resolveImportsIfNeeded(@NotNull LibrarySource source) throws IOException {
-    if (parseIfNeeded(source)) return; // already resolved
+  private void resolveImportsIfNeeded(@NotNull LibrarySource source, @NotNull Reporter reporter) throws IOException {
+    if (source.program().get() != null) return; // already parsed and resolved
+    source.imports().clear();
+    var scanned = scanImports(source);
+    var found = scanned == null ? null : scanned.map(owner::findModule);
+    if (found != null && found.allMatch(Objects::nonNull)) {
+      found.forEach(dep -> {
+        if (source.imports().noneMatch(i -> i.moduleName().equals(dep.moduleName()))) source.imports().append(dep);
+      });
+      return;
+    }
+    // a missing module is reported by the parser path, with its position
+    parse(source, reporter);
     var finder = new ImportResolver((mod, sourcePos) -> {
       var recurse = owner.findModule(mod);
       if (recurse == null) {
@@ -125,25 +141,90 @@ public class LibraryCompiler {
       }
       return recurse;
     }, source);
-    finder.resolveStmt(source.program().get());
+    try (var _ = Profiler.span("import", source.moduleName())) {
+      finder.resolveStmt(source.program().get());
+    }
+  }
+
+  /**
+   * @return the imports recorded in the last build if the source is not modified, or found by the lexer,
+   * null if the source must be parsed to know them.
+   */
+  private @Nullable ImmutableSeq<ModulePath> scanImports(@NotNull LibrarySource source) throws IOException {
+    var imports = advisor.loadImports(source);
+    if (imports != null || source.isLiterate()) return imports;
+    try (var _ = Profiler.span("scan", source.moduleName())) {
+      return ImportScanner.scan(Files.readString(source.underlyingFile()));
+    }
   }
 
   private @NotNull MutableGraph<LibrarySource> resolveImports() throws IOException {
     var depGraph = MutableGraph.<LibrarySource>create();
     reportNest("[Info] Resolving source file dependency");
     var startTime = System.currentTimeMillis();
-    owner.librarySources().forEachChecked(src -> {
-      resolveImportsIfNeeded(src);
+    var sources = owner.librarySources().toImmutableSeq();
+    forEachConcurrently(sources, this::resolveImportsIfNeeded);
+    sources.forEach(src -> {
       var known = depGraph.sucMut(src);
       var dedup = src.imports().filter(s ->
         known.noneMatch(k -> k.moduleName().equals(s.moduleName())));
       known.appendAll(dedup);
     });
+    advisor.saveImports(owner);
     reporter.reportNest("Done in " + StringUtil.timeToString(
       System.currentTimeMillis() - startTime), LibraryOwner.DEFAULT_INDENT + 2);
     return depGraph;
   }
 
+  @FunctionalInterface
+  private interface SourceJob {
+    void run(@NotNull LibrarySource source, @NotNull Reporter reporter) throws IOException;
+  }
+
+  /**
+   * Runs {@param job} on the sources in parallel. The problems of each source are buffered and reported
+   * in the order of {@param sources}, so the output is the same as running them one by one.
+   * The job must only modify its own source.
+   */
+  private void forEachConcurrently(@NotNull ImmutableSeq<LibrarySource> sources, @NotNull SourceJob job) throws IOException {
+    var threads = Math.min(sources.size(), Runtime.getRuntime().availableProcessors());
+    if (threads <= 1) {
+      sources.forEachChecked(src -> job.run(src, reporter));
+      return;
+    }
+    try (var pool = Executors.newFixedThreadPool(threads)) {
+      var ordered = new OrderedReporter(reporter, sources.size());
+      var futures = sources.mapIndexed((i, src) -> pool.submit(() -> {
+        job.run(src, ordered.task(i));
+        return null;
+      }));
+      for (var i = 0; i < futures.size(); i++) {
+        try {
+          await(futures.get(i), "Interrupted while parsing");
+        } finally {
+          ordered.flush(i);
+        }
+      }
+    }
+  }
+
+  /** Rethrows the exception thrown by the task of {@param future} */
+  private static <T> T await(@NotNull Future<T> future, @NotNull String interrupted) throws IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      switch (e.getCause()) {
+        case IOException io -> throw io;
+        case RuntimeException rt -> throw rt;
+        case Error err -> throw err;
+        default -> throw new IOException(e.getCause());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(interrupted);
+    }
+  }
+
   public int start() throws IOException {
     if (flags.modulePaths().isNotEmpty()) reporter.reportString(
       "Warning: command-line specified module path (--module-path) is ignored when compiling libraries.");
@@ -185,15 +266,33 @@ public class LibraryCompiler {
       }
     });
     // THE BIG GAME
-    modified.forEachChecked(src -> {
+    CheckedConsumer<LibrarySource, IOException> prettyOne = src -> {
       // reportNest(STR."[Pretty] \{QualifiedID.join(src.moduleName())}");
-      var doc = src.pretty(ImmutableSeq.empty(), prettierOptions);
-      var text = renderOptions.render(outputTarget, doc, setup);
-      var outputFileName = AyaFiles.stripAyaSourcePostfix(src.displayPath().toString()) + outputTarget.fileExt;
-      var outputFile = outputDir.resolve(outputFileName);
-      Files.createDirectories(outputFile.getParent());
-      Files.writeString(outputFile, text);
-    });
+      try (var _ = Profiler.span("pretty", src.moduleName())) {
+        var doc = src.pretty(ImmutableSeq.empty(), prettierOptions);
+        var text = renderOptions.render(outputTarget, doc, setup);
+        var outputFileName = AyaFiles.stripAyaSourcePostfix(src.displayPath().toString()) + outputTarget.fileExt;
+        var outputFile = outputDir.resolve(outputFileName);
+        Files.createDirectories(outputFile.getParent());
+        Files.writeString(outputFile, text);
+      }
+    };
+    var threads = Math.min(modified.size(), Runtime.getRuntime().availableProcessors());
+    if (threads <= 1) {
+      modified.forEachChecked(prettyOne);
+      return;
+    }
+    // Every module has its own prettier, printer and stylist, and writes its own file,
+    // so the output is the same as rendering them one by one.
+    // Build the color scheme and style family cached in the render options first, so they are only read.
+    renderOptions.stylistOrDefault(outputTarget);
+    try (var pool = Executors.newFixedThreadPool(threads)) {
+      var futures = modified.map(src -> pool.submit(() -> {
+        prettyOne.acceptChecked(src);
+        return null;
+      }));
+      for (var future : futures) await(future, "Interrupted while generating literate output");
+    }
   }
 
   /**
@@ -253,7 +352,11 @@ public class LibraryCompiler {
 
     // clear some info instead of reparse? No we can't, because
     // the StmtResolver mutates the concrete tree.
-    SCCs.forEachChecked(i -> i.forEachChecked(this::reparseAffected));
+    // A parser keeping the parse trees (see WarmCompilerAdvisor) only produces the concrete tree again.
+    // Sources whose imports are scanned are not parsed yet.
+    var reparse = SCCs.flatMap(i -> i);
+    reparse.filter(src -> src.tycked().get() != null).forEach(this::clearAffected);
+    forEachConcurrently(reparse.filter(src -> src.program().get() == null), this::parse);
 
     advisor.prepareLibraryOutput(owner);
     advisor.notifyIncrementalJob(modified, SCCs);
@@ -272,13 +375,13 @@ public class LibraryCompiler {
     return false;
   }
 
-  private void reparseAffected(@NotNull LibrarySource src) throws IOException {
-    if (src.tycked().get() == null) return;
+  /** The primitives are shared by all the sources, so they are cleared before parsing concurrently */
+  private void clearAffected(@NotNull LibrarySource src) {
     src.tycked().set(null);
     src.resolveInfo().set(null);
     src.literateData().set(null);
     clearPrimitives(src.program().get());
-    parse(src);
+    src.program().set(null);
   }
 
   private void clearModified(@NotNull LibrarySource src) {
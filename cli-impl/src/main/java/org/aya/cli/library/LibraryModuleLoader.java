@@ -12,13 +12,17 @@ import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.FileModuleLoader;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.AyaFiles;
+import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.util.error.Panic;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 /**
  * This module loader is used to load source/compiled modules in a library.
@@ -71,16 +75,29 @@ record LibraryModuleLoader(
 
     // No compiled core is found, or source file is modified, compile it from source.
     var program = source.program().get();
-    assert program != null;
+    // only the imports of an unmodified source are scanned, but its compiled core may still fail to load
+    if (program == null) program = parse(source);
+    var cache = advisor.tyckCache();
+    if (cache != null) cache.transplant(mod, program);
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
     var resolveInfo = resolveModule(states.primFactory, context, program, recurseLoader);
     source.resolveInfo().set(resolveInfo);
-    return tyckModule(resolveInfo, (moduleResolve, defs) -> {
+    return tyckModule(resolveInfo, cache, (moduleResolve, defs) -> {
       source.notifyTycked(moduleResolve, defs);
       if (reporter.noError()) saveCompiledCore(source, moduleResolve, defs);
     });
   }
 
+  @Override public @Nullable Executor tyckExecutor() { return advisor.tyckExecutor(); }
+
+  private @NotNull ImmutableSeq<Stmt> parse(@NotNull LibrarySource source) {
+    try {
+      return source.parseMe(advisor.createParser(reporter));
+    } catch (IOException e) {
+      throw new Panic("Cannot read the source of " + source.moduleName(), e);
+    }
+  }
+
   @Override
   public boolean existsFileLevelModule(@NotNull ModulePath path) {
     return owner.findModule(path) != null;
@@ -12,6 +12,7 @@ import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.GenericAyaParser;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.order.TyckCache;
 import org.aya.util.error.Panic;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.ApiStatus;
@@ -20,6 +21,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 /**
  * Advises the compiler to be incremental, helps in-memory analysis,
@@ -43,6 +45,24 @@ public interface CompilerAdvisor extends AutoCloseable {
     return new AyaParserImpl(reporter);
   }
 
+  /**
+   * @return the modules imported by {@param source} as recorded by {@link #saveImports},
+   * or null if they are unknown or the source is modified since then.
+   */
+  default @Nullable ImmutableSeq<ModulePath> loadImports(@NotNull LibrarySource source) { return null; }
+
+  /** Records the imports of all the sources of {@param owner}, so they are known without parsing next time */
+  default void saveImports(@NotNull LibraryOwner owner) throws IOException { }
+
+  /** @return whether the compiled cores are saved to the disk, so the caches kept next to them survive a restart */
+  default boolean savesToDisk() { return false; }
+
+  /** @return where the library compiler checks the independent SCCs of a module concurrently, see {@link ModuleLoader#tyckExecutor()} */
+  default @Nullable Executor tyckExecutor() { return null; }
+
+  /** @return the cache of checked declarations kept across compilations, or null to always check from scratch. */
+  default @Nullable TyckCache tyckCache() { return null; }
+
   /**
    * Called when all modified sources are detected
    *
@@ -10,12 +10,14 @@ import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.GenericAyaParser;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.order.TyckCache;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 public class DelegateCompilerAdvisor implements CompilerAdvisor {
   protected final @NotNull CompilerAdvisor delegate;
@@ -27,6 +29,10 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     delegate.notifyIncrementalJob(modified, affected);
   }
 
+  @Override public boolean savesToDisk() {
+    return delegate.savesToDisk();
+  }
+
   @Override public boolean isSourceModified(@NotNull LibrarySource source) {
     return delegate.isSourceModified(source);
   }
@@ -51,6 +57,17 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     return delegate.createParser(reporter);
   }
 
+  @Override public @Nullable ImmutableSeq<ModulePath> loadImports(@NotNull LibrarySource source) {
+    return delegate.loadImports(source);
+  }
+
+  @Override public void saveImports(@NotNull LibraryOwner owner) throws IOException {
+    delegate.saveImports(owner);
+  }
+
+  @Override public @Nullable TyckCache tyckCache() { return delegate.tyckCache(); }
+  @Override public @Nullable Executor tyckExecutor() { return delegate.tyckExecutor(); }
+
   @Override public @Nullable ResolveInfo
   doLoadCompiledCore(@NotNull Reporter reporter, @NotNull LibraryOwner owner, @NotNull ModulePath mod, @Nullable Path sourcePath, @Nullable Path corePath, @NotNull ModuleLoader recurseLoader) throws IOException, ClassNotFoundException {
     return delegate.doLoadCompiledCore(reporter, owner, mod, sourcePath, corePath, recurseLoader);
@@ -4,6 +4,7 @@ package org.aya.cli.library.incremental;
 
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.utils.CompilerUtil;
@@ -11,6 +12,7 @@ import org.aya.compiler.CompiledModule;
 import org.aya.compiler.FileSerializer;
 import org.aya.compiler.ModuleSerializer;
 import org.aya.compiler.NameSerializer;
+import org.aya.generic.Constants;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.ModuleLoader;
@@ -19,6 +21,7 @@ import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.syntax.ref.QPath;
 import org.aya.util.FileUtil;
+import org.aya.util.Profiler;
 import org.aya.util.error.Global;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
@@ -33,7 +36,6 @@ import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.List;
 
 public class DiskCompilerAdvisor implements CompilerAdvisor {
@@ -48,7 +50,12 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     }
   }
   private final AyaClassLoader cl = new AyaClassLoader();
+  /** The file in the output directory of a library, where each line is a module followed by its imports */
+  private static final @NotNull String IMPORTS_MANIFEST = "imports.txt";
+  /** The loaded manifests, keyed by the output directory */
+  private final @NotNull MutableMap<Path, MutableMap<ModulePath, ImmutableSeq<ModulePath>>> manifests = MutableMap.create();
   @Override public void close() throws Exception { cl.close(); }
+  @Override public boolean savesToDisk() { return true; }
 
   @Override public boolean isSourceModified(@NotNull LibrarySource source) {
     try {
@@ -75,6 +82,46 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
 
   @Override public void clearLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
     FileUtil.deleteRecursively(owner.outDir());
+    synchronized (manifests) {
+      manifests.remove(owner.outDir());
+    }
+  }
+
+  @Override public @Nullable ImmutableSeq<ModulePath> loadImports(@NotNull LibrarySource source) {
+    if (isSourceModified(source)) return null;
+    var outDir = source.owner().outDir();
+    synchronized (manifests) {
+      return manifests.getOrPut(outDir, () -> readManifest(outDir)).getOrNull(source.moduleName());
+    }
+  }
+
+  @Override public void saveImports(@NotNull LibraryOwner owner) throws IOException {
+    var manifest = owner.librarySources().view()
+      .map(src -> src.imports().view().prepended(src)
+        .map(mod -> mod.moduleName().toString())
+        .joinToString(" "))
+      .joinToString("\n");
+    FileUtil.writeString(owner.outDir().resolve(IMPORTS_MANIFEST), manifest);
+    synchronized (manifests) {
+      manifests.remove(owner.outDir());
+    }
+  }
+
+  private static @NotNull MutableMap<ModulePath, ImmutableSeq<ModulePath>> readManifest(@NotNull Path outDir) {
+    var manifest = MutableMap.<ModulePath, ImmutableSeq<ModulePath>>create();
+    var file = outDir.resolve(IMPORTS_MANIFEST);
+    if (!Files.exists(file)) return manifest;
+    try {
+      for (var line : Files.readAllLines(file)) {
+        if (line.isBlank()) continue;
+        var mods = ImmutableSeq.from(line.split(" ")).map(mod ->
+          new ModulePath(ImmutableSeq.from(mod.split(Constants.SCOPE_SEPARATOR))));
+        manifest.put(mods.getFirst(), mods.drop(1));
+      }
+    } catch (IOException ignore) {
+      manifest.clear();
+    }
+    return manifest;
   }
 
   @Override public void clearModuleOutput(@NotNull LibrarySource source) throws IOException {
@@ -91,7 +138,7 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     if (!Files.exists(corePath)) return null;
 
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
-    try (var inputStream = FileUtil.ois(corePath)) {
+    try (var _ = Profiler.span("load-core", mod); var inputStream = FileUtil.ois(corePath)) {
       var compiledAya = (CompiledModule) inputStream.readObject();
       var parentCount = mod.size();
       var baseDir = corePath;
@@ -108,13 +155,17 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     @NotNull ResolveInfo resolveInfo,
     @NotNull ImmutableSeq<TyckDef> defs
   ) throws IOException {
-    var javaCode = new FileSerializer(resolveInfo.shapeFactory())
-      .serialize(new ModuleSerializer.ModuleResult(
-        QPath.fileLevel(file.moduleName()),
-        defs.filterIsInstance(TopLevelDef.class)))
-      .result();
+    var mod = file.moduleName();
+    String javaCode;
+    try (var _ = Profiler.span("serialize", mod)) {
+      javaCode = new FileSerializer(resolveInfo.shapeFactory())
+        .serialize(new ModuleSerializer.ModuleResult(
+          QPath.fileLevel(mod),
+          defs.filterIsInstance(TopLevelDef.class)))
+        .result();
+    }
     var baseDir = computeBaseDir(file.owner().outDir()).toAbsolutePath();
-    var relativePath = NameSerializer.getReference(QPath.fileLevel(file.moduleName()), null,
+    var relativePath = NameSerializer.getReference(QPath.fileLevel(mod), null,
       NameSerializer.NameType.ClassPath) + ".java";
     var javaSrcPath = baseDir.resolve(relativePath);
     FileUtil.writeString(javaSrcPath, javaCode);
@@ -123,27 +174,23 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     var compilationUnits = fileManager.getJavaFileObjects(javaSrcPath);
     var classpath = cl.urls.view()
       .appended(baseDir)
-      .map(Path::toString);
-    var selfClassPath = System.getProperty("java.class.path");
-    if (selfClassPath != null && !selfClassPath.isBlank()) classpath = classpath.appended(selfClassPath);
-    else {
-      // here, I'm in jlink mode
-      var jlinkClassPath = Paths.get(System.getProperty("jdk.module.path"))
-        .resolveSibling("misc")
-        .resolve("syntax-fat.jar")
-        .normalize();
-      classpath = classpath.appended(jlinkClassPath.toString());
-    }
+      .map(Path::toString)
+      .appended(CompilerUtil.selfClassPath());
     var options = List.of("--class-path", classpath.joinToString(File.pathSeparator),
       "--enable-preview", "--release", "21");
     var task = compiler.getTask(null, fileManager, null, options, null, compilationUnits);
-    task.call();
+    try (var _ = Profiler.span("javac", mod)) {
+      task.call();
+    }
     if (Global.DELETE_JIT_JAVA_SOURCE) Files.delete(javaSrcPath);
     var coreFile = file.compiledCorePath();
-    CompilerUtil.saveCompiledCore(coreFile, defs, resolveInfo);
+    try (var _ = Profiler.span("save-core", mod)) {
+      CompilerUtil.saveCompiledCore(coreFile, defs, resolveInfo);
+    }
   }
 
-  private static @NotNull Path computeBaseDir(@NotNull Path outDir) {
+  /** @return the class path of the JIT classes of a library */
+  public static @NotNull Path computeBaseDir(@NotNull Path outDir) {
     return outDir.resolve("compiled");
   }
 }
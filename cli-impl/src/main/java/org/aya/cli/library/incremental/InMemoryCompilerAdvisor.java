@@ -10,6 +10,7 @@ import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.tyck.order.TyckCache;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -22,6 +23,7 @@ import java.nio.file.attribute.FileTime;
 public class InMemoryCompilerAdvisor implements CompilerAdvisor {
   protected final @NotNull MutableMap<Path, FileTime> coreTimestamp = MutableMap.create();
   protected final @NotNull MutableMap<ModulePath, ResolveInfo> compiledCore = MutableMap.create();
+  protected final @NotNull TyckCache tyckCache = new TyckCache();
   
   protected @NotNull Path timestampKey(@NotNull LibrarySource source) {
     return source.underlyingFile();
@@ -47,7 +49,10 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
 
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) { }
 
+  @Override public @NotNull TyckCache tyckCache() { return tyckCache; }
+
   @Override public void clearLibraryOutput(@NotNull LibraryOwner owner) {
+    tyckCache.clear();
     owner.librarySources().forEach(src -> {
       coreTimestamp.remove(timestampKey(src));
       clearModuleOutput(src);
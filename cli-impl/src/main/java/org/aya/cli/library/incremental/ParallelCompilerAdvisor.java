@@ -0,0 +1,22 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.library.incremental;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Checks the independent SCCs of a module concurrently on the given executor,
+ * which is owned by the caller. Only the command line compiler uses it, and only when asked to.
+ */
+public class ParallelCompilerAdvisor extends DelegateCompilerAdvisor {
+  private final @NotNull Executor executor;
+
+  public ParallelCompilerAdvisor(@NotNull CompilerAdvisor delegate, @NotNull Executor executor) {
+    super(delegate);
+    this.executor = executor;
+  }
+
+  @Override public @NotNull Executor tyckExecutor() { return executor; }
+}
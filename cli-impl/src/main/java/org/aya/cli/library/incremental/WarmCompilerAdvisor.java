@@ -0,0 +1,100 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.library.incremental;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.producer.IncrementalAyaParser;
+import org.aya.resolve.ResolveInfo;
+import org.aya.resolve.module.ModuleLoader;
+import org.aya.syntax.GenericAyaParser;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Keeps the modules loaded from (or saved to) compiled cores in memory, for compilers living
+ * longer than one compilation. A compiled core is read again only when it is changed on disk.
+ * <p>
+ * The primitive factory must also be kept across compilations, since the loaded modules refer to its primitives.
+ * <p>
+ * The parse trees are also kept, so a module checked again because of its imports is only produced again
+ * from the same parse tree, and a modified one is only reparsed around the edits.
+ */
+public class WarmCompilerAdvisor extends DelegateCompilerAdvisor {
+  /** @param coreTime the last modified time of the compiled core, null if unknown */
+  private record Loaded(@NotNull ResolveInfo resolveInfo, @Nullable FileTime coreTime) { }
+
+  private final @NotNull MutableMap<Path, Loaded> loaded = MutableMap.create();
+  private final @NotNull IncrementalAyaParser.Cache parseCache = new IncrementalAyaParser.Cache();
+
+  public WarmCompilerAdvisor(@NotNull CompilerAdvisor delegate) { super(delegate); }
+
+  @Override public @NotNull GenericAyaParser createParser(@NotNull Reporter reporter) {
+    return new IncrementalAyaParser(parseCache, reporter);
+  }
+
+  @Override public @Nullable ResolveInfo doLoadCompiledCore(
+    @NotNull Reporter reporter,
+    @NotNull LibraryOwner owner, @NotNull ModulePath mod,
+    @Nullable Path sourcePath,
+    @Nullable Path corePath,
+    @NotNull ModuleLoader recurseLoader
+  ) throws IOException, ClassNotFoundException {
+    if (corePath != null) {
+      var warm = loaded.getOrNull(corePath);
+      if (warm != null && warm.coreTime != null && warm.coreTime.equals(lastModified(corePath)))
+        return warm.resolveInfo;
+    }
+    var resolveInfo = super.doLoadCompiledCore(reporter, owner, mod, sourcePath, corePath, recurseLoader);
+    if (corePath != null) {
+      if (resolveInfo == null) loaded.remove(corePath);
+      else loaded.put(corePath, new Loaded(resolveInfo, lastModified(corePath)));
+    }
+    return resolveInfo;
+  }
+
+  @Override public void doSaveCompiledCore(
+    @NotNull LibrarySource file,
+    @NotNull ResolveInfo resolveInfo,
+    @NotNull ImmutableSeq<TyckDef> defs
+  ) throws IOException {
+    super.doSaveCompiledCore(file, resolveInfo, defs);
+    // the time is known after {@link #updateLastModified}
+    loaded.put(file.compiledCorePath(), new Loaded(resolveInfo, null));
+  }
+
+  @Override public void updateLastModified(@NotNull LibrarySource source) {
+    super.updateLastModified(source);
+    var core = source.compiledCorePath();
+    var warm = loaded.getOrNull(core);
+    if (warm != null) loaded.put(core, new Loaded(warm.resolveInfo, lastModified(core)));
+  }
+
+  @Override public void clearLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
+    owner.librarySources().forEach(src -> loaded.remove(src.compiledCorePath()));
+    super.clearLibraryOutput(owner);
+  }
+
+  @Override public void clearModuleOutput(@NotNull LibrarySource source) throws IOException {
+    loaded.remove(source.compiledCorePath());
+    super.clearModuleOutput(source);
+  }
+
+  private static @Nullable FileTime lastModified(@NotNull Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException ignored) {
+      return null;
+    }
+  }
+}
@@ -27,7 +27,8 @@ public interface MutableLibraryOwner extends LibraryOwner {
   }
 
   @Override default void addModulePath(@NotNull Path newPath) {
-    modulePathMut().append(newPath);
+    // owners may be compiled many times, by the language server for example
+    if (!modulePathMut().contains(newPath)) modulePathMut().append(newPath);
   }
 
   default void removeLibrarySource(@NotNull LibrarySource source) {
@@ -0,0 +1,251 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.single;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.value.MutableValue;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.incremental.DiskCompilerAdvisor;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.utils.MemoryCompiler;
+import org.aya.compiler.CompiledModule;
+import org.aya.compiler.FileSerializer;
+import org.aya.compiler.ModuleSerializer;
+import org.aya.normalize.ErasedEvaluator;
+import org.aya.normalize.Normalizer;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.primitive.PrimFactory;
+import org.aya.resolve.ResolveInfo;
+import org.aya.syntax.concrete.stmt.decl.FnDecl;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.def.TopLevelDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.literate.CodeOptions.NormalizeMode;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.syntax.ref.QName;
+import org.aya.syntax.ref.QPath;
+import org.aya.tyck.TyckState;
+import org.aya.util.error.Panic;
+import org.aya.util.reporter.Problem;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Runs a program for {@code --run}: a function without parameters is evaluated to a normal form, which is printed.
+ * <p>
+ * With {@link #erased}, the program is run by the {@link ErasedEvaluator}, on the core of every definition it uses,
+ * so a library is checked in memory. It is an interpreter for now, until the compiler generates unboxed code.
+ * Programs it cannot run are evaluated from the same compilation with a warning, on the core terms for a library,
+ * and the default way below for a single file.
+ * <p>
+ * By default, the function is evaluated by its compiled class, and so is everything it calls. The whole module is compiled,
+ * so the values are built by the compiled code, which matches the constructors by their compiled instances.
+ * For a library, the classes built by the library compiler are loaded. For a single file, the module is compiled
+ * in memory, which only works if the modules it imports are compiled too, otherwise the function is interpreted.
+ *
+ * @param erased whether to try the {@link ErasedEvaluator} first
+ * @param output where the normal form is printed
+ */
+public record ProgramRunner(
+  @NotNull Reporter reporter,
+  @NotNull CompilerFlags flags,
+  boolean erased,
+  @NotNull Consumer<String> output
+) {
+  /** Recursion out of tail position runs on the stack of the erased evaluator */
+  private static final long ERASED_STACK_SIZE = 1L << 30;
+
+  public int runFile(@NotNull Path file, @NotNull String mainName) throws IOException {
+    var compiler = new SingleFileCompiler(reporter, flags, null);
+    var resolveInfo = MutableValue.<ResolveInfo>create();
+    var defs = MutableValue.<ImmutableSeq<TyckDef>>create();
+    var exitCode = compiler.compile(file, (info, tycked) -> {
+      resolveInfo.set(info);
+      defs.set(tycked);
+    });
+    if (exitCode != 0) return exitCode;
+    var main = defs.get().filterIsInstance(FnDef.class)
+      .find(fn -> fn.ref().name().equals(mainName))
+      .getOrNull();
+    if (main == null) {
+      reporter.reportString("Cannot find the function " + mainName, Problem.Severity.ERROR);
+      return 1;
+    }
+    if (main.telescope().isNotEmpty()) {
+      reporter.reportString(mainName + " should not take any parameter", Problem.Severity.ERROR);
+      return 1;
+    }
+    if (erased) {
+      var erasedExit = runErased(main, resolveInfo.get());
+      if (erasedExit != null) return erasedExit;
+    }
+
+    var module = QPath.fileLevel(main.ref().module.fileModule());
+    var code = new FileSerializer(resolveInfo.get().shapeFactory())
+      .serialize(new ModuleSerializer.ModuleResult(module, defs.get().filterIsInstance(TopLevelDef.class)))
+      .result();
+    var loader = MemoryCompiler.compile(module, code, ProgramRunner.class.getClassLoader(), reporter,
+      "Cannot compile " + file.getFileName() + ", " + mainName + " will be interpreted");
+    FnDefLike fn = loader == null
+      ? new FnDef.Delegate(main.ref())
+      : (JitFn) new CompiledModule.DeState(loader).resolve(new QName(main.ref()));
+    return evaluate(fn, resolveInfo.get());
+  }
+
+  /** @param mainName qualified by its module, like {@code Data::Nat::main} */
+  public int runLibrary(@NotNull Path libraryRoot, @NotNull String mainName) throws IOException {
+    var separator = mainName.lastIndexOf("::");
+    if (separator < 0) {
+      reporter.reportString("Expect the module of " + mainName + ", like Module::" + mainName, Problem.Severity.ERROR);
+      return 1;
+    }
+    var modulePath = ModulePath.of(mainName.substring(0, separator).split("::"));
+    var name = mainName.substring(separator + 2);
+    if (erased) return runLibraryErased(libraryRoot, modulePath, name, mainName);
+
+    LibraryOwner owner;
+    try {
+      var compiler = LibraryCompiler.newCompiler(new PrimFactory(), reporter, flags, CompilerAdvisor.onDisk(), libraryRoot);
+      var exitCode = compiler.start();
+      if (exitCode != 0) return exitCode;
+      owner = compiler.libraryOwner();
+    } catch (LibraryConfigData.BadConfig bad) {
+      reporter.reportString("Cannot load malformed library: " + bad.getMessage(), Problem.Severity.ERROR);
+      return 1;
+    }
+    var source = owner.findModule(modulePath);
+    if (source == null) {
+      reporter.reportString("Cannot find the module " + modulePath, Problem.Severity.ERROR);
+      return 1;
+    }
+
+    var urls = MutableList.<URL>create();
+    for (var lib : LibraryOwner.collectDependencies(owner))
+      urls.append(DiskCompilerAdvisor.computeBaseDir(lib.outDir()).toUri().toURL());
+    try (var loader = new URLClassLoader(urls.toArray(URL[]::new), ProgramRunner.class.getClassLoader())) {
+      var main = resolve(new CompiledModule.DeState(loader), new QName(QPath.fileLevel(modulePath), name));
+      if (main == null) {
+        reporter.reportString("Cannot find the function " + mainName, Problem.Severity.ERROR);
+        return 1;
+      }
+      if (main.telescopeSize != 0) {
+        reporter.reportString(mainName + " should not take any parameter", Problem.Severity.ERROR);
+        return 1;
+      }
+      return evaluate(main, source.resolveInfo().get());
+    }
+  }
+
+  /** Programs the {@link ErasedEvaluator} cannot run are evaluated on the cores checked here, not compiled again */
+  private int runLibraryErased(
+    @NotNull Path libraryRoot, @NotNull ModulePath modulePath,
+    @NotNull String name, @NotNull String mainName
+  ) throws IOException {
+    LibraryOwner owner;
+    try {
+      // the compiled classes have no core to run, so the library is checked again in memory
+      var compiler = LibraryCompiler.newCompiler(new PrimFactory(), reporter, flags, CompilerAdvisor.inMemory(), libraryRoot);
+      var exitCode = compiler.start();
+      if (exitCode != 0) return exitCode;
+      owner = compiler.libraryOwner();
+    } catch (LibraryConfigData.BadConfig bad) {
+      reporter.reportString("Cannot load malformed library: " + bad.getMessage(), Problem.Severity.ERROR);
+      return 1;
+    }
+    var source = owner.findModule(modulePath);
+    if (source == null) {
+      reporter.reportString("Cannot find the module " + modulePath, Problem.Severity.ERROR);
+      return 1;
+    }
+    var main = source.program().get().filterIsInstance(FnDecl.class)
+      .find(decl -> decl.ref.name().equals(name))
+      .map(decl -> decl.ref.core)
+      .getOrNull();
+    if (main == null) {
+      reporter.reportString("Cannot find the function " + mainName, Problem.Severity.ERROR);
+      return 1;
+    }
+    if (main.telescope().isNotEmpty()) {
+      reporter.reportString(mainName + " should not take any parameter", Problem.Severity.ERROR);
+      return 1;
+    }
+    var erasedExit = runErased(main, source.resolveInfo().get());
+    return erasedExit != null ? erasedExit : evaluate(new FnDef.Delegate(main.ref()), source.resolveInfo().get());
+  }
+
+  /** @return the exit code, or null if the program should be evaluated on core terms */
+  private @Nullable Integer runErased(@NotNull FnDef main, @NotNull ResolveInfo resolveInfo) {
+    var evaluator = new ErasedEvaluator(resolveInfo.shapeFactory());
+    var result = MutableValue.create();
+    var failure = MutableValue.<Throwable>create();
+    var start = System.nanoTime();
+    var thread = new Thread(null, () -> {
+      try {
+        result.set(evaluator.call(new FnDef.Delegate(main.ref()), ImmutableSeq.empty()));
+      } catch (Throwable e) {
+        failure.set(e);
+      }
+    }, "erased " + main.ref().name(), ERASED_STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    }
+    var millis = (System.nanoTime() - start) / 1e6;
+    switch (failure.get()) {
+      case null -> { }
+      case ErasedEvaluator.Unsupported unsupported -> {
+        reporter.reportString(unsupported.getMessage() + " with types erased, evaluating "
+          + main.ref().name() + " on core terms instead", Problem.Severity.WARN);
+        return null;
+      }
+      case StackOverflowError _ -> {
+        reporter.reportString("Stack overflow when running " + main.ref().name(), Problem.Severity.ERROR);
+        return 1;
+      }
+      case ArithmeticException _ -> {
+        reporter.reportString("A natural number overflows when running " + main.ref().name(), Problem.Severity.ERROR);
+        return 1;
+      }
+      case RuntimeException e -> throw e;
+      case Error e -> throw e;
+      case Throwable e -> throw new RuntimeException(e);
+    }
+    output.accept(ErasedEvaluator.show(result.get()));
+    reporter.reportString(String.format("Ran %s in %.1f ms", main.ref().name(), millis), Problem.Severity.INFO);
+    return 0;
+  }
+
+  private static @Nullable JitFn resolve(@NotNull CompiledModule.DeState state, @NotNull QName name) {
+    try {
+      return state.resolve(name) instanceof JitFn fn ? fn : null;
+    } catch (Panic _) {
+      return null;
+    }
+  }
+
+  private int evaluate(@NotNull FnDefLike main, @NotNull ResolveInfo resolveInfo) {
+    var normalizer = new Normalizer(new TyckState(resolveInfo.shapeFactory(), resolveInfo.primFactory()));
+    var start = System.nanoTime();
+    var result = normalizer.normalize(new FnCall(main, 0, ImmutableSeq.empty()), NormalizeMode.FULL);
+    var millis = (System.nanoTime() - start) / 1e6;
+    output.accept(result.toDoc(AyaPrettierOptions.pretty()).debugRender());
+    reporter.reportString(String.format("Evaluated %s in %.1f ms", main.name(), millis), Problem.Severity.INFO);
+    return 0;
+  }
+}
@@ -17,8 +17,21 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class CompilerUtil {
+  /** @return the class path for javac to compile the JIT classes against the running compiler */
+  public static @NotNull String selfClassPath() {
+    var selfClassPath = System.getProperty("java.class.path");
+    if (selfClassPath != null && !selfClassPath.isBlank()) return selfClassPath;
+    // here, I'm in jlink mode
+    return Paths.get(System.getProperty("jdk.module.path"))
+      .resolveSibling("misc")
+      .resolve("syntax-fat.jar")
+      .normalize()
+      .toString();
+  }
+
   public static int catching(
     @NotNull CountingReporter reporter,
     @NotNull CompilerFlags flags,
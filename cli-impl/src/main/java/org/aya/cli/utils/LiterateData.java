@@ -10,7 +10,9 @@ import org.aya.cli.literate.LiterateFaithfulPrettier;
 import org.aya.cli.literate.SyntaxHighlight;
 import org.aya.literate.Literate;
 import org.aya.literate.LiterateConsumer;
+import org.aya.normalize.NormalizeStats;
 import org.aya.normalize.Normalizer;
+import org.aya.normalize.error.NormalizeStatistics;
 import org.aya.prettier.BasePrettier;
 import org.aya.pretty.doc.Doc;
 import org.aya.resolve.ResolveInfo;
@@ -22,13 +24,16 @@ import org.aya.syntax.concrete.Expr;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.term.ErrorTerm;
+import org.aya.syntax.core.term.Term;
 import org.aya.syntax.literate.AyaLiterate;
 import org.aya.syntax.literate.CodeOptions;
 import org.aya.syntax.ref.AnyDefVar;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.tyck.Jdg;
 import org.aya.tyck.tycker.TeleTycker;
+import org.aya.util.Profiler;
 import org.aya.util.error.SourceFile;
+import org.aya.util.error.SourcePos;
 import org.aya.util.prettier.PrettierOptions;
 import org.aya.util.reporter.Problem;
 import org.aya.util.reporter.Reporter;
@@ -98,13 +103,51 @@ public record LiterateData(
       var teleTycker = new TeleTycker.InlineCode(tycker);
       var result = teleTycker.checkInlineCode(c.params, c.expr);
       var normalizer = new Normalizer(tycker.state);
-      c.tyckResult = new AyaLiterate.TyckResult(
-        normalizer.normalize(result.wellTyped(), c.options.mode()),
-        normalizer.normalize(result.type(), c.options.mode())
-      );
+      var module = info.thisModule().modulePath();
+      var budget = c.options.budget();
+      try {
+        c.tyckResult = new AyaLiterate.TyckResult(
+          normalize(normalizer, result.wellTyped(), c.options.mode(), budget, false, tycker.reporter, module, c.sourcePos),
+          normalize(normalizer, result.type(), c.options.mode(), budget, false, tycker.reporter, module, c.sourcePos)
+        );
+      } catch (NormalizeStats.Exhausted _) {
+        // show the terms as they are
+        c.tyckResult = new AyaLiterate.TyckResult(
+          normalizer.normalize(result.wellTyped(), CodeOptions.NormalizeMode.NULL),
+          normalizer.normalize(result.type(), CodeOptions.NormalizeMode.NULL)
+        );
+      }
     });
   }
 
+  /**
+   * Normalize within the {@code budget}. The statistics are collected when there is a budget,
+   * when {@code showStats} is true or when profiling, and reported in the former two cases.
+   *
+   * @throws NormalizeStats.Exhausted if the budget is exceeded, which is reported
+   */
+  public static @NotNull Term normalize(
+    @NotNull Normalizer normalizer, @NotNull Term term,
+    @NotNull CodeOptions.NormalizeMode mode, @NotNull CodeOptions.Budget budget, boolean showStats,
+    @NotNull Reporter reporter, @NotNull Object module, @NotNull SourcePos sourcePos
+  ) {
+    var stats = showStats || !budget.isUnlimited() || Profiler.isEnabled() ? new NormalizeStats(budget) : null;
+    normalizer.stats = stats;
+    try (var span = Profiler.span("normalize", module, sourcePos)) {
+      var result = normalizer.normalize(term, mode);
+      if (stats != null) {
+        stats.record(span);
+        if (showStats) reporter.report(new NormalizeStatistics(sourcePos, stats, false));
+      }
+      return result;
+    } catch (NormalizeStats.Exhausted e) {
+      reporter.report(new NormalizeStatistics(sourcePos, e.stats, true));
+      throw e;
+    } finally {
+      normalizer.stats = null;
+    }
+  }
+
   public static @NotNull Doc toDoc(
     @NotNull GenericAyaFile ayaFile,
     @Nullable ModulePath currentFileModule,
@@ -0,0 +1,104 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.utils;
+
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.compiler.NameSerializer;
+import org.aya.syntax.ref.QPath;
+import org.aya.util.reporter.Problem;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Compiles the Java code of a module generated by {@link org.aya.compiler.FileSerializer}
+ * without writing anything to the disk, the class files are kept by the returned class loader.
+ */
+public final class MemoryCompiler {
+  private MemoryCompiler() { }
+
+  /**
+   * @param parent the class loader of the compiled definitions the code refers to,
+   *               its URLs are added to the class path if it is a {@link URLClassLoader}
+   * @return null if javac fails, which is reported as a warning prefixed by {@param what}
+   */
+  public static @Nullable ClassLoader compile(
+    @NotNull QPath module, @NotNull String code, @NotNull ClassLoader parent,
+    @NotNull Reporter reporter, @NotNull String what
+  ) {
+    var classpath = MutableList.<String>create();
+    try {
+      if (parent instanceof URLClassLoader urls) for (var url : urls.getURLs())
+        classpath.append(Path.of(url.toURI()).toString());
+    } catch (URISyntaxException e) {
+      reporter.reportString(what + ": " + e.getMessage(), Problem.Severity.WARN);
+      return null;
+    }
+    classpath.append(CompilerUtil.selfClassPath());
+
+    var relativePath = NameSerializer.getReference(module, null, NameSerializer.NameType.ClassPath) + ".java";
+    var source = new SimpleJavaFileObject(URI.create("string:///" + relativePath), JavaFileObject.Kind.SOURCE) {
+      @Override public CharSequence getCharContent(boolean ignoreEncodingErrors) { return code; }
+    };
+    var loader = new MemoryClassLoader(parent);
+    var compiler = ToolProvider.getSystemJavaCompiler();
+    var diagnostics = new DiagnosticCollector<JavaFileObject>();
+    var fileManager = new MemoryFileManager(compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8), loader);
+    var options = List.of("--class-path", classpath.joinToString(File.pathSeparator),
+      "--enable-preview", "--release", "21");
+    if (compiler.getTask(null, fileManager, diagnostics, options, null, List.of(source)).call()) return loader;
+    var error = diagnostics.getDiagnostics().stream()
+      .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+      .findFirst();
+    reporter.reportString(what + error.map(d -> ": " + d.getMessage(null)).orElse(""), Problem.Severity.WARN);
+    return null;
+  }
+
+  /** Keeps the class files in a {@link MemoryClassLoader} */
+  private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final @NotNull MemoryClassLoader loader;
+
+    MemoryFileManager(@NotNull StandardJavaFileManager fileManager, @NotNull MemoryClassLoader loader) {
+      super(fileManager);
+      this.loader = loader;
+    }
+
+    @Override public JavaFileObject getJavaFileForOutput(
+      Location location, String className, JavaFileObject.Kind kind, FileObject sibling
+    ) {
+      var uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+      return new SimpleJavaFileObject(uri, kind) {
+        @Override public OutputStream openOutputStream() {
+          var output = new ByteArrayOutputStream();
+          loader.classes.put(className, output);
+          return output;
+        }
+      };
+    }
+  }
+
+  private static final class MemoryClassLoader extends ClassLoader {
+    private final @NotNull MutableMap<String, ByteArrayOutputStream> classes = MutableMap.create();
+
+    MemoryClassLoader(@NotNull ClassLoader parent) { super(parent); }
+
+    @Override protected Class<?> findClass(String name) throws ClassNotFoundException {
+      var output = classes.getOrNull(name);
+      if (output == null) throw new ClassNotFoundException(name);
+      var bytes = output.toByteArray();
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
@@ -2,6 +2,7 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.test;
 
+import com.google.gson.JsonParser;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableSet;
 import org.aya.cli.library.LibraryCompiler;
@@ -18,6 +19,7 @@ import org.aya.ide.LspPrimFactory;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.primitive.PrimFactory;
 import org.aya.util.FileUtil;
+import org.aya.util.Profiler;
 import org.aya.util.reporter.ThrowingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
@@ -29,10 +31,11 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * LibraryTest testing the compilation of a library and its dependencies
@@ -97,6 +100,39 @@ public class LibraryTest {
     data.assertDelegate();
   }
 
+  @Test public void testProfile() throws IOException {
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(DIR));
+    var profiler = Profiler.start();
+    int exit;
+    try {
+      exit = compile(new PrimFactory(), CompilerAdvisor.inMemory(), owner);
+    } finally {
+      // stop even if the compilation throws, or the other tests would be profiled
+      profiler.stop();
+    }
+    assertEquals(0, exit);
+    assertFalse(Profiler.isEnabled());
+    var events = profiler.stop();
+    assertTrue(events.anyMatch(e -> e.phase().equals("tyck") && e.name() != null), "no per-declaration spans");
+    var trace = Files.createTempFile("aya-profile", ".json");
+    try {
+      Profiler.writeChromeTrace(events, trace);
+      var json = JsonParser.parseString(Files.readString(trace)).getAsJsonObject().getAsJsonArray("traceEvents");
+      assertEquals(events.size(), json.size());
+      var phases = MutableSet.<String>create();
+      for (var element : json) {
+        var event = element.getAsJsonObject();
+        assertEquals("X", event.get("ph").getAsString());
+        assertTrue(event.get("dur").getAsLong() >= 0);
+        phases.add(event.get("cat").getAsString());
+      }
+      for (var phase : ImmutableSeq.of("parse", "resolve", "tyck")) assertTrue(phases.contains(phase), phase);
+    } finally {
+      Files.deleteIfExists(trace);
+    }
+    assertTrue(Profiler.summary(events, 5).startsWith("phase"));
+  }
+
   private static final class TestAdvisor extends InMemoryCompilerAdvisor {
     public void clearPrimitiveAya() {
       coreTimestamp.replaceAll((path, time) ->
@@ -0,0 +1,35 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.test.cli;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.producer.ImportScanner;
+import org.aya.syntax.ref.ModulePath;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ImportScannerTest {
+  @Test public void imports() {
+    var code = """
+      import arith::nat::base
+      public open import data::list as L
+      // import commented
+      /* import commented::block */
+      module inner {
+        open import relation::binary::path using (=)
+      }
+      def import_ => import_
+      """;
+    assertEquals(ImmutableSeq.of(
+      ModulePath.of("arith", "nat", "base"),
+      ModulePath.of("data", "list"),
+      ModulePath.of("relation", "binary", "path")
+    ), ImportScanner.scan(code));
+  }
+
+  @Test public void malformed() {
+    assertNull(ImportScanner.scan("import (x)"));
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.test.cli;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.cli.interactive.PreludeSnapshot;
+import org.aya.cli.interactive.ReplCompiler;
+import org.aya.primitive.PrimFactory;
+import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
+import org.aya.syntax.ref.DefVar;
+import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Problem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreludeSnapshotTest {
+  private static @NotNull Path modulePath(@NotNull Path dir, @NotNull String prelude) throws IOException {
+    var modulePath = Files.createDirectories(dir.resolve("lib"));
+    Files.writeString(modulePath.resolve("prelude.aya"), prelude);
+    return modulePath;
+  }
+
+  private static final @NotNull String PRELUDE = """
+    open inductive Nat | zero | suc Nat
+    def two : Nat => suc (suc zero)
+    """;
+
+  /** @return the variable {@code two} in a new session */
+  private static @Nullable AnyVar session(@NotNull Path modulePath, @NotNull Path snapshotRoot, @NotNull BufferReporter reporter) {
+    var compiler = new ReplCompiler(ImmutableSeq.of(modulePath), reporter, null);
+    compiler.preludeSnapshot = true;
+    compiler.preludeSnapshotRoot = snapshotRoot;
+    compiler.loadPreludeIfPossible();
+    return compiler.parseToAnyVar("two");
+  }
+
+  @Test public void secondSession(@TempDir Path dir) throws IOException {
+    var modulePath = modulePath(dir, PRELUDE);
+    var snapshotRoot = dir.resolve("snapshot");
+    var reporter = new BufferReporter();
+    // the first session checks the sources and writes the snapshot
+    assertInstanceOf(DefVar.class, session(modulePath, snapshotRoot, reporter));
+    var snapshot = PreludeSnapshot.find(snapshotRoot, ImmutableSeq.of(modulePath));
+    assertNotNull(snapshot);
+    assertTrue(Files.isDirectory(snapshot.buildRoot()));
+    assertTrue(Files.exists(snapshot.lockFile()));
+    // the second one loads the compiled cores
+    assertInstanceOf(CompiledVar.class, session(modulePath, snapshotRoot, reporter));
+    assertTrue(reporter.problems().noneMatch(p -> p.level() == Problem.Severity.ERROR));
+  }
+
+  @Test public void distinctModulePaths(@TempDir Path dir) throws IOException {
+    var first = PreludeSnapshot.find(dir, ImmutableSeq.of(modulePath(dir.resolve("a"), PRELUDE)));
+    var second = PreludeSnapshot.find(dir, ImmutableSeq.of(modulePath(dir.resolve("b"), PRELUDE)));
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNotEquals(first.buildRoot(), second.buildRoot());
+  }
+
+  @Test public void compileFailure(@TempDir Path dir) throws IOException {
+    var modulePath = modulePath(dir, PRELUDE + "def bad : Nat => two two\n");
+    var snapshot = PreludeSnapshot.find(dir.resolve("snapshot"), ImmutableSeq.of(modulePath));
+    assertNotNull(snapshot);
+    var reporter = new BufferReporter();
+    assertNull(snapshot.load(new PrimFactory(), reporter));
+    // the problems are reported when the prelude is checked from the sources
+    assertEquals(1, reporter.problems().size());
+    assertEquals(Problem.Severity.WARN, reporter.problems().getFirst().level());
+  }
+
+  @Test public void unrelatedModule(@TempDir Path dir) throws IOException {
+    var modulePath = modulePath(dir, "open import Data\n" + PRELUDE);
+    Files.writeString(modulePath.resolve("Data.aya"), "open inductive Unit | unit\n");
+    Files.writeString(modulePath.resolve("Broken.aya"), "def broken : Unit => unit unit\n");
+    var snapshotRoot = dir.resolve("snapshot");
+    var reporter = new BufferReporter();
+    assertInstanceOf(DefVar.class, session(modulePath, snapshotRoot, reporter));
+    assertInstanceOf(CompiledVar.class, session(modulePath, snapshotRoot, reporter));
+    assertTrue(reporter.problems().allMatch(p -> p.level() == Problem.Severity.INFO));
+  }
+
+  @Test public void unwritableSnapshot(@TempDir Path dir) throws IOException {
+    var modulePath = modulePath(dir, PRELUDE);
+    // the snapshot cannot be created under a file, so the prelude is checked from the sources
+    var snapshotRoot = Files.writeString(dir.resolve("snapshot"), "");
+    var reporter = new BufferReporter();
+    assertInstanceOf(DefVar.class, session(modulePath, snapshotRoot, reporter));
+    assertTrue(reporter.problems().anyMatch(p -> p.level() == Problem.Severity.WARN));
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.test.cli;
+
+import kala.collection.mutable.MutableList;
+import org.aya.cli.single.ProgramRunner;
+import org.aya.test.LibraryTest;
+import org.aya.test.TestRunner;
+import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Problem;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramRunnerTest {
+  private final @NotNull BufferReporter reporter = new BufferReporter();
+  private final @NotNull MutableList<String> output = MutableList.create();
+
+  private @NotNull ProgramRunner runner(boolean erased) {
+    return new ProgramRunner(reporter, TestRunner.flags(), erased, output::append);
+  }
+
+  private int warnings() { return reporter.problemSize(Problem.Severity.WARN); }
+
+  @Test public void library() throws IOException {
+    assertEquals(0, runner(true).runLibrary(LibraryTest.DIR, "Run::main"));
+    assertEquals(0, warnings());
+    assertEquals(MutableList.of("[2, 3, 4]"), output);
+    assertEquals(0, runner(false).runLibrary(LibraryTest.DIR, "Run::main"));
+    assertEquals(2, output.size());
+  }
+
+  @Test public void libraryFallback() throws IOException {
+    assertEquals(0, runner(true).runLibrary(LibraryTest.DIR, "Run::onPath"));
+    assertEquals(1, warnings());
+    assertEquals(MutableList.of("2"), output);
+  }
+
+  @Test public void libraryMissing() throws IOException {
+    assertEquals(1, runner(true).runLibrary(LibraryTest.DIR, "Run::nope"));
+    assertEquals(1, runner(true).runLibrary(LibraryTest.DIR, "main"));
+  }
+
+  @Test public void file(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("Main.aya");
+    Files.writeString(file, """
+      open inductive Nat | zero | suc Nat
+      open inductive List (A : Type) | nil | cons A (List A)
+      open inductive Pair (A B : Type) | pair A B
+      def count (n acc : Nat) : Nat
+      | zero, acc => acc
+      | suc n, acc => count n (suc acc)
+      def length {A : Type} (xs : List A) : Nat
+      | nil => zero
+      | cons _ xs => suc (length xs)
+      def nums : List Nat => [1, 2, 3]
+      def main : Pair Nat Nat => pair (count 1000000 0) (length nums)
+      """);
+    assertEquals(0, runner(true).runFile(file, "main"));
+    assertEquals(0, warnings());
+    assertEquals(MutableList.of("pair 1000000 3"), output);
+  }
+}
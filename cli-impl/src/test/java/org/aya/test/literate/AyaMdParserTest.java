@@ -8,6 +8,7 @@ import org.aya.cli.single.CompilerFlags;
 import org.aya.cli.single.SingleAyaFile;
 import org.aya.cli.single.SingleFileCompiler;
 import org.aya.generic.Constants;
+import org.aya.normalize.error.NormalizeStatistics;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.primitive.PrimFactory;
 import org.aya.producer.AyaParserImpl;
@@ -22,6 +23,7 @@ import org.aya.util.reporter.IgnoringReporter;
 import org.aya.util.reporter.ThrowingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -126,9 +128,57 @@ public class AyaMdParserTest {
     assertFalse(actualTexButKa.isEmpty());
   }
 
+  @Test public void testBudget() {
+    var code = """
+      ```aya
+      open inductive Nat | zero | suc Nat
+      open inductive Tree | leaf | node Tree Tree
+      def grow (n : Nat) : Tree
+      | zero => leaf
+      | suc n => node (grow n) (grow n)
+      ```
+
+      `grow 30`{mode=full, steps=100}
+      `grow 30`{mode=full, timeout=1}
+      `grow 30`{mode=full, steps=-5, timeout=1}
+      `grow 3`{mode=full, steps=100000}
+      """;
+    var mdFile = new SingleAyaFile.CodeAyaFile(new SourceFile("budget.aya.md", Path.of("budget.aya.md"), code));
+    var reporter = new BufferReporter();
+    var literate = SingleAyaFile.createLiterateFile(mdFile, reporter);
+    var stmts = literate.parseMe(new AyaParserImpl(reporter));
+    var ctx = new EmptyContext(reporter, Path.of(".")).derive("budget");
+    var loader = new DumbModuleLoader(ctx);
+    var info = loader.resolveModule(new PrimFactory(), ctx, stmts, loader);
+    loader.tyckModule(info, null);
+    literate.tyckAdditional(info);
+
+    var stats = reporter.problems().view()
+      .filterIsInstance(NormalizeStatistics.class)
+      .toImmutableSeq();
+    // the last one is within the budget, so it reports nothing,
+    // and the malformed steps does not drop the timeout next to it
+    assertEquals(3, stats.size());
+    assertTrue(stats.allMatch(NormalizeStatistics::exhausted));
+    assertEquals(101, stats.getFirst().stats().steps());
+    assertTrue(stats.getLast().stats().steps() > 0);
+
+    var bySteps = describe(stats.getFirst());
+    assertTrue(bySteps.contains("100 steps"), bySteps);
+    assertTrue(bySteps.contains("grow"), bySteps);
+    var byTime = describe(stats.getLast());
+    assertTrue(byTime.contains("1 milliseconds"), byTime);
+    assertTrue(describe(stats.get(1)).contains("1 milliseconds"));
+  }
+
+  private static @NotNull String describe(@NotNull NormalizeStatistics problem) {
+    return problem.describe(AyaPrettierOptions.pretty()).debugRender();
+  }
+
   private @NotNull String trim(@NotNull String input) {
     return input.replaceAll("id=\"[^\"]+\"", "id=\"\"")
       .replaceAll("href=\"[^\"]+\"", "href=\"\"")
-      .replaceAll("data-tooltip-text=\"[^\"]+\"", "data-tooltip-text=\"\"");
+      .replaceAll("data-tooltip-text=\"[^\"]+\"", "data-tooltip-text=\"\"")
+      .replaceAll("tooltips: \\[[^\\]]*\\]", "tooltips: []");
   }
 }
@@ -14,6 +14,7 @@ dependencies {
   api(project(":ide"))
   api(libs.aya.lsp.protocol)
   implementation(project(":cli-console"))
+  implementation(project(":producer"))
   implementation(libs.picocli.runtime)
   annotationProcessor(libs.picocli.codegen)
   testImplementation(libs.junit.jupiter)
@@ -2,6 +2,7 @@ module aya.ide.lsp {
   requires transitive aya.cli.console;
   requires aya.base;
   requires aya.ide;
+  requires aya.producer;
 
   requires static org.jetbrains.annotations;
   requires com.google.gson;
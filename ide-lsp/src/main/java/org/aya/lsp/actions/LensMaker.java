@@ -8,6 +8,7 @@ import kala.collection.SeqView;
 import kala.collection.mutable.MutableList;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.Resolver;
 import org.aya.ide.action.FindReferences;
 import org.aya.ide.syntax.SyntaxDeclAction;
@@ -22,11 +23,15 @@ import java.util.Collections;
 import java.util.List;
 
 public record LensMaker(
+  @NotNull ReferenceIndex index,
   @NotNull SeqView<LibraryOwner> libraries,
   @NotNull MutableList<CodeLens> codeLens
 ) implements SyntaxDeclAction {
-  public static @NotNull List<CodeLens> invoke(@NotNull LibrarySource source, @NotNull SeqView<LibraryOwner> libraries) {
-    var maker = new LensMaker(libraries, MutableList.create());
+  public static @NotNull List<CodeLens> invoke(
+    @NotNull LibrarySource source, @NotNull ReferenceIndex index,
+    @NotNull SeqView<LibraryOwner> libraries
+  ) {
+    var maker = new LensMaker(index, libraries, MutableList.create());
     var program = source.program().get();
     if (program != null) program.forEach(maker);
     return maker.codeLens.asJava();
@@ -40,7 +45,7 @@ public record LensMaker(
   @Override public void accept(@NotNull Stmt stmt) {
     if (stmt instanceof Decl maybe) {
       Resolver.withChildren(maybe).forEach(dv -> {
-        var refs = FindReferences.findRefsOutsideDefs(SeqView.of(dv), libraries).toImmutableSeq();
+        var refs = FindReferences.findRefsOutsideDefs(SeqView.of(dv), index, libraries).toImmutableSeq();
         if (!refs.isEmpty()) {
           var sourcePos = dv.concrete.sourcePos();
           var uri = LspRange.toFileUri(sourcePos);
@@ -2,11 +2,10 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.lsp.actions;
 
-import kala.collection.SeqView;
 import kala.collection.immutable.ImmutableSeq;
-import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.literate.HighlightInfo;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.action.ProjectSymbol;
 import org.aya.ide.action.ProjectSymbol.Symbol;
 import org.aya.lsp.utils.LspRange;
@@ -23,8 +22,8 @@ public interface SymbolMaker {
     return ProjectSymbol.invoke(options, source).map(SymbolMaker::documentSymbol);
   }
 
-  static @NotNull ImmutableSeq<WorkspaceSymbol> workspaceSymbols(@NotNull PrettierOptions options, @NotNull SeqView<LibraryOwner> libraries) {
-    return ProjectSymbol.invoke(options, libraries).mapNotNull(SymbolMaker::workspaceSymbol);
+  static @NotNull ImmutableSeq<WorkspaceSymbol> workspaceSymbols(@NotNull PrettierOptions options, @NotNull ReferenceIndex index) {
+    return ProjectSymbol.invoke(options, index).mapNotNull(SymbolMaker::workspaceSymbol);
   }
 
   private static int kindOf(@NotNull HighlightInfo.DefKind kind) {
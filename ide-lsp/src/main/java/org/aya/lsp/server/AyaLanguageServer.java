@@ -26,6 +26,7 @@ import org.aya.cli.single.CompilerFlags;
 import org.aya.cli.utils.InlineHintProblem;
 import org.aya.generic.Constants;
 import org.aya.ide.LspPrimFactory;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.action.*;
 import org.aya.lsp.actions.LensMaker;
 import org.aya.lsp.actions.SemanticHighlight;
@@ -40,10 +41,13 @@ import org.aya.lsp.utils.LspRange;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.pretty.doc.Doc;
 import org.aya.pretty.printer.PrinterConfig;
+import org.aya.producer.IncrementalAyaParser;
 import org.aya.syntax.AyaFiles;
+import org.aya.syntax.GenericAyaParser;
 import org.aya.util.FileUtil;
 import org.aya.util.prettier.PrettierOptions;
 import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Reporter;
 import org.javacs.lsp.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -63,13 +67,18 @@ import java.util.stream.Stream;
 public class AyaLanguageServer implements LanguageServer {
   private static final @NotNull CompilerFlags FLAGS = new CompilerFlags(CompilerFlags.Message.EMOJI, false, false, null, SeqView.empty(), null);
 
-  private final BufferReporter reporter = new BufferReporter();
   private final @NotNull MutableList<LibraryOwner> libraries = MutableList.create();
   /**
    * When working with LSP, we need to track all previously created Primitives.
    * This is shared per library.
    */
   protected final @NotNull MutableMap<LibraryConfig, LspPrimFactory> primFactories = MutableMap.create();
+  /** Usages of definitions, updated after each compilation */
+  private final @NotNull ReferenceIndex referenceIndex;
+  /** Modules checked from source in the current compilation, reported by {@link CallbackAdvisor} */
+  private final @NotNull MutableList<LibrarySource> rechecked = MutableList.create();
+  /** Parse trees of opened files, so that only the edited statements are reparsed */
+  private final @NotNull IncrementalAyaParser.Cache parseCache = new IncrementalAyaParser.Cache();
   private final @NotNull CompilerAdvisor advisor;
   private final @NotNull AyaLanguageClient client;
   private final @NotNull PrettierOptions options = AyaPrettierOptions.pretty();
@@ -84,10 +93,13 @@ public class AyaLanguageServer implements LanguageServer {
 
   public AyaLanguageServer(@NotNull CompilerAdvisor advisor, @NotNull AyaLanguageClient client) {
     this.advisor = new CallbackAdvisor(this, advisor);
+    this.referenceIndex = new ReferenceIndex(advisor.savesToDisk());
     this.client = client;
     Log.init(this.client);
   }
 
+  public @NotNull ReferenceIndex referenceIndex() { return referenceIndex; }
+
   public @NotNull SeqView<LibraryOwner> libraries() {
     return libraries.view();
   }
@@ -226,8 +238,9 @@ public class AyaLanguageServer implements LanguageServer {
 
   public @NotNull ImmutableSeq<HighlightResult> loadLibrary(@NotNull LibraryOwner owner) {
     Log.i("Loading library %s", owner.underlyingLibrary().name());
-    // start compiling
-    reporter.clear();
+    // start compiling, with a reporter of this compilation only
+    var reporter = new BufferReporter();
+    rechecked.clear();
     var primFactory = primFactory(owner);
     try {
       LibraryCompiler.newCompiler(primFactory, reporter, FLAGS, advisor, owner).start();
@@ -236,6 +249,7 @@ public class AyaLanguageServer implements LanguageServer {
       e.printStackTrace(new PrintWriter(s));
       Log.e("IOException occurred when running the compiler. Stack trace:\n%s", s.toString());
     }
+    referenceIndex.update(owner, rechecked.toImmutableSeq());
     publishProblems(reporter, options);
     return SemanticHighlight.invoke(owner);
   }
@@ -281,6 +295,7 @@ public class AyaLanguageServer implements LanguageServer {
           var src = find(change.uri);
           if (src == null) return;
           Log.d("Deleted file: %s, removed from owner: %s", src.underlyingFile(), src.owner().underlyingLibrary().name());
+          referenceIndex.remove(src);
           switch (src.owner()) {
             case MutableLibraryOwner owner -> owner.removeLibrarySource(src);
             case WsLibrary owner -> libraries.removeIf(o -> o == owner);
@@ -329,7 +344,7 @@ public class AyaLanguageServer implements LanguageServer {
     var source = find(params.textDocument.uri);
     if (source == null) return Optional.empty();
     return Optional.of(FindReferences
-      .findRefs(source, libraries.view(), LspRange.pos(params.position))
+      .findRefs(source, referenceIndex, libraries.view(), LspRange.pos(params.position))
       .map(LspRange::toLoc)
       .collect(Collectors.toList()));
   }
@@ -337,7 +352,7 @@ public class AyaLanguageServer implements LanguageServer {
   @Override public WorkspaceEdit rename(RenameParams params) {
     var source = find(params.textDocument.uri);
     if (source == null) return null;
-    var renames = Rename.rename(source, params.newName, libraries.view(), LspRange.pos(params.position))
+    var renames = Rename.rename(source, params.newName, referenceIndex, libraries.view(), LspRange.pos(params.position))
       .view()
       .flatMap(t -> t.sourcePos().file().underlying().map(f -> Tuple.of(f.toUri(), t)))
       .collect(Collectors.groupingBy(
@@ -365,7 +380,7 @@ public class AyaLanguageServer implements LanguageServer {
     var source = find(params.textDocument.uri);
     if (source == null) return Collections.emptyList();
     var currentFile = Option.ofNullable(source.underlyingFile());
-    return FindReferences.findOccurrences(source, SeqView.of(source.owner()), LspRange.pos(params.position))
+    return FindReferences.findOccurrences(source, referenceIndex, SeqView.of(source.owner()), LspRange.pos(params.position))
       // only highlight references in the current file
       .filter(pos -> pos.file().underlying().equals(currentFile))
       .map(pos -> new DocumentHighlight(LspRange.toRange(pos), DocumentHighlightKind.Read))
@@ -375,7 +390,7 @@ public class AyaLanguageServer implements LanguageServer {
   @Override public List<CodeLens> codeLens(CodeLensParams params) {
     var source = find(params.textDocument.uri);
     if (source == null) return Collections.emptyList();
-    return LensMaker.invoke(source, libraries.view());
+    return LensMaker.invoke(source, referenceIndex, libraries.view());
   }
 
   @Override public CodeLens resolveCodeLens(CodeLens codeLens) {
@@ -389,7 +404,7 @@ public class AyaLanguageServer implements LanguageServer {
   }
 
   @Override public List<? extends GenericWorkspaceSymbol> workspaceSymbols(WorkspaceSymbolParams params) {
-    return SymbolMaker.workspaceSymbols(options, libraries.view()).asJava();
+    return SymbolMaker.workspaceSymbols(options, referenceIndex).asJava();
   }
 
   @Override
@@ -480,6 +495,11 @@ public class AyaLanguageServer implements LanguageServer {
     public void notifyIncrementalJob(@NotNull ImmutableSeq<LibrarySource> modified, @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> affected) {
       super.notifyIncrementalJob(modified, affected);
       service.clearProblems(affected);
+      affected.forEach(service.rechecked::appendAll);
+    }
+
+    @Override public @NotNull GenericAyaParser createParser(@NotNull Reporter reporter) {
+      return new IncrementalAyaParser(service.parseCache, reporter);
     }
   }
 }
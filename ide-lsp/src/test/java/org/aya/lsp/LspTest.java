@@ -3,25 +3,46 @@
 package org.aya.lsp;
 
 import com.google.gson.Gson;
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import kala.tuple.Tuple;
+import kala.value.MutableValue;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CompilerAdvisor;
+import org.aya.cli.library.json.LibraryConfigData;
+import org.aya.cli.library.source.DiskLibraryOwner;
 import org.aya.cli.render.RenderOptions;
+import org.aya.cli.single.CompilerFlags;
 import org.aya.generic.Constants;
+import org.aya.ide.ReferenceIndex;
 import org.aya.lsp.models.ServerOptions;
 import org.aya.lsp.models.ServerRenderOptions;
 import org.aya.lsp.tester.LspTestClient;
 import org.aya.lsp.tester.LspTestCompilerAdvisor;
+import org.aya.primitive.PrimFactory;
 import org.aya.syntax.concrete.Pattern;
+import org.aya.syntax.concrete.stmt.decl.DataDecl;
 import org.aya.syntax.concrete.stmt.decl.FnBody;
 import org.aya.syntax.concrete.stmt.decl.FnDecl;
+import org.aya.syntax.core.def.DataDef;
+import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.core.term.MetaPatTerm;
 import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.ref.QName;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.BufferReporter;
 import org.javacs.lsp.InitializeParams;
 import org.javacs.lsp.Position;
 import org.javacs.lsp.TextDocumentIdentifier;
 import org.javacs.lsp.TextDocumentPositionParams;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.aya.lsp.tester.TestCommand.compile;
@@ -29,6 +50,7 @@ import static org.aya.lsp.tester.TestCommand.mutate;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LspTest {
+  private static final @NotNull CompilerFlags FLAGS = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, SeqView.empty(), null);
   public static final @NotNull Path TEST_LIB = Path.of("src", "test", "resources", "lsp-test-lib");
 
   public @NotNull LspTestClient launch(@NotNull Path libraryRoot) {
@@ -81,6 +103,73 @@ public class LspTest {
     );
   }
 
+  @Test public void testReuseUnchangedDecls() {
+    var core = MutableValue.<DataDef>create();
+    launch(TEST_LIB).execute(
+      compile((a, _) -> core.set(natCore(a))),
+      mutate("Nat::Core"),
+      compile((a, e) -> {
+        assertRemake(a, e, "Nat::Core", "VecCore", "HelloWorld");
+        assertSame(core.get(), natCore(a));
+      })
+    );
+  }
+
+  /** Copies the sources of {@link #TEST_LIB} to {@param dir}, so they can be modified */
+  private static void copyTestLib(@NotNull Path dir) throws IOException {
+    try (var files = Files.walk(TEST_LIB)) {
+      for (var file : files.filter(Files::isRegularFile).toList()) {
+        var relative = TEST_LIB.relativize(file);
+        if (relative.startsWith("build")) continue;
+        Files.createDirectories(dir.resolve(relative).getParent());
+        Files.copy(file, dir.resolve(relative));
+      }
+    }
+  }
+
+  @Test public void testRecheckEditedBody(@TempDir Path dir) throws IOException {
+    copyTestLib(dir);
+    var hello = dir.resolve("src/HelloWorld.aya");
+    Files.writeString(hello, Files.readString(hello) + "def hello4 : Nat => hello2\n");
+    var cores = MutableMap.<String, TyckDef>create();
+    launch(dir).execute(
+      compile((a, _) -> helloCores(a).forEach(cores::put)),
+      mutate("HelloWorld", (_, _) -> {
+        try {
+          // also moves hello3 and hello4 forward by one character
+          Files.writeString(hello, Files.readString(hello).replace("514", "5140"));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }),
+      compile((a, e) -> {
+        assertRemake(a, e, "HelloWorld");
+        var now = helloCores(a);
+        assertSame(cores.get("hello1"), now.get("hello1"));
+        assertSame(cores.get("hello3"), now.get("hello3"));
+        assertNotSame(cores.get("hello2"), now.get("hello2"));
+        assertNotSame(cores.get("hello4"), now.get("hello4"));
+      })
+    );
+  }
+
+  private static @NotNull ImmutableMap<String, TyckDef> helloCores(@NotNull LspTestCompilerAdvisor advisor) {
+    return ImmutableMap.from(advisor.lastCompiled()
+      .filter(x -> x.moduleName().module().getLast().equals("HelloWorld"))
+      .flatMap(x -> x.program().get())
+      .filterIsInstance(FnDecl.class)
+      .map(x -> Tuple.<String, TyckDef>of(x.ref.name(), x.ref.core)));
+  }
+
+  private static @NotNull DataDef natCore(@NotNull LspTestCompilerAdvisor advisor) {
+    return advisor.lastCompiled()
+      .filter(x -> x.moduleName().module().getLast().equals("Core"))
+      .flatMap(x -> x.program().get())
+      .filterIsInstance(DataDecl.class)
+      .find(x -> x.ref.name().equals("Nat"))
+      .get().ref.core;
+  }
+
   @Test public void colorful() {
     var initParams = new InitializeParams();
     initParams.initializationOptions = new Gson().toJsonTree(new ServerOptions(new ServerRenderOptions(null, null, RenderOptions.OutputTarget.HTML)));
@@ -109,6 +198,69 @@ public class LspTest {
       result1.get().contents.getFirst().value);
   }
 
+  @Test public void testOccurrencesFromIndex() {
+    var client = launch(TEST_LIB);
+    var param = new TextDocumentPositionParams(new TextDocumentIdentifier(
+      TEST_LIB.resolve("src/Nat/Core.aya").toUri()),
+      new Position(0, 16)
+    );
+    // the declaration of `Nat` and its usage in `suc Nat`
+    client.execute(compile((_, _) -> {}));
+    assertEquals(2, client.service.documentHighlight(param).size());
+    // Nat::Core is not rechecked, its usages come from the index
+    client.execute(
+      mutate("HelloWorld"),
+      compile((a, e) -> assertRemake(a, e, "HelloWorld"))
+    );
+    assertEquals(2, client.service.documentHighlight(param).size());
+    // without the index of Nat::Core, only the declaration is left
+    var core = client.service.find(param.textDocument.uri);
+    assertNotNull(core);
+    assertTrue(client.service.referenceIndex().isIndexed(core));
+    client.service.referenceIndex().remove(core);
+    assertEquals(1, client.service.documentHighlight(param).size());
+  }
+
+  @Test public void testIndexRestored(@TempDir Path dir) throws IOException, LibraryConfigData.BadConfig {
+    copyTestLib(dir);
+    // the language server keeps the compiled cores in memory, so it saves no index
+    launch(dir).execute(compile((_, _) -> {}));
+    assertEquals(0, indexFiles(dir));
+
+    var owner = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(dir));
+    LibraryCompiler.newCompiler(new PrimFactory(), new BufferReporter(), FLAGS, CompilerAdvisor.onDisk(), owner).start();
+    var index = new ReferenceIndex(true);
+    index.update(owner, owner.librarySources().toImmutableSeq());
+    assertNotEquals(0, indexFiles(dir));
+    var nat = index.declarations().find(d -> d.name().equals("Nat")).get().ref();
+    assertNotNull(nat);
+    var key = new QName(nat);
+    var usages = index.usagesOf(key).map(SourcePos::tokenStartIndex).toImmutableSeq();
+    assertFalse(usages.isEmpty());
+
+    // after a restart, the modules are not parsed, the index is restored from the disk
+    var restarted = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(dir));
+    var restored = new ReferenceIndex(true);
+    restored.update(restarted, ImmutableSeq.empty());
+    assertEquals(usages, restored.usagesOf(key).map(SourcePos::tokenStartIndex).toImmutableSeq());
+    assertTrue(restored.declarations().allMatch(d -> d.ref() == null));
+
+    // the index of a modified source is rejected
+    var natCore = dir.resolve("src/Nat/Core.aya");
+    Files.writeString(natCore, Files.readString(natCore) + "\n");
+    var modified = DiskLibraryOwner.from(LibraryConfigData.fromLibraryRoot(dir));
+    var outdated = new ReferenceIndex(true);
+    outdated.update(modified, ImmutableSeq.empty());
+    var source = modified.librarySources().find(src -> src.underlyingFile().endsWith(Path.of("Nat", "Core.aya"))).get();
+    assertFalse(outdated.isIndexed(source));
+  }
+
+  private static long indexFiles(@NotNull Path dir) throws IOException {
+    try (var files = Files.walk(dir)) {
+      return files.filter(f -> f.getFileName().toString().endsWith(ReferenceIndex.AYAREF_POSTFIX)).count();
+    }
+  }
+
   private void logTime(long time) {
     System.out.println("Remake changed modules took: " + time + "ms");
   }
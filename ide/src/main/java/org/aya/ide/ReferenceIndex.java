@@ -0,0 +1,249 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.ide;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.value.LazyValue;
+import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.literate.HighlightInfo;
+import org.aya.cli.literate.SyntaxHighlight;
+import org.aya.generic.Constants;
+import org.aya.ide.syntax.SyntaxDeclAction;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.syntax.concrete.stmt.StmtVisitor;
+import org.aya.syntax.concrete.stmt.decl.Decl;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
+import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.QName;
+import org.aya.util.FileUtil;
+import org.aya.util.error.SourceFile;
+import org.aya.util.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An inverted index from definitions to their use sites, maintained per module.
+ * A module is re-indexed right after it is checked, so that find-references, rename,
+ * code lens and workspace symbol requests never traverse the whole workspace.
+ * <p>
+ * When the compiled cores are saved to the disk, the index of a module is persisted next to
+ * its compiled core. Modules loaded from compiled cores are never resolved in the
+ * concrete syntax, so this is the only way to know their usages after a restart.
+ * A persisted index is used only if the digest of the source still matches.
+ *
+ * @see org.aya.ide.action.FindReferences
+ */
+public final class ReferenceIndex {
+  public static final @NotNull String AYAREF_POSTFIX = ".ayaref";
+
+  /** Indexed modules, keyed by {@link LibrarySource#underlyingFile()} */
+  private final @NotNull MutableMap<Path, ModuleIndex> modules = MutableMap.create();
+  /** The inverted part: which modules refer to a definition, a definition referred by nothing is not kept */
+  private final @NotNull MutableMap<QName, MutableList<Path>> referredBy = MutableMap.create();
+  /** Whether the indexes are saved to the disk, only when the compiled cores are */
+  private final boolean persistent;
+
+  /** @param persistent see {@link org.aya.cli.library.incremental.CompilerAdvisor#savesToDisk()} */
+  public ReferenceIndex(boolean persistent) { this.persistent = persistent; }
+
+  /**
+   * @param usages       definition to use sites in this module
+   * @param declarations top-level declarations in this module
+   */
+  public record ModuleIndex(
+    @NotNull ImmutableMap<QName, ImmutableSeq<SourcePos>> usages,
+    @NotNull ImmutableSeq<Declaration> declarations
+  ) { }
+
+  /** @param ref null if the declaration is restored from disk */
+  public record Declaration(
+    @NotNull String name,
+    @NotNull HighlightInfo.DefKind kind,
+    @NotNull SourcePos nameLocation,
+    @NotNull SourcePos entireLocation,
+    @Nullable DefVar<?, ?> ref
+  ) { }
+
+  /** @return the key of a definition, or null if the variable is not indexed. */
+  public static @Nullable QName keyOf(@NotNull AnyVar var) {
+    return switch (var) {
+      case DefVar<?, ?> defVar when defVar.module != null -> new QName(defVar);
+      case CompiledVar compiledVar -> compiledVar.core().qualifiedName();
+      default -> null;
+    };
+  }
+
+  public @NotNull SeqView<SourcePos> usagesOf(@NotNull QName target) {
+    var files = referredBy.getOrNull(target);
+    if (files == null) return SeqView.empty();
+    return files.view()
+      .mapNotNull(modules::getOrNull)
+      .flatMap(mod -> mod.usages.getOrDefault(target, ImmutableSeq.empty()));
+  }
+
+  public @NotNull SeqView<Declaration> declarations() {
+    return modules.valuesView().flatMap(ModuleIndex::declarations);
+  }
+
+  public boolean isIndexed(@NotNull LibrarySource source) {
+    return modules.containsKey(source.underlyingFile());
+  }
+
+  /**
+   * Re-index the modules that were just checked, and index the rest of the
+   * workspace (for example, modules loaded from compiled cores) if they were never indexed.
+   *
+   * @param rechecked modules that were resolved and checked from source
+   */
+  public void update(@NotNull LibraryOwner owner, @NotNull ImmutableSeq<LibrarySource> rechecked) {
+    rechecked.forEach(src -> {
+      var index = index(src);
+      put(src, index);
+      if (index != null && persistent) save(src, index);
+    });
+    LibraryOwner.collectDependencies(owner).forEach(lib -> lib.librarySources()
+      .filterNot(this::isIndexed)
+      .forEach(src -> {
+        var restored = restore(src);
+        put(src, restored != null ? restored : index(src));
+      }));
+  }
+
+  public void remove(@NotNull LibrarySource source) {
+    put(source, null);
+  }
+
+  /** @return the index of the concrete syntax, null if the module is not parsed. */
+  private static @Nullable ModuleIndex index(@NotNull LibrarySource source) {
+    var program = source.program().get();
+    if (program == null) return null;
+    var usages = MutableMap.<QName, MutableList<SourcePos>>create();
+    var declarations = MutableList.<Declaration>create();
+    program.forEach(new UsageCollector(usages));
+    program.forEach(new DeclCollector(declarations));
+    return new ModuleIndex(
+      ImmutableMap.from(usages.view().mapValues((_, v) -> v.toImmutableSeq())),
+      declarations.toImmutableSeq());
+  }
+
+  private void put(@NotNull LibrarySource source, @Nullable ModuleIndex index) {
+    var file = source.underlyingFile();
+    var old = modules.remove(file);
+    if (old.isDefined()) old.get().usages.forEach((name, _) -> {
+      var files = referredBy.getOrNull(name);
+      if (files == null) return;
+      files.removeIf(f -> f.equals(file));
+      if (files.isEmpty()) referredBy.remove(name);
+    });
+    if (index == null) return;
+    modules.put(file, index);
+    index.usages.forEach((name, _) -> referredBy.getOrPut(name, MutableList::create).append(file));
+  }
+
+  private static @NotNull Path indexPath(@NotNull LibrarySource source) {
+    var core = source.compiledCorePath();
+    var name = core.getFileName().toString();
+    return core.resolveSibling(name.substring(0, name.length() - Constants.AYAC_POSTFIX.length()) + AYAREF_POSTFIX);
+  }
+
+  private static void save(@NotNull LibrarySource source, @NotNull ModuleIndex index) {
+    if (!Files.isDirectory(source.owner().outDir())) return;
+    try {
+      var code = source.originalFile().sourceCode();
+      var usages = MutableList.<SerUsage>create();
+      index.usages.forEach((name, poses) -> poses.forEach(pos -> usages.append(new SerUsage(name, SerPos.of(pos)))));
+      var ser = new SerModule(FileUtil.digest(code), usages.toImmutableSeq(), index.declarations.map(SerDecl::of));
+      try (var out = FileUtil.oos(indexPath(source))) {
+        out.writeObject(ser);
+      }
+    } catch (IOException ignored) {
+      // The index is only a cache
+    }
+  }
+
+  /** @return null if there is no persisted index, or it is out of date */
+  private static @Nullable ModuleIndex restore(@NotNull LibrarySource source) {
+    var path = indexPath(source);
+    if (!Files.exists(path)) return null;
+    try (var in = FileUtil.ois(path)) {
+      var ser = (SerModule) in.readObject();
+      var file = source.originalFile();
+      if (!ser.sourceDigest.equals(FileUtil.digest(file.sourceCode()))) return null;
+      var usages = MutableMap.<QName, MutableList<SourcePos>>create();
+      ser.usages.forEach(u -> usages.getOrPut(u.target, MutableList::create).append(u.pos.de(file)));
+      return new ModuleIndex(
+        ImmutableMap.from(usages.view().mapValues((_, v) -> v.toImmutableSeq())),
+        ser.declarations.map(d -> d.de(file)));
+    } catch (IOException | ClassNotFoundException | ClassCastException ignored) {
+      return null;
+    }
+  }
+
+  record UsageCollector(@NotNull MutableMap<QName, MutableList<SourcePos>> usages) implements StmtVisitor {
+    @Override
+    public void visitVarRef(@NotNull SourcePos pos, @NotNull AnyVar var, @NotNull LazyValue<@Nullable Term> type) {
+      var key = keyOf(var);
+      if (key != null) usages.getOrPut(key, MutableList::create).append(pos);
+    }
+  }
+
+  record DeclCollector(@NotNull MutableList<Declaration> declarations) implements SyntaxDeclAction {
+    @Override public void accept(@NotNull Stmt stmt) {
+      if (stmt instanceof Decl decl) {
+        var ref = decl.ref();
+        declarations.append(new Declaration(ref.name(), SyntaxHighlight.kindOf(ref),
+          decl.sourcePos(), decl.entireSourcePos(), ref));
+      }
+      SyntaxDeclAction.super.accept(stmt);
+    }
+  }
+
+  record SerPos(
+    int tokenStartIndex, int tokenEndIndex,
+    int startLine, int startColumn,
+    int endLine, int endColumn
+  ) implements Serializable {
+    static @NotNull SerPos of(@NotNull SourcePos pos) {
+      return new SerPos(pos.tokenStartIndex(), pos.tokenEndIndex(),
+        pos.startLine(), pos.startColumn(), pos.endLine(), pos.endColumn());
+    }
+
+    @NotNull SourcePos de(@NotNull SourceFile file) {
+      return new SourcePos(file, tokenStartIndex, tokenEndIndex, startLine, startColumn, endLine, endColumn);
+    }
+  }
+
+  record SerUsage(@NotNull QName target, @NotNull SerPos pos) implements Serializable { }
+
+  record SerDecl(
+    @NotNull String name, @NotNull HighlightInfo.DefKind kind,
+    @NotNull SerPos nameLocation, @NotNull SerPos entireLocation
+  ) implements Serializable {
+    static @NotNull SerDecl of(@NotNull Declaration decl) {
+      return new SerDecl(decl.name, decl.kind, SerPos.of(decl.nameLocation), SerPos.of(decl.entireLocation));
+    }
+
+    @NotNull Declaration de(@NotNull SourceFile file) {
+      return new Declaration(name, kind, nameLocation.de(file), entireLocation.de(file), null);
+    }
+  }
+
+  /** @param sourceDigest {@link FileUtil#digest} of the source, used to reject indexes of modified sources */
+  record SerModule(
+    @NotNull String sourceDigest,
+    @NotNull ImmutableSeq<SerUsage> usages,
+    @NotNull ImmutableSeq<SerDecl> declarations
+  ) implements Serializable { }
+}
@@ -6,6 +6,7 @@ import kala.collection.SeqView;
 import kala.collection.mutable.MutableList;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.Resolver;
 import org.aya.ide.util.XY;
 import org.aya.syntax.ref.AnyVar;
@@ -14,47 +15,53 @@ import org.aya.util.error.SourcePos;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * References to definitions are answered by the {@link ReferenceIndex},
+ * other variables (local variables, modules, etc.) are found by traversing the programs.
+ */
 public interface FindReferences {
   static @NotNull SeqView<SourcePos> findRefs(
-    @NotNull LibrarySource source,
+    @NotNull LibrarySource source, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries, XY xy
   ) {
     var vars = Resolver.resolveVar(source, xy);
-    return findRefs(vars.map(WithPos::data), libraries);
+    return findRefs(vars.map(WithPos::data), index, libraries);
   }
 
   static @NotNull SeqView<SourcePos> findRefs(
-    @NotNull SeqView<AnyVar> vars,
+    @NotNull SeqView<AnyVar> vars, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries
   ) {
     return vars.flatMap(var -> {
+      var key = ReferenceIndex.keyOf(var);
+      if (key != null) return index.usagesOf(key);
       var resolver = new Resolver.UsageResolver(var, MutableList.create());
       return libraries.flatMap(lib -> resolve(resolver, lib));
     });
   }
 
   static @NotNull SeqView<SourcePos> findRefsOutsideDefs(
-    @NotNull LibrarySource source,
+    @NotNull LibrarySource source, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries, XY xy
   ) {
     var vars = Resolver.resolveVar(source, xy);
-    return findRefsOutsideDefs(vars.map(WithPos::data), libraries);
+    return findRefsOutsideDefs(vars.map(WithPos::data), index, libraries);
   }
 
   static @NotNull SeqView<SourcePos> findRefsOutsideDefs(
-    @NotNull SeqView<AnyVar> vars,
+    @NotNull SeqView<AnyVar> vars, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries
   ) {
     var defPos = vars.filterIsInstance(DefVar.class).map(def -> def.concrete.entireSourcePos());
-    return findRefs(vars, libraries).filter(ref -> defPos.noneMatch(pos -> pos.containsIndex(ref)));
+    return findRefs(vars, index, libraries).filter(ref -> defPos.noneMatch(pos -> pos.containsIndex(ref)));
   }
 
   static @NotNull SeqView<SourcePos> findOccurrences(
-    @NotNull LibrarySource source,
+    @NotNull LibrarySource source, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries, XY xy
   ) {
     var defs = GotoDefinition.findDefs(source, libraries, xy).map(WithPos::data);
-    var refs = FindReferences.findRefs(source, libraries, xy);
+    var refs = FindReferences.findRefs(source, index, libraries, xy);
     return defs.concat(refs);
   }
 
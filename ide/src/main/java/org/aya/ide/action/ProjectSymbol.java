@@ -2,13 +2,12 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.ide.action;
 
-import kala.collection.SeqView;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
-import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.literate.HighlightInfo;
 import org.aya.cli.literate.SyntaxHighlight;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.Resolver;
 import org.aya.ide.syntax.SyntaxDeclAction;
 import org.aya.pretty.doc.Doc;
@@ -30,15 +29,15 @@ public record ProjectSymbol(
     return symbol.symbols.toImmutableSeq();
   }
 
-  public static @NotNull ImmutableSeq<Symbol> invoke(@NotNull PrettierOptions options, @NotNull SeqView<LibraryOwner> libraries) {
-    var symbol = new ProjectSymbol(options, MutableList.create());
-    libraries.forEach(symbol::collectLib);
-    return symbol.symbols.toImmutableSeq();
-  }
-
-  private void collectLib(@NotNull LibraryOwner owner) {
-    owner.librarySources().forEach(this::collectSource);
-    owner.libraryDeps().forEach(this::collectLib);
+  /** Workspace symbols are answered by the index, children are not included. */
+  public static @NotNull ImmutableSeq<Symbol> invoke(@NotNull PrettierOptions options, @NotNull ReferenceIndex index) {
+    return index.declarations().map(decl -> new Symbol(
+      decl.name(),
+      decl.ref() == null ? Doc.empty() : ComputeSignature.computeSignature(options, decl.ref()),
+      decl.kind(),
+      decl.nameLocation(), decl.entireLocation(),
+      ImmutableSeq.empty()
+    )).toImmutableSeq();
   }
 
   private void collectSource(@NotNull LibrarySource src) {
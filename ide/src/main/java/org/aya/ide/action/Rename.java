@@ -7,6 +7,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.control.Option;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.ide.ReferenceIndex;
 import org.aya.ide.Resolver;
 import org.aya.ide.util.XY;
 import org.aya.syntax.ref.AnyVar;
@@ -22,10 +23,10 @@ public interface Rename {
 
   static @NotNull ImmutableSeq<RenameEdit> rename(
     @NotNull LibrarySource source,
-    @NotNull String newName,
+    @NotNull String newName, @NotNull ReferenceIndex index,
     @NotNull SeqView<LibraryOwner> libraries, XY xy
   ) {
-    return FindReferences.findOccurrences(source, libraries, xy)
+    return FindReferences.findOccurrences(source, index, libraries, xy)
       .map(to -> new RenameEdit(to, newName))
       .toImmutableSeq();
   }
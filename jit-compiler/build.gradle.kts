@@ -7,9 +7,3 @@ dependencies {
   testImplementation(libs.hamcrest)
   testImplementation(project(":producer"))
 }
-
-tasks.withType<JavaExec>().configureEach {
-  val vmArgs = jvmArgs ?: mutableListOf()
-  vmArgs.add("-Xss32M")
-  jvmArgs = vmArgs
-}
@@ -41,6 +41,14 @@ public abstract class AbstractSerializer<T> implements SourceBuilder {
       .serialize(term);
   }
 
+  /** @see TermExprializer#serializeTail */
+  protected @NotNull String serializeTailUnderTele(
+    @NotNull Term term, @NotNull ImmutableSeq<String> argTerms, @NotNull String tailCall
+  ) {
+    return new TermExprializer(sourceBuilder.nameGen(), argTerms)
+      .serializeTail(term, tailCall);
+  }
+
   protected @NotNull String serializeTerm(@NotNull Term term) {
     return serializeTermUnderTele(term, ImmutableSeq.empty());
   }
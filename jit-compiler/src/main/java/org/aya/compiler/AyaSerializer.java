@@ -7,6 +7,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.immutable.ImmutableTreeSeq;
 import kala.collection.mutable.MutableSeq;
 import kala.control.Result;
+import org.aya.syntax.compile.TailCall;
 import org.aya.syntax.core.pat.Pat;
 import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.TupTerm;
@@ -27,6 +28,7 @@ public interface AyaSerializer {
   String CLASS_CONCALLLIKE = getJavaRef(ConCallLike.class);
   String CLASS_TUPLE = getJavaRef(TupTerm.class);
   String CLASS_FNCALL = getJavaRef(FnCall.class);
+  String CLASS_TAILCALL = getJavaRef(TailCall.class);
   String CLASS_DATACALL = getJavaRef(DataCall.class);
   String CLASS_PRIMCALL = getJavaRef(PrimCall.class);
   String CLASS_IMMSEQ = getJavaRef(ImmutableSeq.class);
@@ -4,13 +4,14 @@ package org.aya.compiler;
 
 import kala.collection.Seq;
 import kala.collection.immutable.ImmutableSeq;
-import kala.collection.mutable.MutableList;
 import kala.control.Either;
 import org.aya.generic.Modifier;
 import org.aya.primitive.ShapeFactory;
 import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.compile.TailCall;
 import org.aya.syntax.core.def.FnDef;
 import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.term.call.FnCall;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.EnumSet;
@@ -19,8 +20,6 @@ import java.util.function.Consumer;
 import static org.aya.compiler.AyaSerializer.*;
 
 public final class FnSerializer extends JitTeleSerializer<FnDef> {
-  public static final String TYPE_STUCK = CLASS_SUPPLIER + "<" + CLASS_TERM + ">";
-
   private final @NotNull ShapeFactory shapeFactory;
   public FnSerializer(@NotNull SourceBuilder builder, @NotNull ShapeFactory shapeFactory) {
     super(builder, JitFn.class);
@@ -42,10 +41,11 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   }
 
   /**
-   * Build fixed argument `invoke`
+   * Build fixed argument `tryInvoke`, which returns null when stuck,
+   * and puts a call in tail position in {@param tailCall}
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms) {
-    Consumer<SourceBuilder> onStuckCon = s -> s.buildReturn(onStuckTerm + ".get()");
+  private void buildTryInvoke(FnDef unit, @NotNull String tailCall, @NotNull ImmutableSeq<String> argTerms) {
+    Consumer<SourceBuilder> onStuckCon = s -> s.buildReturn("null");
 
     if (unit.is(Modifier.Opaque)) {
       onStuckCon.accept(this);
@@ -53,26 +53,54 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
     }
 
     switch (unit.body()) {
-      case Either.Left(var expr) -> buildReturn(serializeTermUnderTele(expr, argTerms));
+      case Either.Left(var expr) -> buildReturn(serializeTailUnderTele(expr, argTerms, tailCall));
       case Either.Right(var clauses) -> {
         var ser = new PatternSerializer(this.sourceBuilder, argTerms, onStuckCon, onStuckCon);
         ser.serialize(clauses.map(matching -> new PatternSerializer.Matching(
           matching.bindCount(), matching.patterns(), (s, bindSize) ->
-          s.buildReturn(serializeTermUnderTele(matching.body(), PatternSerializer.VARIABLE_RESULT, bindSize))
+          s.buildReturn(serializeTailUnderTele(matching.body(),
+            SourceBuilder.fromSeq(PatternSerializer.VARIABLE_RESULT, bindSize), tailCall))
         )));
       }
     }
   }
 
+  /** @return whether a body of {@param unit} is a call, which {@link TermExprializer#serializeTail} puts in the cell */
+  private static boolean hasTailCall(@NotNull FnDef unit) {
+    if (unit.is(Modifier.Opaque)) return false;
+    return switch (unit.body()) {
+      case Either.Left(var expr) -> expr instanceof FnCall;
+      case Either.Right(var clauses) -> clauses.anyMatch(matching -> matching.body() instanceof FnCall);
+    };
+  }
+
   /**
-   * Build vararg `invoke`
+   * Build fixed argument `invoke`, which makes the call itself when stuck,
+   * and unfolds the tail calls with one {@link TailCall}. The cell is only allocated if
+   * the function has a tail call, otherwise nothing is allocated unless it is stuck.
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull String argsTerm) {
-    var teleSize = unit.telescope().size();
+  private void buildInvoke(@NotNull ImmutableSeq<String> argTerms, boolean hasTailCall) {
+    if (hasTailCall) {
+      var tailCall = buildLocalVar(CLASS_TAILCALL, nameGen().nextName(), ExprializeUtils.makeNew(CLASS_TAILCALL));
+      var result = buildLocalVar(CLASS_TERM, nameGen().nextName(),
+        argTerms.prepended(tailCall).joinToString(", ", "this.tryInvoke(", ")"));
+      buildIf(result + " != null", () -> buildReturn(tailCall + ".run(" + result + ")"));
+    } else {
+      var result = buildLocalVar(CLASS_TERM, nameGen().nextName(),
+        argTerms.prepended("null").joinToString(", ", "this.tryInvoke(", ")"));
+      buildIf(result + " != null", () -> buildReturn(result));
+    }
+    buildReturn(ExprializeUtils.makeNew(CLASS_FNCALL, "this", "0",
+      ExprializeUtils.makeImmutableSeq(CLASS_TERM, argTerms)));
+  }
 
-    buildReturn(SourceBuilder.fromSeq(argsTerm, teleSize).view()
-      .prepended(onStuckTerm)
-      .joinToString(", ", "this.invoke(", ")"));
+  /**
+   * Build `tryInvoke` taking the arguments from a {@link TailCall}
+   */
+  private void buildTryInvoke(FnDef unit, @NotNull String tailCall) {
+    var teleSize = unit.telescope().size();
+    var args = ImmutableSeq.fill(teleSize, i -> tailCall + ".arg(" + i + ")");
+    buildReturn(args.prepended(tailCall).joinToString(", ", "this.tryInvoke(", ")"));
   }
 
   @Override protected @NotNull String callClass() { return CLASS_FNCALL; }
@@ -88,20 +116,25 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   }
 
   @Override public FnSerializer serialize(FnDef unit) {
-    var argsTerm = "args";
-    var onStuckTerm = "onStuck";
-    var onStuckParam = new JitParam(onStuckTerm, TYPE_STUCK);
+    var tailCall = "tailCall";
     var names = ImmutableSeq.fill(unit.telescope().size(), _ -> nameGen().nextName());
-    var fixedParams = MutableList.<JitParam>create();
-    fixedParams.append(onStuckParam);
-    fixedParams.appendAll(names.view().map(x -> new JitParam(x, CLASS_TERM)));
+    var fixedParams = names.map(x -> new JitParam(x, CLASS_TERM));
 
     buildFramework(unit, () -> {
-      buildMethod("invoke", fixedParams.toImmutableSeq(),
-        CLASS_TERM, false, () -> buildInvoke(unit, onStuckTerm, names));
+      var tailCallParam = new JitParam(tailCall, CLASS_TAILCALL);
+      // without parameters, the fixed argument `tryInvoke` is the one taking the arguments from the cell
+      if (names.isEmpty()) {
+        buildMethod("tryInvoke", ImmutableSeq.of(tailCallParam), CLASS_TERM, true,
+          () -> buildTryInvoke(unit, tailCall, names));
+      } else {
+        buildMethod("tryInvoke", fixedParams.prepended(tailCallParam), CLASS_TERM, false,
+          () -> buildTryInvoke(unit, tailCall, names));
+        appendLine();
+        buildMethod("tryInvoke", ImmutableSeq.of(tailCallParam), CLASS_TERM, true,
+          () -> buildTryInvoke(unit, tailCall));
+      }
       appendLine();
-      buildMethod("invoke", ImmutableSeq.of(onStuckParam, new JitParam(argsTerm, TYPE_TERMSEQ)),
-        CLASS_TERM, true, () -> buildInvoke(unit, onStuckTerm, argsTerm));
+      buildMethod("invoke", fixedParams, CLASS_TERM, false, () -> buildInvoke(names, hasTailCall(unit)));
     });
 
     return this;
@@ -110,6 +110,10 @@ public final class TermExprializer extends AbstractExprializer<Term> {
     var seredArgs = args.map(x -> x.map(this::doSerialize));
     var seredSeq = seredArgs.map(x -> ExprializeUtils.makeImmutableSeq(CLASS_TERM, x));
     var flatArgs = seredArgs.flatMap(x -> x);
+    var elevate = ulift > 0 ? ".elevate(" + ulift + ")" : "";
+
+    // the fixed-arity invoke of a compiled function builds the stuck call itself, only when stuck
+    if (fixed) return reducible + ".invoke(" + flatArgs.joinToString() + ")" + elevate;
 
     var callArgs = new String[seredSeq.size() + 2];
     callArgs[0] = reducible;
@@ -118,15 +122,19 @@ public final class TermExprializer extends AbstractExprializer<Term> {
       callArgs[i + 2] = seredSeq.get(i);
     }
 
-    var elevate = ulift > 0 ? ".elevate(" + ulift + ")" : "";
     var onStuck = makeThunk(ExprializeUtils.makeNew(callName, callArgs));
-    var finalArgs = fixed
-      ? flatArgs.view().prepended(onStuck).joinToString()
-      : onStuck + ", " + ExprializeUtils.makeImmutableSeq(CLASS_TERM, flatArgs);
+    var finalArgs = onStuck + ", " + ExprializeUtils.makeImmutableSeq(CLASS_TERM, flatArgs);
 
     return reducible + ".invoke(" + finalArgs + ")" + elevate;
   }
 
+  private static @NotNull String serializeFnRef(@NotNull FnCall call) {
+    return switch (call.ref()) {
+      case JitFn jit -> ExprializeUtils.getInstance(NameSerializer.getClassRef(jit));
+      case FnDef.Delegate def -> ExprializeUtils.getInstance(getClassRef(def.ref));
+    };
+  }
+
   @Override protected @NotNull String doSerialize(@NotNull Term term) {
     return switch (term) {
       case FreeTerm(var bind) -> {
@@ -168,15 +176,8 @@ public final class TermExprializer extends AbstractExprializer<Term> {
         Integer.toString(head.ulift()),
         serializeToImmutableSeq(CLASS_TERM, args)
       );
-      case FnCall call -> {
-        var ref = switch (call.ref()) {
-          case JitFn jit -> ExprializeUtils.getInstance(NameSerializer.getClassRef(jit));
-          case FnDef.Delegate def -> ExprializeUtils.getInstance(getClassRef(def.ref));
-        };
-
-        var args = call.args();
-        yield buildReducibleCall(ref, CLASS_FNCALL, call.ulift(), ImmutableSeq.of(args), true);
-      }
+      case FnCall call ->
+        buildReducibleCall(serializeFnRef(call), CLASS_FNCALL, call.ulift(), ImmutableSeq.of(call.args()), true);
       case RuleReducer.Con conRuler -> buildReducibleCall(
         serializeApplicable(conRuler.rule()),
         CLASS_RULE_CON, conRuler.ulift(),
@@ -282,12 +283,26 @@ public final class TermExprializer extends AbstractExprializer<Term> {
     return CLASS_CLOSURE + ".mkConst(" + doSerialize(appliedBody) + ")";
   }
 
-  @Override public @NotNull String serialize(Term unit) {
+  private @NotNull Term instantiate(@NotNull Term unit) {
     binds.clear();
     var vars = ImmutableSeq.fill(instantiates.size(), i -> new LocalVar("arg" + i));
-    unit = unit.instantiateTeleVar(vars.view());
     vars.forEachWith(instantiates, binds::put);
+    return unit.instantiateTeleVar(vars.view());
+  }
 
-    return doSerialize(unit);
+  @Override public @NotNull String serialize(Term unit) {
+    return doSerialize(instantiate(unit));
+  }
+
+  /**
+   * Serialize the body of a function, where a call at the top is put in the {@link org.aya.syntax.compile.TailCall}
+   * named {@param tailCall} instead of invoked, so the caller unfolds it in a loop instead of a nested {@code invoke}.
+   */
+  public @NotNull String serializeTail(@NotNull Term unit, @NotNull String tailCall) {
+    unit = instantiate(unit);
+    if (!(unit instanceof FnCall call)) return doSerialize(unit);
+    var callArgs = ImmutableSeq.of(serializeFnRef(call), Integer.toString(call.ulift()))
+      .appendedAll(call.args().map(this::doSerialize));
+    return callArgs.joinToString(", ", tailCall + ".call(", ")");
   }
 }
@@ -18,9 +18,13 @@ import org.aya.syntax.core.Closure;
 import org.aya.syntax.core.def.TopLevelDef;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.core.term.AppTerm;
+import org.aya.syntax.core.term.FreeTerm;
 import org.aya.syntax.core.term.LamTerm;
 import org.aya.syntax.core.term.LocalTerm;
+import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.ref.LocalVar;
 import org.aya.util.error.SourceFile;
 import org.aya.util.reporter.ThrowingReporter;
 import org.intellij.lang.annotations.Language;
@@ -31,6 +35,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import static org.aya.compiler.NameSerializer.getClassName;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class CompileTest {
   @Test public void test0() {
@@ -82,6 +87,35 @@ public class CompileTest {
     // System.out.println(out);
   }
 
+  @Test public void tailCalls() throws IOException {
+    var result = tyck("""
+      open inductive Nat | O | S Nat
+      def count (a b : Nat) : Nat elim a
+      | O => b
+      | S n => count n (S b)
+      """);
+
+    var tester = new CompileTester(serializeFrom(result));
+    tester.compile();
+    var baka = DumbModuleLoader.DUMB_MODULE_NAME;
+
+    JitCon O = tester.loadInstance(getClassName(baka.derive("Nat"), "O"));
+    JitCon S = tester.loadInstance(getClassName(baka.derive("Nat"), "S"));
+    JitFn count = tester.loadInstance(getClassName(baka, "count"));
+    Term zero = new ConCall(O, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    var large = zero;
+    for (var i = 0; i < 100000; i++) large = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(large));
+
+    // each step is a tail call, unfolded in a loop with one cell
+    var mResult = count.invoke(() -> null, ImmutableSeq.of(large, zero));
+    assertNotNull(mResult);
+    assertFalse(mResult instanceof FnCall);
+    // stuck on a variable, the tail call is given back as a call
+    var stuck = count.tryInvoke(ImmutableSeq.of(new ConCall(S, ImmutableSeq.empty(), 0,
+      ImmutableSeq.of(new FreeTerm(LocalVar.generate("n")))), zero));
+    assertInstanceOf(FnCall.class, stuck);
+  }
+
   @Test public void serLam() {
     // \ t. (\0. 0 t)
     var lam = new LamTerm(new Closure.Jit(t -> new LamTerm(new Closure.Locns(new AppTerm(new LocalTerm(0), t)))));
@@ -3,6 +3,8 @@
 package org.aya.pretty.backend.html;
 
 import kala.collection.immutable.ImmutableMap;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableMap;
 import org.aya.pretty.backend.string.Cursor;
 import org.aya.pretty.backend.string.StringPrinter;
 import org.aya.pretty.backend.string.StringPrinterConfig;
@@ -44,6 +46,66 @@ public class DocHtmlPrinter<Config extends DocHtmlPrinter.Config> extends String
     "\"", "&quot;"
   );
 
+  /**
+   * Distinct tooltips (base64 encoded) and hovers of the page, to their ids.
+   * A definition used a thousand times should not have its type printed a thousand times,
+   * so when {@link #shareTables()}, the elements only refer to these ids,
+   * and the scripts look them up in the {@code ayaTables} emitted at the end of the page.
+   */
+  private final @NotNull MutableMap<String, Integer> tooltips = MutableLinkedHashMap.of();
+  private final @NotNull MutableMap<String, Integer> hovers = MutableLinkedHashMap.of();
+
+  @Override public @NotNull String render(@NotNull Config config, @NotNull Doc doc) {
+    tooltips.clear();
+    hovers.clear();
+    return super.render(config, doc);
+  }
+
+  /**
+   * Whether the page comes with our scripts, which are able to resolve the ids.
+   * Server side rendered pages are excluded, as the only script of a Vue component is the hover script.
+   */
+  protected boolean shareTables() {
+    return config.opt(HeaderCode, false) && !config.opt(ServerSideRendering, false);
+  }
+
+  protected void renderTables(@NotNull Cursor cursor) {
+    if (tooltips.isEmpty() && hovers.isEmpty()) return;
+    cursor.invisibleContent("<script>\nvar ayaTables = {\n  tooltips: ");
+    cursor.invisibleContent(jsonArray(tooltips));
+    cursor.invisibleContent(",\n  hovers: ");
+    cursor.invisibleContent(jsonArray(hovers));
+    cursor.invisibleContent("\n};\n</script>\n");
+  }
+
+  private static @NotNull String jsonArray(@NotNull MutableMap<String, Integer> table) {
+    var json = new StringBuilder("[");
+    // ids are assigned in insertion order
+    table.forEach((text, _) -> {
+      if (json.length() > 1) json.append(",");
+      json.append('"');
+      for (var c : text.toCharArray()) {
+        switch (c) {
+          case '"' -> json.append("\\\"");
+          case '\\' -> json.append("\\\\");
+          case '\n' -> json.append("\\n");
+          // `</script>` must not appear in the script
+          case '<' -> json.append("\\u003c");
+          default -> {
+            if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+          }
+        }
+      }
+      json.append('"');
+    });
+    return json.append("]").toString();
+  }
+
+  private static int idOf(@NotNull MutableMap<String, Integer> table, @NotNull String text) {
+    return table.getOrPut(text, table::size);
+  }
+
   @Override protected void renderHeader(@NotNull Cursor cursor) {
     if (config.opt(HeaderCode, false)) {
       cursor.invisibleContent(HEAD);
@@ -60,7 +122,11 @@ public class DocHtmlPrinter<Config extends DocHtmlPrinter.Config> extends String
   }
 
   @Override protected void renderFooter(@NotNull Cursor cursor) {
-    if (config.opt(HeaderCode, false)) cursor.invisibleContent("\n</body></html>\n");
+    if (config.opt(HeaderCode, false)) {
+      cursor.invisibleContent("\n");
+      renderTables(cursor);
+      cursor.invisibleContent("</body></html>\n");
+    }
   }
 
   protected void renderCssStyle(@NotNull Cursor cursor) {
@@ -95,10 +161,10 @@ public class DocHtmlPrinter<Config extends DocHtmlPrinter.Config> extends String
     renderDoc(newCursor, tooltip.tooltip().toDoc(), FREE);
     var tip = newCursor.result().toString();
     // ^ note: the tooltip is shown in a popup, which is a new document.
+    var encoded = Base64.getEncoder().encodeToString(tip.getBytes(StandardCharsets.UTF_8));
     cursor.invisibleContent("<span class=\"aya-tooltip\" ");
-    cursor.invisibleContent("data-tooltip-text=\"");
-    cursor.invisibleContent(Base64.getEncoder().encodeToString(tip.getBytes(StandardCharsets.UTF_8)));
-    cursor.invisibleContent("\">");
+    if (shareTables()) cursor.invisibleContent("data-tooltip-id=\"" + idOf(tooltips, encoded) + "\">");
+    else cursor.invisibleContent("data-tooltip-text=\"" + encoded + "\">");
     renderDoc(cursor, tooltip.doc(), EnumSet.of(Outer.EnclosingTag));
     cursor.invisibleContent("</span>");
   }
@@ -110,7 +176,8 @@ public class DocHtmlPrinter<Config extends DocHtmlPrinter.Config> extends String
     if (text.id() != null) cursor.invisibleContent("id=\"" + normalizeId(text.id()) + "\" ");
     if (text.hover() != null) {
       cursor.invisibleContent("class=\"aya-hover\" ");
-      cursor.invisibleContent("aya-hover-text=\"" + text.hover() + "\" ");
+      if (shareTables()) cursor.invisibleContent("data-hover-id=\"" + idOf(hovers, text.hover()) + "\" ");
+      else cursor.invisibleContent("aya-hover-text=\"" + text.hover() + "\" ");
     }
     cursor.invisibleContent("href=\"");
     cursor.invisibleContent(normalizeHref(href));
@@ -27,6 +27,7 @@ public class DocMdPrinter extends DocHtmlPrinter<DocMdPrinter.Config> {
       if (config.opt(AyaFlavored, false)) {
         cursor.invisibleContent(HtmlConstants.HOVER_STYLE);
         cursor.invisibleContent(HtmlConstants.HOVER_TYPE_POPUP_STYLE);
+        if (shareTables()) renderTables(cursor);
         cursor.invisibleContent(config.opt(ServerSideRendering, false)
           ? HtmlConstants.HOVER_SSR
           : HtmlConstants.HOVER);
@@ -35,6 +36,10 @@ public class DocMdPrinter extends DocHtmlPrinter<DocMdPrinter.Config> {
     }
   }
 
+  @Override protected boolean shareTables() {
+    return super.shareTables() && config.opt(AyaFlavored, false);
+  }
+
   // markdown escape: https://spec.commonmark.org/0.30/#backslash-escapes
   @Override protected @NotNull String escapePlainText(@NotNull String content, EnumSet<Outer> outer) {
     if (outer.contains(Outer.EnclosingTag)) {
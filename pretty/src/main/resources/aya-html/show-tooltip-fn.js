@@ -169,10 +169,25 @@ class HoverStack {
 
 let hoverStack = new HoverStack();
 
+// Tooltips and hovers used many times are stored once in `ayaTables` (see `DocHtmlPrinter`),
+// and the elements refer to them by id.
+function tooltipText(link) {
+  const id = link.getAttribute("data-tooltip-id");
+  if (id !== null && typeof ayaTables !== 'undefined') return ayaTables.tooltips[id];
+  return link.getAttribute("data-tooltip-text");
+}
+
+// The hover is shown by CSS with the `aya-hover-text` attribute, which is filled on the first hover.
+function resolveHover(link) {
+  const id = link.getAttribute("data-hover-id");
+  if (id === null || link.hasAttribute("aya-hover-text") || typeof ayaTables === 'undefined') return;
+  link.setAttribute("aya-hover-text", ayaTables.hovers[id]);
+}
+
 function showTooltip(on) {
   return function () {
     let link = this;
-    const text = link.getAttribute("data-tooltip-text");
+    const text = tooltipText(link);
     if (!text) return;
     if (on) {
       hoverStack.createHoverFor(link, text, document.body);
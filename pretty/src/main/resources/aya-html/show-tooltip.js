@@ -6,7 +6,13 @@
 let links = document.getElementsByClassName('aya-tooltip');
 for (let i = 0; i < links.length; i++) {
   let link = links[i];
-  if (!link.hasAttribute("data-tooltip-text")) continue;
+  if (!link.hasAttribute("data-tooltip-text") && !link.hasAttribute("data-tooltip-id")) continue;
   link.onmouseover = showTooltip(true);
   link.onmouseout = showTooltip(false);
 }
+
+// Also covers the hovers inside tooltip popups, which are created later
+document.addEventListener("mouseover", event => {
+  const link = event.target.closest?.("[data-hover-id]");
+  if (link) resolveHover(link);
+});
@@ -2,6 +2,7 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.pretty;
 
+import kala.collection.mutable.MutableList;
 import org.aya.pretty.doc.Doc;
 import org.aya.pretty.doc.Link;
 import org.aya.pretty.doc.Style;
@@ -9,8 +10,10 @@ import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class HtmlStyleTest {
   @Test public void testHtmlStyle() {
@@ -71,4 +74,50 @@ public class HtmlStyleTest {
     assertEquals(expected0, actual0);
     assertEquals(expected1, actual1);
   }
+
+  /** Five uses of one definition and one use of another, each with a tooltip and a hover */
+  private @NotNull Doc repeatedDoc() {
+    var docs = MutableList.<Doc>create();
+    for (var i = 0; i < 5; i++) docs.append(Doc.cat(
+      new Doc.Tooltip(Doc.plain("zero"), () -> Doc.plain("Nat")),
+      Doc.hyperLink(Doc.plain("zero"), Link.loc("zero"), "Nat"),
+      Doc.line()));
+    docs.append(Doc.cat(
+      new Doc.Tooltip(Doc.plain("neg"), () -> Doc.plain("Int")),
+      Doc.hyperLink(Doc.plain("neg"), Link.loc("neg"), "Int")));
+    return Doc.cat(docs);
+  }
+
+  private static int count(@NotNull String text, @NotNull String pattern) {
+    var n = 0;
+    for (var i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) n++;
+    return n;
+  }
+
+  private static @NotNull String base64(@NotNull String text) {
+    return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test public void testSharedTables() {
+    var page = repeatedDoc().renderToHtml(true);
+    assertEquals(5, count(page, "data-tooltip-id=\"0\""));
+    assertEquals(1, count(page, "data-tooltip-id=\"1\""));
+    assertEquals(5, count(page, "data-hover-id=\"0\""));
+    assertEquals(1, count(page, "data-hover-id=\"1\""));
+    assertEquals(0, count(page, "data-tooltip-text="));
+    assertEquals(0, count(page, "aya-hover-text=\""));
+    // each text is emitted once, in the tables
+    var tables = page.substring(page.indexOf("var ayaTables"));
+    assertTrue(tables.contains("tooltips: [\"" + base64("Nat") + "\",\"" + base64("Int") + "\"]"), tables);
+    assertTrue(tables.contains("hovers: [\"Nat\",\"Int\"]"), tables);
+    assertEquals(1, count(page, base64("Nat")));
+    assertEquals(1, count(page, base64("Int")));
+  }
+
+  @Test public void testInlineWithoutScripts() {
+    var fragment = repeatedDoc().renderToHtml(false);
+    assertEquals(5, count(fragment, "data-tooltip-text=\"" + base64("Nat") + "\""));
+    assertEquals(5, count(fragment, "aya-hover-text=\"Nat\""));
+    assertFalse(fragment.contains("ayaTables"));
+  }
 }
@@ -36,7 +36,11 @@ public record AyaParserImpl(@NotNull Reporter reporter) implements GenericAyaPar
 
   @Override
   public @NotNull ImmutableSeq<Stmt> program(@NotNull SourceFile sourceFile, @NotNull SourceFile errorReport) {
-    var parse = parse(sourceFile.sourceCode(), errorReport);
+    return program(parseNode(sourceFile.sourceCode()), errorReport);
+  }
+
+  @NotNull ImmutableSeq<Stmt> program(@NotNull GenericNode<?> node, @NotNull SourceFile errorReport) {
+    var parse = parse(node, errorReport);
     if (parse.isRight()) {
       reporter.reportString("Expect statement, got repl expression", Problem.Severity.ERROR);
       return ImmutableSeq.empty();
@@ -44,13 +48,13 @@ public record AyaParserImpl(@NotNull Reporter reporter) implements GenericAyaPar
     return parse.getLeftValue();
   }
 
-  private @NotNull Either<ImmutableSeq<Stmt>, WithPos<Expr>> parse(@NotNull String code, @NotNull SourceFile errorReport) {
-    var node = ParserUtil.reportErrorElements(parseNode(code), errorReport, reporter);
+  private @NotNull Either<ImmutableSeq<Stmt>, WithPos<Expr>> parse(@NotNull GenericNode<?> node, @NotNull SourceFile errorReport) {
+    ParserUtil.reportErrorElements(node, errorReport, reporter);
     return new AyaProducer(Either.left(errorReport), reporter).program(node);
   }
 
   public @NotNull Either<ImmutableSeq<Stmt>, WithPos<Expr>> repl(@NotNull String code) {
-    return parse(code, replSourceFile(code));
+    return parse(parseNode(code), replSourceFile(code));
   }
 
   private static @NotNull SourceFile replSourceFile(@NotNull String text) {
@@ -70,13 +70,19 @@ import static org.aya.parser.AyaPsiElementTypes.*;
  *   </li>
  * </ul>
  *
+ * @param shift the offset of the parsed text in the source file, nonzero when only a part of the file is parsed
  * @author kiva
  * @see AyaPsiElementTypes
  */
 public record AyaProducer(
   @NotNull Either<SourceFile, SourcePos> source,
-  @NotNull Reporter reporter
+  @NotNull Reporter reporter,
+  int shift
 ) {
+  public AyaProducer(@NotNull Either<SourceFile, SourcePos> source, @NotNull Reporter reporter) {
+    this(source, reporter, 0);
+  }
+
   // NOTE: change here is you modified `extends` in `AyaPsiParser.bnf`
   public static final @NotNull TokenSet ARRAY_BLOCK = AyaPsiParser.EXTENDS_SETS_[0];
   public static final @NotNull TokenSet ARGUMENT = AyaPsiParser.EXTENDS_SETS_[2];
@@ -898,7 +904,7 @@ public record AyaProducer(
   }
 
   private @NotNull SourcePos sourcePosOf(@NotNull GenericNode<?> node) {
-    return source.fold(file -> sourcePosOf(node, file), pos -> pos);
+    return source.fold(file -> sourcePosOf(node.range().shiftRight(shift), file, isTerminalNode(node)), pos -> pos);
   }
 
   public static @NotNull SourcePos sourcePosOf(@NotNull GenericNode<?> node, @NotNull SourceFile file) {
@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.producer;
+
+import com.intellij.lexer.FlexLexer;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.parser.AyaParserDefinitionBase;
+import org.aya.parser.AyaPsiElementTypes;
+import org.aya.parser.ParserDefBase;
+import org.aya.syntax.ref.ModulePath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Finds the imported modules of a file with the lexer only, without building the parse tree.
+ * {@code import} is a keyword that only starts the module path of {@code import} and {@code open import},
+ * so the module path is just the identifiers and {@code ::} after it.
+ */
+public interface ImportScanner {
+  /** @return the imported modules in order, or null if the code does not lex well, it should be parsed then */
+  static @Nullable ImmutableSeq<ModulePath> scan(@NotNull String code) {
+    var lexer = AyaParserDefinitionBase.createLexer(false);
+    lexer.reset(code, 0, code.length(), 0);
+    var imports = MutableList.<ModulePath>create();
+    try {
+      var type = next(lexer);
+      while (type != null) {
+        if (type == TokenType.BAD_CHARACTER) return null;
+        if (type != AyaPsiElementTypes.KW_IMPORT) {
+          type = next(lexer);
+          continue;
+        }
+        var path = MutableList.<String>create();
+        do {
+          if (next(lexer) != AyaPsiElementTypes.ID) return null;
+          path.append(code.substring(lexer.getTokenStart(), lexer.getTokenEnd()));
+          type = next(lexer);
+        } while (type == AyaPsiElementTypes.COLON2);
+        imports.append(new ModulePath(path.toImmutableSeq()));
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return imports.toImmutableSeq();
+  }
+
+  /** @return the next token that is not a whitespace or comment, null at the end */
+  private static @Nullable IElementType next(@NotNull FlexLexer lexer) throws IOException {
+    while (true) {
+      var type = lexer.advance();
+      if (type != TokenType.WHITE_SPACE && !ParserDefBase.COMMENTS.contains(type)) return type;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.producer;
+
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
+import kala.control.Either;
+import org.aya.intellij.GenericNode;
+import org.aya.parser.AyaParserDefinitionBase;
+import org.aya.parser.ParserDefBase;
+import org.aya.syntax.GenericAyaParser;
+import org.aya.syntax.concrete.Expr;
+import org.aya.syntax.concrete.stmt.Stmt;
+import org.aya.util.error.SourceFile;
+import org.aya.util.error.SourcePos;
+import org.aya.util.error.WithPos;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A parser that remembers the parse tree of each file, and only reparses the top-level statements
+ * around the edited region when the file is parsed again. Everything else is reused, shifted by
+ * the length difference of the edit.
+ * <p>
+ * The concrete syntax is always produced from the (partially reused) parse tree, because the resolver
+ * mutates it in place and the positions refer to the whole file. Whenever the reparsed region cannot
+ * be proven to parse the same way as the whole file would, we fall back to {@link AyaParserImpl}.
+ */
+public record IncrementalAyaParser(@NotNull Cache cache, @NotNull Reporter reporter) implements GenericAyaParser {
+  /**
+   * Parse trees of top-level statements, keyed by the file they are reported in.
+   * Only files without syntax errors are cached.
+   */
+  public static final class Cache {
+    private final @NotNull MutableMap<String, Snapshot> snapshots = MutableMap.create();
+
+    private synchronized @Nullable Snapshot get(@NotNull String key) { return snapshots.getOrNull(key); }
+    private synchronized void put(@NotNull String key, @Nullable Snapshot snapshot) {
+      if (snapshot == null) snapshots.remove(key);
+      else snapshots.put(key, snapshot);
+    }
+    public synchronized void clear() { snapshots.clear(); }
+  }
+
+  /** @param shift the offset of the text that {@link #node} is parsed from */
+  record Chunk(@NotNull GenericNode<?> node, int shift) {
+    public int start() { return node.range().getStartOffset() + shift; }
+    public int end() { return node.range().getEndOffset() + shift; }
+    public @NotNull Chunk shifted(int delta) { return new Chunk(node, shift + delta); }
+  }
+
+  record Snapshot(@NotNull String code, @NotNull ImmutableSeq<Chunk> chunks) { }
+
+  @Override public @NotNull WithPos<Expr> expr(@NotNull String code, @NotNull SourcePos overridingSourcePos) {
+    return new AyaParserImpl(reporter).expr(code, overridingSourcePos);
+  }
+
+  @Override
+  public @NotNull ImmutableSeq<Stmt> program(@NotNull SourceFile sourceFile, @NotNull SourceFile errorReport) {
+    var key = errorReport.underlying().map(Path::toString).getOrDefault(errorReport.display());
+    var code = sourceFile.sourceCode();
+    var old = cache.get(key);
+    var snapshot = old == null ? null : reparse(old, code);
+    if (snapshot == null) {
+      var parser = new AyaParserImpl(reporter);
+      var node = parser.parseNode(code);
+      if (node.peekChild(AyaProducer.EXPR) != null || hasError(node)) {
+        cache.put(key, null);
+        return parser.program(node, errorReport);
+      }
+      snapshot = new Snapshot(code, chunksOf(node, 0));
+    }
+    cache.put(key, snapshot);
+    return snapshot.chunks.flatMap(chunk ->
+      new AyaProducer(Either.left(errorReport), reporter, chunk.shift).stmt(chunk.node));
+  }
+
+  /** @return null if the edit cannot be reparsed locally */
+  private @Nullable Snapshot reparse(@NotNull Snapshot old, @NotNull String code) {
+    var oldCode = old.code;
+    if (oldCode.equals(code)) return old;
+    var minLength = Math.min(oldCode.length(), code.length());
+    var prefix = 0;
+    while (prefix < minLength && oldCode.charAt(prefix) == code.charAt(prefix)) prefix++;
+    var suffix = 0;
+    while (suffix < minLength - prefix
+      && oldCode.charAt(oldCode.length() - 1 - suffix) == code.charAt(code.length() - 1 - suffix)) suffix++;
+    var editStart = prefix;
+    var oldEditEnd = oldCode.length() - suffix;
+    var delta = code.length() - oldCode.length();
+
+    // Chunks touching the edit, widened by one statement on both sides,
+    // since the edit may extend or cut the statement before or after it.
+    var chunks = old.chunks;
+    var firstTouched = chunks.indexWhere(c -> c.end() >= editStart);
+    if (firstTouched < 0) firstTouched = chunks.size();
+    var lastTouched = chunks.lastIndexWhere(c -> c.start() <= oldEditEnd);
+    var keepBefore = Math.max(0, firstTouched - 1);
+    var keepAfter = Math.min(chunks.size(), lastTouched + 2);
+    var regionStart = keepBefore == 0 ? 0 : chunks.get(keepBefore - 1).end();
+    var regionEnd = (keepAfter == chunks.size() ? oldCode.length() : chunks.get(keepAfter).start()) + delta;
+    if (regionStart > editStart || regionEnd < code.length() - suffix) return null;
+    var region = code.substring(regionStart, regionEnd);
+    if (!isSelfContained(code, region, regionStart, regionEnd)) return null;
+
+    var node = new AyaParserImpl(reporter).parseNode(region);
+    if (node.peekChild(AyaProducer.EXPR) != null || hasError(node)) return null;
+    var reparsed = chunksOf(node, regionStart);
+    return new Snapshot(code, chunks.take(keepBefore)
+      .appendedAll(reparsed)
+      .appendedAll(chunks.drop(keepAfter).map(c -> c.shifted(delta))));
+  }
+
+  /**
+   * The region must be separated from its surroundings by whitespace,
+   * and must not end inside a comment that would swallow the statements after it.
+   */
+  private static boolean isSelfContained(@NotNull String code, @NotNull String region, int regionStart, int regionEnd) {
+    if (regionStart > 0 && (region.isEmpty() || !Character.isWhitespace(region.charAt(0)))) return false;
+    if (regionEnd == code.length()) return true;
+    if (region.isEmpty() || !Character.isWhitespace(region.charAt(region.length() - 1))) return false;
+    var lexer = AyaParserDefinitionBase.createLexer(false);
+    lexer.reset(region, 0, region.length(), 0);
+    try {
+      IElementType lastType = null;
+      var lastStart = 0;
+      var lastEnd = 0;
+      for (var type = lexer.advance(); type != null; type = lexer.advance()) {
+        if (type == TokenType.WHITE_SPACE) continue;
+        lastType = type;
+        lastStart = lexer.getTokenStart();
+        lastEnd = lexer.getTokenEnd();
+      }
+      if (lastType == ParserDefBase.BLOCK_COMMENT)
+        return lastEnd - lastStart >= 4 && region.startsWith("*/", lastEnd - 2);
+      if (lastType == ParserDefBase.LINE_COMMENT) {
+        var rest = region.substring(lastStart);
+        return rest.indexOf('\n') >= 0 || rest.indexOf('\r') >= 0;
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean hasError(@NotNull GenericNode<?> node) {
+    return node.childrenView().anyMatch(child -> ParserUtil.ERROR.contains(child.elementType()));
+  }
+
+  private static @NotNull ImmutableSeq<Chunk> chunksOf(@NotNull GenericNode<?> node, int shift) {
+    return node.childrenOfType(AyaProducer.STMT)
+      .map(child -> new Chunk(child, shift))
+      .toImmutableSeq();
+  }
+}
@@ -14,5 +14,6 @@ public abstract class InterruptException extends RuntimeException {
     Parsing,
     Resolving,
     Tycking,
+    Normalizing,
   }
 }
@@ -7,7 +7,9 @@ import org.aya.generic.Modifier;
 import org.aya.generic.stmt.Reducible;
 import org.aya.syntax.core.def.FnDefLike;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.FnCall;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.Supplier;
 
@@ -20,10 +22,44 @@ public abstract non-sealed class JitFn extends JitDef implements FnDefLike, Redu
   }
 
   /**
-   * Unfold this function
+   * Unfold this function with the arguments in {@param cell}. The generated classes also have a fixed-arity
+   * {@code tryInvoke} taking the cell, and a fixed-arity {@code invoke} returning the {@link FnCall} when stuck,
+   * which is what the generated code calls.
+   *
+   * @return null if stuck, nothing is allocated to tell that.
+   * A call of a compiled function in tail position is put in {@param cell}, and {@link TailCall#MARK} is returned
    */
-  @Override abstract public @NotNull Term
-  invoke(@NotNull Supplier<Term> fallback, @NotNull Seq<@NotNull Term> args);
+  public abstract @Nullable Term tryInvoke(@NotNull TailCall cell);
+
+  /**
+   * @return null if stuck, or the unfolded body,
+   * where a call of a compiled function in tail position is returned as is, see {@link #trampoline}
+   */
+  public @Nullable Term tryInvoke(@NotNull Seq<@NotNull Term> args) {
+    var cell = new TailCall(this, 0, args);
+    var result = tryInvoke(cell);
+    return result == TailCall.MARK ? cell.toFnCall() : result;
+  }
+
+  @Override public @NotNull Term invoke(@NotNull Supplier<Term> fallback, @NotNull Seq<@NotNull Term> args) {
+    var cell = new TailCall(this, 0, args);
+    var result = tryInvoke(cell);
+    return result != null ? cell.run(result) : fallback.get();
+  }
+
+  /**
+   * Unfolds the calls of compiled functions at the head of {@param term} in a loop,
+   * so a chain of tail calls does not grow the stack.
+   *
+   * @return {@param term} if it is not such a call, or the call it gets stuck at
+   */
+  public static @NotNull Term trampoline(@NotNull Term term) {
+    if (!(term instanceof FnCall(JitFn fn, int ulift, var args))) return term;
+    var cell = new TailCall(fn, ulift, args);
+    var result = fn.tryInvoke(cell);
+    return result != null ? cell.run(result) : term;
+  }
+
   @Override public boolean is(@NotNull Modifier mod) {
     return (modifiers & (1 << mod.ordinal())) != 0;
   }
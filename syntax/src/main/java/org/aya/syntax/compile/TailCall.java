@@ -0,0 +1,94 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.compile;
+
+import kala.collection.Seq;
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.ref.LocalVar;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A call of a compiled function in tail position. The generated code fills it in and returns {@link #MARK}
+ * instead of allocating a {@link FnCall}, and {@link #run} unfolds the calls in a loop,
+ * so a chain of tail calls reuses one cell and does not grow the stack.
+ */
+public final class TailCall {
+  /** Returned by the generated code after filling in the cell, never seen outside */
+  public static final @NotNull Term MARK = new FreeTerm(new LocalVar("tail call"));
+
+  private @Nullable JitFn fn;
+  private int ulift;
+  private @NotNull Term[] args;
+
+  private static final @NotNull Term[] NO_ARGS = new Term[0];
+
+  public TailCall() { args = NO_ARGS; }
+  public TailCall(@NotNull JitFn fn, int ulift, @NotNull Seq<Term> args) {
+    this.fn = fn;
+    this.ulift = ulift;
+    this.args = new Term[args.size()];
+    for (var i = 0; i < this.args.length; i++) this.args[i] = args.get(i);
+  }
+
+  /** The lift of a tail call adds up, like {@link Term#elevate} of the body of the caller does */
+  private void enter(@NotNull JitFn fn, int ulift, int size) {
+    this.fn = fn;
+    this.ulift += ulift;
+    if (args.length < size) args = new Term[size];
+  }
+
+  public @NotNull Term call(@NotNull JitFn fn, int ulift) {
+    enter(fn, ulift, 0);
+    return MARK;
+  }
+  public @NotNull Term call(@NotNull JitFn fn, int ulift, @NotNull Term a0) {
+    enter(fn, ulift, 1);
+    args[0] = a0;
+    return MARK;
+  }
+  public @NotNull Term call(@NotNull JitFn fn, int ulift, @NotNull Term a0, @NotNull Term a1) {
+    enter(fn, ulift, 2);
+    args[0] = a0;
+    args[1] = a1;
+    return MARK;
+  }
+  public @NotNull Term call(@NotNull JitFn fn, int ulift, @NotNull Term a0, @NotNull Term a1, @NotNull Term a2) {
+    enter(fn, ulift, 3);
+    args[0] = a0;
+    args[1] = a1;
+    args[2] = a2;
+    return MARK;
+  }
+  public @NotNull Term call(@NotNull JitFn fn, int ulift, @NotNull Term @NotNull ... as) {
+    enter(fn, ulift, as.length);
+    System.arraycopy(as, 0, args, 0, as.length);
+    return MARK;
+  }
+
+  public @NotNull Term arg(int i) { return args[i]; }
+
+  /** @return the call in this cell, which is where the generated code got stuck */
+  public @NotNull FnCall toFnCall() {
+    assert fn != null;
+    var size = fn.telescopeSize;
+    return new FnCall(fn, ulift, ImmutableSeq.fill(size, i -> args[i]));
+  }
+
+  /**
+   * @param result what the generated code returns with this cell, not null
+   * @return the result of the last call, or the call it gets stuck at
+   */
+  public @NotNull Term run(@NotNull Term result) {
+    while (result == MARK) {
+      assert fn != null;
+      var next = fn.tryInvoke(this);
+      if (next == null) return toFnCall();
+      result = next;
+    }
+    return result.elevate(ulift);
+  }
+}
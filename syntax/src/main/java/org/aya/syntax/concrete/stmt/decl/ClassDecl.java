@@ -16,7 +16,7 @@ import org.jetbrains.annotations.NotNull;
  * where we introduce the members as definition-level variables.
  */
 public final class ClassDecl extends Decl {
-  public final @NotNull DefVar<ClassDef, ClassDecl> ref;
+  public @NotNull DefVar<ClassDef, ClassDecl> ref;
   public final @NotNull ImmutableSeq<ClassMember> members;
   public final LocalVar self;
   public ClassDecl(
@@ -11,7 +11,7 @@ import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
 
 public final class ClassMember extends TeleDecl {
-  public final @NotNull DefVar<MemberDef, ClassMember> ref;
+  public @NotNull DefVar<MemberDef, ClassMember> ref;
   public DefVar<ClassDef, ClassDecl> classRef;
 
   public ClassMember(
@@ -18,7 +18,7 @@ import org.jetbrains.annotations.Nullable;
  * @implNote {@link DefVar#signature} is always null.
  */
 public final class DataCon extends TeleDecl {
-  public final @NotNull DefVar<ConDef, DataCon> ref;
+  public @NotNull DefVar<ConDef, DataCon> ref;
   public DefVar<DataDef, DataDecl> dataRef;
   public @NotNull ImmutableSeq<Arg<WithPos<Pattern>>> patterns;
   public final boolean coerce;
@@ -19,7 +19,7 @@ import org.jetbrains.annotations.Nullable;
  * @see DataDef
  */
 public final class DataDecl extends TeleDecl {
-  public final @NotNull DefVar<DataDef, DataDecl> ref;
+  public @NotNull DefVar<DataDef, DataDecl> ref;
   public final @NotNull ImmutableSeq<DataCon> body;
 
   public DataDecl(
@@ -22,7 +22,7 @@ import java.util.EnumSet;
  */
 public final class FnDecl extends TeleDecl {
   public final @NotNull EnumSet<Modifier> modifiers;
-  public final @NotNull DefVar<FnDef, FnDecl> ref;
+  public @NotNull DefVar<FnDef, FnDecl> ref;
   public @NotNull FnBody body;
 
   public FnDecl(
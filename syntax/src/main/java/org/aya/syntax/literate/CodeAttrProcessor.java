@@ -57,6 +57,7 @@ public enum CodeAttrProcessor implements DelimiterProcessor {
     var dist = new AyaPrettierOptions();
     var mode = NormalizeMode.NULL;
     var show = CodeOptions.ShowCode.Core;
+    var budget = CodeOptions.Budget.NONE;
     for (var s : DELIM.split(content.toString())) {
       if (s.isBlank()) continue;
       var attribute = EQ.split(s, 2);
@@ -71,6 +72,14 @@ public enum CodeAttrProcessor implements DelimiterProcessor {
           show = cbt(val, CodeOptions.ShowCode.values(), CodeOptions.ShowCode.Core);
           continue;
         }
+        if ("steps".equalsIgnoreCase(key) || "timeout".equalsIgnoreCase(key)) {
+          var limit = parseLimit(val);
+          // A malformed limit is ignored, keeping the other attributes
+          if (limit >= 0) budget = "steps".equalsIgnoreCase(key)
+            ? new CodeOptions.Budget(limit, budget.millis())
+            : new CodeOptions.Budget(budget.steps(), limit);
+          continue;
+        }
         var cbt = cbt(key, AyaPrettierOptions.Key.values(), null);
         if (cbt != null) {
           var isTrue = val.equalsIgnoreCase("true") || val.equalsIgnoreCase("yes");
@@ -86,7 +95,7 @@ public enum CodeAttrProcessor implements DelimiterProcessor {
     for (var node : toUnlink) node.unlink();
 
     if (!dist.map.isEmpty()) {
-      var imageAttributes = new Attr(new CodeOptions(mode, dist, show));
+      var imageAttributes = new Attr(new CodeOptions(mode, dist, show, budget));
 
       // The new node is added as a child of the image node to which the attributes apply.
       code.appendChild(imageAttributes);
@@ -94,6 +103,15 @@ public enum CodeAttrProcessor implements DelimiterProcessor {
     return 1;
   }
 
+  /** @return -1 if {@code val} is not a non-negative number */
+  private static long parseLimit(@NotNull String val) {
+    try {
+      return Math.max(-1, Long.parseLong(val));
+    } catch (NumberFormatException _) {
+      return -1;
+    }
+  }
+
   private <E extends Enum<E>> E cbt(@NotNull String key, E[] values, E otherwise) {
     for (var val : values)
       if (StringUtil.containsIgnoreCase(val.name(), key)) return val;
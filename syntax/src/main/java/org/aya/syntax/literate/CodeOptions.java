@@ -13,7 +13,8 @@ import org.jetbrains.annotations.NotNull;
 public record CodeOptions(
   @NotNull NormalizeMode mode,
   @NotNull PrettierOptions options,
-  @NotNull ShowCode showCode
+  @NotNull ShowCode showCode,
+  @NotNull Budget budget
 ) {
   public static @NotNull Literate analyze(@NotNull Code code, @NotNull SourcePos sourcePos) {
     return code.getFirstChild() instanceof CodeAttrProcessor.Attr attr
@@ -27,4 +28,18 @@ public record CodeOptions(
   public enum NormalizeMode {
     HEAD, FULL, NULL
   }
+
+  /**
+   * Limits of normalization, 0 means unlimited.
+   * The steps are counted by the normalizer, so an unfolding of a compiled function counts as one step,
+   * including the calls of compiled functions in argument position it runs, which are not checked against the limits.
+   * The calls in tail position are given back to the normalizer, and counted one by one.
+   *
+   * @param steps  reduction steps, like unfolding a function or a beta reduction
+   * @param millis wall time in milliseconds
+   */
+  public record Budget(long steps, long millis) {
+    public static final @NotNull Budget NONE = new Budget(0, 0);
+    public boolean isUnlimited() { return steps <= 0 && millis <= 0; }
+  }
 }
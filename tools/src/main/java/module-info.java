@@ -1,6 +1,7 @@
 module aya.util {
   requires aya.ij.util.text;
   requires aya.pretty;
+  requires jdk.management;
 
   requires static org.jetbrains.annotations;
   requires transitive kala.collection;
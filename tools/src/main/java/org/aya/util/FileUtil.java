@@ -10,9 +10,14 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Comparator;
+import java.util.HexFormat;
 
 public interface FileUtil {
   static void writeString(@NotNull Path path, @NotNull String content) throws IOException {
@@ -62,6 +67,21 @@ public interface FileUtil {
     return new ObjectInputStream(Files.newInputStream(corePath));
   }
 
+  static @NotNull ObjectOutputStream oos(@NotNull Path corePath) throws IOException {
+    Files.createDirectories(corePath.toAbsolutePath().getParent());
+    return new ObjectOutputStream(Files.newOutputStream(corePath));
+  }
+
+  /** @return the SHA-256 digest of {@param text}, which tells whether a file is modified more reliably than the timestamps */
+  static @NotNull String digest(@NotNull String text) {
+    try {
+      var bytes = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Every Java platform supports SHA-256", e);
+    }
+  }
+
   static @NotNull Path resolveFile(@NotNull Path basePath, @NotNull Seq<@NotNull String> moduleName, String postfix) {
     var withoutExt = moduleName.foldLeft(basePath, Path::resolve);
     return withoutExt.resolveSibling(withoutExt.getFileName() + postfix);
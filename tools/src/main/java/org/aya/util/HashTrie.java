@@ -0,0 +1,125 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A persistent hash array mapped trie, {@link #put} returns a new trie sharing
+ * all but the path to the key with the old one, so both can be used afterward.
+ * Lookups and updates take a few array accesses, independent of the number of older versions.
+ */
+public final class HashTrie<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final HashTrie<?, ?> EMPTY = new HashTrie<>(new Bitmap(0, new Object[0]));
+
+  private final @NotNull Node root;
+
+  private HashTrie(@NotNull Node root) { this.root = root; }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> @NotNull HashTrie<K, V> empty() { return (HashTrie<K, V>) EMPTY; }
+
+  @SuppressWarnings("unchecked")
+  public @Nullable V get(@NotNull K key) { return (V) root.get(key, hash(key), 0); }
+
+  /** @return a trie where {@param key} is mapped to {@param value}, overwriting the old one */
+  public @NotNull HashTrie<K, V> put(@NotNull K key, @NotNull V value) {
+    var newRoot = root.put(key, hash(key), value, 0);
+    return newRoot == root ? this : new HashTrie<>(newRoot);
+  }
+
+  private static int hash(@NotNull Object key) {
+    var h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private sealed interface Node permits Bitmap, Collision {
+    @Nullable Object get(@NotNull Object key, int hash, int shift);
+    @NotNull Node put(@NotNull Object key, int hash, @NotNull Object value, int shift);
+  }
+
+  /**
+   * @param slots two slots for each bit set in {@param bitmap}: either a key and its value,
+   *              or null and the sub-trie of the keys sharing the same hash fragment
+   */
+  private record Bitmap(int bitmap, Object[] slots) implements Node {
+    @Override public @Nullable Object get(@NotNull Object key, int hash, int shift) {
+      var bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) return null;
+      var i = index(bit);
+      var k = slots[i];
+      if (k == null) return ((Node) slots[i + 1]).get(key, hash, shift + BITS);
+      return key.equals(k) ? slots[i + 1] : null;
+    }
+
+    @Override public @NotNull Node put(@NotNull Object key, int hash, @NotNull Object value, int shift) {
+      var bit = bit(hash, shift);
+      var i = index(bit);
+      if ((bitmap & bit) == 0) {
+        var newSlots = new Object[slots.length + 2];
+        System.arraycopy(slots, 0, newSlots, 0, i);
+        newSlots[i] = key;
+        newSlots[i + 1] = value;
+        System.arraycopy(slots, i, newSlots, i + 2, slots.length - i);
+        return new Bitmap(bitmap | bit, newSlots);
+      }
+      var k = slots[i];
+      var v = slots[i + 1];
+      if (k == null) {
+        var sub = (Node) v;
+        var newSub = sub.put(key, hash, value, shift + BITS);
+        return newSub == sub ? this : with(i, null, newSub);
+      }
+      if (key.equals(k)) return v == value ? this : with(i, key, value);
+      return with(i, null, pair(k, hash(k), v, key, hash, value, shift + BITS));
+    }
+
+    private @NotNull Bitmap with(int i, @Nullable Object key, @NotNull Object value) {
+      var newSlots = slots.clone();
+      newSlots[i] = key;
+      newSlots[i + 1] = value;
+      return new Bitmap(bitmap, newSlots);
+    }
+
+    private int index(int bit) { return 2 * Integer.bitCount(bitmap & (bit - 1)); }
+    private static int bit(int hash, int shift) { return 1 << ((hash >>> shift) & MASK); }
+  }
+
+  /** The keys with the same hash, when all the bits of the hash are used up */
+  private record Collision(Object[] slots) implements Node {
+    @Override public @Nullable Object get(@NotNull Object key, int hash, int shift) {
+      for (var i = 0; i < slots.length; i += 2) if (key.equals(slots[i])) return slots[i + 1];
+      return null;
+    }
+
+    @Override public @NotNull Node put(@NotNull Object key, int hash, @NotNull Object value, int shift) {
+      for (var i = 0; i < slots.length; i += 2) if (key.equals(slots[i])) {
+        if (slots[i + 1] == value) return this;
+        var newSlots = slots.clone();
+        newSlots[i + 1] = value;
+        return new Collision(newSlots);
+      }
+      var newSlots = new Object[slots.length + 2];
+      System.arraycopy(slots, 0, newSlots, 0, slots.length);
+      newSlots[slots.length] = key;
+      newSlots[slots.length + 1] = value;
+      return new Collision(newSlots);
+    }
+  }
+
+  /** A trie of two different keys */
+  private static @NotNull Node pair(
+    @NotNull Object k1, int h1, @NotNull Object v1,
+    @NotNull Object k2, int h2, @NotNull Object v2, int shift
+  ) {
+    if (shift >= Integer.SIZE) return new Collision(new Object[]{k1, v1, k2, v2});
+    var f1 = (h1 >>> shift) & MASK;
+    var f2 = (h2 >>> shift) & MASK;
+    if (f1 == f2) return new Bitmap(1 << f1, new Object[]{null, pair(k1, h1, v1, k2, h2, v2, shift + BITS)});
+    var slots = f1 < f2 ? new Object[]{k1, v1, k2, v2} : new Object[]{k2, v2, k1, v1};
+    return new Bitmap((1 << f1) | (1 << f2), slots);
+  }
+}
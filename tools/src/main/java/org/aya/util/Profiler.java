@@ -0,0 +1,176 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the compiler phases, for {@code --profile}.
+ * Disabled by default, in which case {@link #span} returns a shared no-op span.
+ * <p>
+ * Spans are inclusive: the time of a module includes the time of its declarations.
+ *
+ * <pre>{@code
+ * try (var _ = Profiler.span("tyck", module, decl.ref().name())) {
+ *   ...
+ * }
+ * }</pre>
+ */
+public final class Profiler {
+  public interface Span extends AutoCloseable {
+    /** Attaches a number to this span, like a counter of the work done in it */
+    default void arg(@NotNull String key, long value) { }
+    @Override void close();
+  }
+
+  /**
+   * @param module the {@link Object#toString()} is called only when the profile is written
+   * @param name   the declaration, or null for the whole module
+   */
+  public record Event(
+    @NotNull String phase, @NotNull Object module, @Nullable Object name, long thread,
+    long startNanos, long wallNanos, long cpuNanos, long allocatedBytes,
+    @NotNull ImmutableSeq<Pair<String, Long>> args
+  ) {
+    public @NotNull String title() {
+      return name == null ? module.toString() : module + "::" + name;
+    }
+  }
+
+  private static final @NotNull Span NOOP = () -> { };
+  private static volatile @Nullable Profiler current;
+
+  private final long origin = System.nanoTime();
+  private final @NotNull ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+  private final @NotNull java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private Profiler() { }
+
+  /** Starts recording, the events recorded before are discarded */
+  public static @NotNull Profiler start() {
+    var profiler = new Profiler();
+    current = profiler;
+    return profiler;
+  }
+
+  /** @return the events recorded since {@link #start()} */
+  public @NotNull ImmutableSeq<Event> stop() {
+    if (current == this) current = null;
+    return ImmutableSeq.from(events);
+  }
+
+  public static boolean isEnabled() { return current != null; }
+
+  public static @NotNull Span span(@NotNull String phase, @NotNull Object module) {
+    return span(phase, module, null);
+  }
+
+  public static @NotNull Span span(@NotNull String phase, @NotNull Object module, @Nullable Object name) {
+    var profiler = current;
+    if (profiler == null) return NOOP;
+    return profiler.new Running(phase, module, name);
+  }
+
+  private final class Running implements Span {
+    private final @NotNull String phase;
+    private final @NotNull Object module;
+    private final @Nullable Object name;
+    private final long start = System.nanoTime();
+    private final long cpu = cpuTime();
+    private final long allocated = allocatedBytes();
+    private @NotNull ImmutableSeq<Pair<String, Long>> args = ImmutableSeq.empty();
+
+    private Running(@NotNull String phase, @NotNull Object module, @Nullable Object name) {
+      this.phase = phase;
+      this.module = module;
+      this.name = name;
+    }
+
+    @Override public void arg(@NotNull String key, long value) {
+      args = args.appended(new Pair<>(key, value));
+    }
+
+    @Override public void close() {
+      events.add(new Event(phase, module, name, Thread.currentThread().threadId(),
+        start - origin, System.nanoTime() - start, cpuTime() - cpu, allocatedBytes() - allocated, args));
+    }
+  }
+
+  private long cpuTime() {
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+  }
+
+  private long allocatedBytes() {
+    return threads instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported()
+      ? sun.getCurrentThreadAllocatedBytes() : 0;
+  }
+
+  /** Writes the events in the trace event format, which can be opened in {@code chrome://tracing} or Perfetto. */
+  public static void writeChromeTrace(@NotNull ImmutableSeq<Event> events, @NotNull Path path) throws IOException {
+    var json = new StringBuilder("{\"traceEvents\":[\n");
+    events.forEachIndexed((i, event) -> {
+      if (i > 0) json.append(",\n");
+      json.append("{\"name\":").append(quote(event.title()))
+        .append(",\"cat\":").append(quote(event.phase))
+        .append(",\"ph\":\"X\",\"pid\":1,\"tid\":").append(event.thread)
+        .append(",\"ts\":").append(event.startNanos / 1000)
+        .append(",\"dur\":").append(event.wallNanos / 1000)
+        .append(",\"args\":{\"cpu_us\":").append(event.cpuNanos / 1000)
+        .append(",\"alloc_bytes\":").append(event.allocatedBytes);
+      event.args.forEach(arg -> json.append(",").append(quote(arg.component1())).append(":").append(arg.component2()));
+      json.append("}}");
+    });
+    json.append("\n],\"displayTimeUnit\":\"ms\"}\n");
+    FileUtil.writeString(path, json.toString());
+  }
+
+  /** @return the total of each phase, followed by the {@code topN} slowest events of any phase */
+  public static @NotNull String summary(@NotNull ImmutableSeq<Event> events, int topN) {
+    var phases = MutableLinkedHashMap.<String, long[]>of();
+    events.forEach(event -> {
+      var total = phases.getOrPut(event.phase, () -> new long[3]);
+      total[0] += event.wallNanos;
+      total[1] += event.cpuNanos;
+      total[2] += event.allocatedBytes;
+    });
+    var lines = MutableList.<String>create();
+    lines.append(String.format("%-12s %10s %10s %12s", "phase", "wall ms", "cpu ms", "alloc MB"));
+    phases.forEach((phase, total) -> lines.append(String.format("%-12s %10.1f %10.1f %12.1f",
+      phase, total[0] / 1e6, total[1] / 1e6, total[2] / 1e6)));
+    lines.append("");
+    lines.append(String.format("%-12s %10s %10s %12s  %s", "phase", "wall ms", "cpu ms", "alloc MB", "top " + topN));
+    events.view()
+      .sorted(Comparator.comparingLong(Event::wallNanos).reversed())
+      .take(topN)
+      .forEach(event -> lines.append(String.format("%-12s %10.1f %10.1f %12.1f  %s",
+        event.phase, event.wallNanos / 1e6, event.cpuNanos / 1e6, event.allocatedBytes / 1e6, event.title())));
+    return lines.joinToString("\n");
+  }
+
+  private static @NotNull String quote(@NotNull String s) {
+    var sb = new StringBuilder("\"");
+    for (var c : s.toCharArray()) {
+      switch (c) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+          else sb.append(c);
+        }
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -5,7 +5,7 @@ package org.aya.util.reporter;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 public interface CountingReporter extends Reporter {
   int problemSize(@NotNull Problem.Severity severity);
@@ -41,24 +41,34 @@ public interface CountingReporter extends Reporter {
     return new Delegated(reporter);
   }
 
+  /**
+   * Safe to report to from several threads if {@link #delegated} is, the counters
+   * are {@link LongAdder}s so the threads do not contend on them.
+   */
   record Delegated(
     @NotNull Reporter delegated,
-    int @NotNull [] count
+    @NotNull LongAdder @NotNull [] count
   ) implements CountingReporter {
     public Delegated(@NotNull Reporter delegated) {
-      this(delegated, new int[Problem.Severity.class.getEnumConstants().length]);
+      this(delegated, newCounters());
+    }
+
+    private static @NotNull LongAdder @NotNull [] newCounters() {
+      var count = new LongAdder[Problem.Severity.values().length];
+      for (var i = 0; i < count.length; i++) count[i] = new LongAdder();
+      return count;
     }
 
     @Override public int problemSize(Problem.@NotNull Severity severity) {
-      return count[severity.ordinal()];
+      return count[severity.ordinal()].intValue();
     }
 
     @Override public void clear() {
-      Arrays.fill(count, 0);
+      for (var adder : count) adder.reset();
     }
 
     @Override public void report(@NotNull Problem problem) {
-      if (problem.sourcePos() != SourcePos.NONE) count[problem.level().ordinal()]++;
+      if (problem.sourcePos() != SourcePos.NONE) count[problem.level().ordinal()].increment();
       delegated.report(problem);
     }
   }
@@ -0,0 +1,29 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util.reporter;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reports the problems of tasks running in parallel in the order of the tasks,
+ * instead of the order they are found, so the output does not depend on scheduling.
+ * Each task reports to its own {@link BufferReporter} without any synchronization,
+ * and the buffers are reported to {@link #delegated} one by one from a single thread.
+ *
+ * @param buffers the {@link #task} reporters, each one is only touched by its task until {@link #flush}
+ */
+public record OrderedReporter(@NotNull Reporter delegated, @NotNull ImmutableSeq<BufferReporter> buffers) {
+  public OrderedReporter(@NotNull Reporter delegated, int tasks) {
+    this(delegated, ImmutableSeq.fill(tasks, _ -> new BufferReporter()));
+  }
+
+  public @NotNull Reporter task(int index) { return buffers.get(index); }
+
+  /** Reports the problems of the {@param index}-th task, call it after the task is done, in increasing order */
+  public void flush(int index) {
+    var buffer = buffers.get(index);
+    buffer.problems().forEach(delegated::report);
+    buffer.clear();
+  }
+}
@@ -0,0 +1,36 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class HashTrieTest {
+  /** Every key collides with the others */
+  private record Colliding(int x) {
+    @Override public int hashCode() { return 42; }
+  }
+
+  @Test public void persistent() {
+    var empty = HashTrie.<String, Integer>empty();
+    var a = empty.put("a", 1);
+    var b = a.put("b", 2);
+    var shadowed = b.put("a", 3);
+    assertNull(empty.get("a"));
+    assertEquals(1, a.get("a"));
+    assertNull(a.get("b"));
+    assertEquals(1, b.get("a"));
+    assertEquals(3, shadowed.get("a"));
+    assertEquals(2, shadowed.get("b"));
+  }
+
+  @Test public void many() {
+    var trie = HashTrie.<Object, Integer>empty();
+    for (var i = 0; i < 10000; i++) trie = trie.put("x" + i, i).put(new Colliding(i % 50), i);
+    for (var i = 0; i < 10000; i++) assertEquals(i, trie.get("x" + i));
+    for (var i = 0; i < 50; i++) assertEquals(9950 + i, trie.get(new Colliding(i)));
+    assertNull(trie.get("y"));
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util.reporter;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.pretty.doc.Doc;
+import org.aya.util.error.SourceFile;
+import org.aya.util.error.SourcePos;
+import org.aya.util.prettier.PrettierOptions;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReporterTest {
+  private static final SourcePos POS = new SourcePos(SourceFile.NONE, 0, 0, 1, 0, 1, 0);
+
+  private record Numbered(int task, int index, Problem.@NotNull Severity level) implements Problem {
+    @Override public @NotNull SourcePos sourcePos() { return POS; }
+    @Override public @NotNull Doc describe(@NotNull PrettierOptions options) { return Doc.plain(task + "." + index); }
+  }
+
+  @Test public void orderedByTask() throws Exception {
+    var out = new BufferReporter();
+    var tasks = 16;
+    var ordered = new OrderedReporter(out, tasks);
+    try (var pool = Executors.newFixedThreadPool(4)) {
+      // later tasks are submitted first, so they are likely to finish first
+      var futures = new Future<?>[tasks];
+      for (var i = tasks - 1; i >= 0; i--) {
+        var task = i;
+        futures[i] = pool.submit(() -> {
+          for (var j = 0; j < 100; j++) ordered.task(task).report(new Numbered(task, j, Problem.Severity.WARN));
+        });
+      }
+      for (var i = 0; i < tasks; i++) {
+        futures[i].get();
+        ordered.flush(i);
+      }
+    }
+    var seen = out.problems().map(p -> (Numbered) p);
+    assertEquals(tasks * 100, seen.size());
+    var expected = ImmutableSeq.fill(tasks * 100, i -> new Numbered(i / 100, i % 100, Problem.Severity.WARN));
+    assertEquals(expected, seen.toImmutableSeq());
+  }
+
+  @Test public void countConcurrently() throws Exception {
+    var counting = CountingReporter.delegate(IgnoringReporter.INSTANCE);
+    var threads = 8;
+    try (var pool = Executors.newFixedThreadPool(threads)) {
+      var futures = new Future<?>[threads];
+      for (var i = 0; i < threads; i++) futures[i] = pool.submit(() -> {
+        for (var j = 0; j < 10000; j++) {
+          counting.report(new Numbered(0, j, Problem.Severity.ERROR));
+          if (j % 2 == 0) counting.report(new Numbered(0, j, Problem.Severity.WARN));
+        }
+      });
+      for (var future : futures) future.get();
+    }
+    assertEquals(threads * 10000, counting.errorSize());
+    assertEquals(threads * 5000, counting.warningSize());
+    counting.clear();
+    assertEquals(0, counting.errorSize());
+  }
+}